@@ -33,6 +33,16 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            all { test ->
+                // Parámetros de SQLiteHelperBenchmarkSuite (p. ej. -PdbBenchmark.enabled=true -PdbBenchmark.favorites=100000)
+                project.properties.filterKeys { it.startsWith("dbBenchmark.") }
+                    .forEach { (key, value) -> test.systemProperty(key, value.toString()) }
+            }
+        }
+    }
 }
 
 dependencies {
@@ -54,7 +64,10 @@ dependencies {
     implementation(libs.play.services.maps)
     implementation(libs.play.services.places)
     implementation(libs.libphonenumber)
+    implementation(libs.work.runtime)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
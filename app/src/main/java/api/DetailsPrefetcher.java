@@ -0,0 +1,189 @@
+package api;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import database.MovieDetails;
+import utils.PosterCache;
+
+/**
+ * Descarga anticipada (prefetch) de detalles y pósters de las películas que
+ * probablemente abrirá el usuario: las casillas visibles, la casilla que se está
+ * pulsando y las primeras posiciones del ranking.
+ * <p>
+ * El trabajo se hace en un único hilo de baja prioridad y está limitado por un
+ * presupuesto de solicitudes a la API por ventana de tiempo, para no consumir la
+ * cuota de RapidAPI/TMDB que necesitan las pantallas en primer plano.
+ */
+public class DetailsPrefetcher {
+
+    private static final String TAG = "DetailsPrefetcher";
+    private static final int MAX_REQUESTS_PER_WINDOW = 15;        // Solicitudes a la API permitidas por ventana
+    private static final long WINDOW_MS = 10L * 60 * 1000;        // Ventana del presupuesto (10 minutos)
+    private static final int MAX_PENDING = 30;                    // Tamaño máximo de la cola
+
+    @SuppressLint("StaticFieldLeak")
+    private static DetailsPrefetcher instance;
+
+    private final MovieDetailsRepository detailsRepository;
+    private final PosterCache posterCache;
+    private final BlockingDeque<PrefetchRequest> queue = new LinkedBlockingDeque<>();
+    private final Set<String> pending = Collections.synchronizedSet(new HashSet<>()); // IDs en cola
+    private final Deque<Long> requestTimes = new ArrayDeque<>(); // Momentos de las últimas solicitudes a la API
+
+    /**
+     * Obtiene la instancia única (Singleton) de DetailsPrefetcher.
+     *
+     * @param context Contexto de la aplicación
+     * @return Instancia de DetailsPrefetcher
+     */
+    public static synchronized DetailsPrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new DetailsPrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DetailsPrefetcher(Context context) {
+        this.detailsRepository = new MovieDetailsRepository(context);
+        this.posterCache = PosterCache.getInstance(context);
+
+        Thread worker = new Thread(this::runWorker, "details-prefetch");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Encola una película para descargarla cuando el hilo quede libre
+     * (casillas visibles y primeras posiciones del ranking).
+     *
+     * @param movieId  ID de la película
+     * @param imageUrl URL del póster que muestra la cuadrícula (puede ser null)
+     */
+    public void prefetch(String movieId, String imageUrl) {
+        enqueue(movieId, imageUrl, false);
+    }
+
+    /**
+     * Adelanta una película al principio de la cola (por ejemplo, la casilla que el
+     * usuario acaba de pulsar y que probablemente abrirá).
+     *
+     * @param movieId  ID de la película
+     * @param imageUrl URL del póster que muestra la cuadrícula (puede ser null)
+     */
+    public void prefetchNow(String movieId, String imageUrl) {
+        enqueue(movieId, imageUrl, true);
+    }
+
+    private synchronized void enqueue(String movieId, String imageUrl, boolean urgent) {
+        if (movieId == null || movieId.isEmpty()) return;
+        if (!pending.add(movieId)) {
+            if (urgent) {
+                // Ya estaba en cola: se mueve al principio
+                PrefetchRequest request = new PrefetchRequest(movieId, imageUrl);
+                queue.remove(request);
+                queue.offerFirst(request);
+            }
+            return;
+        }
+        if (queue.size() >= MAX_PENDING) {
+            // Cola llena: se descartan las peticiones más antiguas de menor prioridad
+            PrefetchRequest dropped = queue.pollLast();
+            if (dropped != null) pending.remove(dropped.movieId);
+        }
+        PrefetchRequest request = new PrefetchRequest(movieId, imageUrl);
+        if (urgent) {
+            queue.offerFirst(request);
+        } else {
+            queue.offerLast(request);
+        }
+    }
+
+    /**
+     * Bucle del hilo de prefetch: procesa la cola con prioridad de fondo.
+     */
+    private void runWorker() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        while (true) {
+            PrefetchRequest request;
+            try {
+                request = queue.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                process(request);
+            } catch (Exception e) {
+                Log.w(TAG, "Error en el prefetch de " + request.movieId + ": " + e.getMessage());
+            } finally {
+                pending.remove(request.movieId);
+            }
+        }
+    }
+
+    private void process(PrefetchRequest request) throws Exception {
+        MovieDetails details = detailsRepository.getCachedDetails(request.movieId);
+        if (!detailsRepository.isFresh(details)) {
+            if (!tryAcquireBudget()) {
+                Log.d(TAG, "Presupuesto de prefetch agotado, se omite " + request.movieId);
+                return;
+            }
+            details = detailsRepository.refreshMovieDetails(request.movieId);
+        }
+
+        // El mismo póster que cargará MovieDetailsViewModel: la URL recibida en el Intent
+        // (la de la cuadrícula) y, solo si no hay, la de los detalles
+        String posterUrl = request.imageUrl != null ? request.imageUrl : details.getPoster();
+        if (posterUrl != null && !posterCache.isCached(posterUrl)) {
+            posterCache.fetch(posterUrl);
+        }
+    }
+
+    /**
+     * Consume una unidad del presupuesto de solicitudes si queda alguna en la ventana actual.
+     */
+    private synchronized boolean tryAcquireBudget() {
+        long now = System.currentTimeMillis();
+        while (!requestTimes.isEmpty() && now - requestTimes.peekFirst() > WINDOW_MS) {
+            requestTimes.pollFirst();
+        }
+        if (requestTimes.size() >= MAX_REQUESTS_PER_WINDOW) {
+            return false;
+        }
+        requestTimes.offerLast(now);
+        return true;
+    }
+
+    /**
+     * Petición de prefetch. Dos peticiones son iguales si se refieren a la misma película.
+     */
+    private static class PrefetchRequest {
+        final String movieId;
+        final String imageUrl;
+
+        PrefetchRequest(String movieId, String imageUrl) {
+            this.movieId = movieId;
+            this.imageUrl = imageUrl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PrefetchRequest && ((PrefetchRequest) o).movieId.equals(movieId);
+        }
+
+        @Override
+        public int hashCode() {
+            return movieId.hashCode();
+        }
+    }
+}
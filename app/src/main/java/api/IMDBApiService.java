@@ -4,6 +4,10 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+
+import database.Movie;
 
 /**
  * Servicio para interactuar con la API de IMDb.
@@ -17,6 +21,7 @@ public class IMDBApiService {
     private static final int HTTP_TOO_MANY_REQUESTS = 429; // Código HTTP 429: Demasiadas solicitudes
     private static final int HTTP_BAD_GATEWAY = 502; // Código HTTP 502: Bad Gateway
     private static final int HTTP_RETRY = -1; // Código especial para reintentar la solicitud
+    public static final int TOP_METER_PAGE_SIZE = 10; // Títulos por página del top meter
 
     /**
      * Constructor de la clase. Inicializa el gestor de claves API.
@@ -26,17 +31,44 @@ public class IMDBApiService {
     }
 
     /**
-     * Obtiene los títulos más populares del top meter de IMDb.
+     * Obtiene los títulos más populares del top meter de IMDb (primera página).
      *
      * @return Respuesta JSON en formato String que contiene los títulos más populares.
      * @throws Exception En caso de error durante la solicitud.
      */
     public String getTopMeterTitles() throws Exception {
+        return getTopMeterTitles(TOP_METER_PAGE_SIZE, null);
+    }
+
+    /**
+     * Obtiene una página del top meter de IMDb.
+     * Para pedir la siguiente página se pasa el "endCursor" de la página anterior.
+     *
+     * @param limit Número de títulos de la página.
+     * @param after Cursor a partir del cual se devuelven títulos (null para la primera página).
+     * @return Respuesta JSON en formato String con los títulos y la información de paginación.
+     * @throws Exception En caso de error durante la solicitud.
+     */
+    public String getTopMeterTitles(int limit, String after) throws Exception {
         // Construir el endpoint para el top meter
-        String endpoint = "https://" + API_HOST + "/title/get-top-meter?topMeterTitlesType=ALL&limit=10";
+        String endpoint = "https://" + API_HOST + "/title/get-top-meter?topMeterTitlesType=ALL&limit=" + limit;
+        if (after != null && !after.isEmpty()) {
+            endpoint += "&after=" + URLEncoder.encode(after, "UTF-8");
+        }
         return makeApiRequest(endpoint); // Realizar la solicitud al endpoint
     }
 
+    /**
+     * Convierte la respuesta de get-top-meter en una lista de películas en orden de ranking.
+     * Se descartan los títulos sin imagen.
+     *
+     * @param response Respuesta JSON de {@link #getTopMeterTitles()}.
+     * @return Lista de películas (vacía si la respuesta no es válida).
+     */
+    public static List<Movie> parseTopMeterTitles(String response) {
+        return TopMeterPage.parse(response).getMovies();
+    }
+
     /**
      * Obtiene los detalles de un título específico por su ID (tconst).
      *
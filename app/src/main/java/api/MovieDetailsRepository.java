@@ -0,0 +1,215 @@
+package api;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import database.MovieDetails;
+import database.SQLiteHelper;
+
+/**
+ * Repositorio de detalles de películas con caché en disco.
+ * <p>
+ * Lectura (read-through): se devuelven los detalles guardados en la tabla 'movie_details'
+ * si son recientes; si no existen o han caducado se consultan a IMDb o TMDB.
+ * <p>
+ * Escritura (write-through): cada respuesta de la API se convierte al formato unificado
+ * {@link MovieDetails} y se guarda en SQLite antes de devolverla, de modo que cualquier
+ * pantalla pueda mostrar los detalles desde disco la próxima vez.
+ * <p>
+ * Si la fuente propia del ID (IMDb para "tt...", TMDB para IDs numéricos) falla, se usa la
+ * otra fuente gracias a la tabla de equivalencias de IDs. Además, tras un fallo de IMDb
+ * (cuota de RapidAPI agotada o sin respuesta) se prefiere TMDB durante unos minutos.
+ */
+public class MovieDetailsRepository {
+
+    private static final String TAG = "MovieDetailsRepository";
+    private static final long MAX_AGE_MS = 24L * 60 * 60 * 1000; // Los detalles caducan a las 24 horas
+    private static final String TMDB_IMAGE_BASE_URL = "https://image.tmdb.org/t/p/w500";
+    private static final long IMDB_COOLDOWN_MS = 5L * 60 * 1000; // Tiempo que se evita IMDb tras un fallo
+
+    // Momento hasta el que se prefiere TMDB porque IMDb ha fallado recientemente
+    private static volatile long imdbUnavailableUntil = 0;
+
+    private final IMDBApiService imdbApiService; // Servicio de API de IMDb
+    private final TMDBApiService tmdbApiService; // Servicio de API de TMDB
+    private final SQLiteHelper dbHelper;         // Base de datos local
+    private final MovieIdMapper idMapper;        // Equivalencias entre IDs de IMDb y TMDB
+
+    /**
+     * Constructor de la clase.
+     *
+     * @param context Contexto de la aplicación.
+     */
+    public MovieDetailsRepository(Context context) {
+        this.imdbApiService = new IMDBApiService();
+        this.tmdbApiService = new TMDBApiService();
+        this.dbHelper = SQLiteHelper.getInstance(context);
+        this.idMapper = new MovieIdMapper(context);
+    }
+
+    /**
+     * Devuelve los detalles guardados en disco, sin acceder a la red.
+     *
+     * @param movieId ID de la película.
+     * @return Detalles guardados o null si no hay ninguno.
+     */
+    public MovieDetails getCachedDetails(String movieId) {
+        return dbHelper.getMovieDetails(movieId);
+    }
+
+    /**
+     * Indica si unos detalles guardados siguen siendo válidos.
+     *
+     * @param details Detalles guardados (puede ser null).
+     * @return True si existen y no han caducado.
+     */
+    public boolean isFresh(MovieDetails details) {
+        return details != null && System.currentTimeMillis() - details.getFetchedAt() < MAX_AGE_MS;
+    }
+
+    /**
+     * Obtiene los detalles de una película: primero desde disco y, si no existen o han
+     * caducado, desde la API correspondiente. Si la red falla se devuelven los datos
+     * caducados antes que nada.
+     *
+     * @param movieId ID de la película ("tt..." para IMDb, numérico para TMDB).
+     * @return Detalles de la película.
+     * @throws Exception Si no hay datos en disco y la solicitud a la API falla.
+     */
+    public MovieDetails getMovieDetails(String movieId) throws Exception {
+        MovieDetails cached = getCachedDetails(movieId);
+        if (isFresh(cached)) {
+            return cached;
+        }
+        try {
+            return refreshMovieDetails(movieId);
+        } catch (Exception e) {
+            if (cached != null) {
+                Log.w(TAG, "Usando detalles caducados para " + movieId + ": " + e.getMessage());
+                return cached;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Descarga los detalles desde la API, los guarda en disco y los devuelve.
+     *
+     * @param movieId ID de la película.
+     * @return Detalles recién descargados.
+     * @throws Exception En caso de error durante la solicitud o el análisis de la respuesta.
+     */
+    public MovieDetails refreshMovieDetails(String movieId) throws Exception {
+        boolean isImdbId = movieId.startsWith("tt");
+
+        // Si IMDb ha fallado hace poco, se intenta primero con TMDB (más barato y sin cuota de RapidAPI)
+        if (isImdbId && System.currentTimeMillis() < imdbUnavailableUntil) {
+            String tmdbId = idMapper.resolveLinkedId(movieId);
+            if (tmdbId != null) {
+                try {
+                    return fetchAndStore(movieId, tmdbId, false);
+                } catch (Exception e) {
+                    Log.w(TAG, "TMDB tampoco respondió para " + movieId + ": " + e.getMessage());
+                }
+            }
+        }
+
+        try {
+            return fetchAndStore(movieId, movieId, isImdbId);
+        } catch (Exception e) {
+            if (isImdbId) {
+                imdbUnavailableUntil = System.currentTimeMillis() + IMDB_COOLDOWN_MS;
+            }
+            // Se intenta con la otra fuente si se conoce el ID equivalente
+            String linkedId = idMapper.resolveLinkedId(movieId);
+            if (linkedId == null) {
+                throw e;
+            }
+            Log.w(TAG, "Fallo en la fuente principal de " + movieId + ", usando " + linkedId + ": " + e.getMessage());
+            return fetchAndStore(movieId, linkedId, !isImdbId);
+        }
+    }
+
+    /**
+     * Descarga los detalles desde la fuente indicada y los guarda bajo el ID solicitado.
+     *
+     * @param movieId  ID con el que se pidieron los detalles (clave en 'movie_details').
+     * @param sourceId ID de la película en la fuente consultada.
+     * @param fromImdb True para consultar IMDb, False para TMDB.
+     */
+    private MovieDetails fetchAndStore(String movieId, String sourceId, boolean fromImdb) throws Exception {
+        MovieDetails fetched;
+        if (fromImdb) {
+            fetched = parseImdbDetails(sourceId, imdbApiService.getTitleDetails(sourceId));
+        } else {
+            String response = tmdbApiService.getMovieDetailsById(sourceId);
+            fetched = parseTmdbDetails(sourceId, response);
+            // La respuesta de TMDB incluye el ID de IMDb: se guarda la equivalencia sin coste extra
+            dbHelper.saveMovieIdMapping(new JSONObject(response).optString("imdb_id", ""), sourceId);
+        }
+
+        MovieDetails details = sourceId.equals(movieId) ? fetched : new MovieDetails(movieId,
+                fetched.getSource(), fetched.getTitle(), fetched.getOverview(), fetched.getPoster(),
+                fetched.getRating(), fetched.getReleaseDate(), fetched.getFetchedAt());
+        dbHelper.saveMovieDetails(details);
+        return details;
+    }
+
+    /**
+     * Convierte la respuesta de /title/get-overview de IMDb al formato unificado.
+     */
+    private static MovieDetails parseImdbDetails(String movieId, String response) throws Exception {
+        JSONObject data = new JSONObject(response).getJSONObject("data").getJSONObject("title");
+
+        JSONObject titleText = data.optJSONObject("titleText");
+        String title = titleText != null ? titleText.optString("text", null) : null;
+
+        JSONObject plot = data.optJSONObject("plot");
+        JSONObject plotText = plot != null ? plot.optJSONObject("plotText") : null;
+        String overview = plotText != null ? plotText.optString("plainText", null) : null;
+
+        JSONObject primaryImage = data.optJSONObject("primaryImage");
+        String poster = primaryImage != null ? primaryImage.optString("url", null) : null;
+
+        JSONObject ratingsSummary = data.optJSONObject("ratingsSummary");
+        double rating = ratingsSummary != null ? ratingsSummary.optDouble("aggregateRating", 0.0) : 0.0;
+
+        String releaseDate = formatReleaseDate(data.optJSONObject("releaseDate"));
+
+        return new MovieDetails(movieId, MovieDetails.SOURCE_IMDB, title, overview, poster,
+                rating, releaseDate, System.currentTimeMillis());
+    }
+
+    /**
+     * Convierte la respuesta de /movie/{id} de TMDB al formato unificado.
+     */
+    private static MovieDetails parseTmdbDetails(String movieId, String response) throws Exception {
+        JSONObject json = new JSONObject(response);
+        String posterPath = json.optString("poster_path", "");
+        String poster = posterPath.isEmpty() || "null".equals(posterPath) ? null : TMDB_IMAGE_BASE_URL + posterPath;
+        String releaseDate = json.optString("release_date", "");
+
+        return new MovieDetails(movieId, MovieDetails.SOURCE_TMDB,
+                json.optString("title", null),
+                json.optString("overview", null),
+                poster,
+                json.optDouble("vote_average", 0.0),
+                releaseDate.isEmpty() ? null : releaseDate,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Formatea la fecha de estreno de IMDb ({year, month, day}) como yyyy-MM-dd.
+     */
+    @SuppressLint("DefaultLocale")
+    private static String formatReleaseDate(JSONObject releaseDate) {
+        if (releaseDate == null) return null;
+        int year = releaseDate.optInt("year", 0);
+        int month = releaseDate.optInt("month", 0);
+        int day = releaseDate.optInt("day", 0);
+        return year == 0 ? null : String.format("%d-%02d-%02d", year, month, day);
+    }
+}
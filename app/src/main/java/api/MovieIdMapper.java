@@ -0,0 +1,78 @@
+package api;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import database.SQLiteHelper;
+
+/**
+ * Resuelve la equivalencia entre los IDs de IMDb ("tt...") y los IDs numéricos de TMDB.
+ * <p>
+ * Las equivalencias se guardan en la tabla 'movie_id_map' de SQLite, de modo que cada
+ * película solo se consulta una vez a TMDB (endpoints /find y /external_ids).
+ */
+public class MovieIdMapper {
+
+    private static final String TAG = "MovieIdMapper";
+
+    private final TMDBApiService tmdbApiService; // Servicio de API de TMDB
+    private final SQLiteHelper dbHelper;         // Base de datos local
+
+    /**
+     * Constructor de la clase.
+     *
+     * @param context Contexto de la aplicación.
+     */
+    public MovieIdMapper(Context context) {
+        this.tmdbApiService = new TMDBApiService();
+        this.dbHelper = SQLiteHelper.getInstance(context);
+    }
+
+    /**
+     * Devuelve el ID equivalente de la película en la otra fuente, consultando TMDB
+     * solo si la equivalencia todavía no está guardada. Debe llamarse fuera del hilo principal.
+     *
+     * @param movieId ID de IMDb ("tt...") o de TMDB.
+     * @return El ID equivalente o null si no existe o no se pudo obtener.
+     */
+    public String resolveLinkedId(String movieId) {
+        String linkedId = dbHelper.getLinkedMovieId(movieId);
+        if (linkedId != null) {
+            return linkedId;
+        }
+        try {
+            if (movieId.startsWith("tt")) {
+                linkedId = parseFindResponse(tmdbApiService.findByImdbId(movieId));
+                dbHelper.saveMovieIdMapping(movieId, linkedId);
+            } else {
+                linkedId = parseExternalIdsResponse(tmdbApiService.getExternalIds(movieId));
+                dbHelper.saveMovieIdMapping(linkedId, movieId);
+            }
+            return linkedId;
+        } catch (Exception e) {
+            Log.w(TAG, "No se pudo resolver el ID equivalente de " + movieId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Extrae el ID de TMDB de la respuesta de /find/{imdb_id}.
+     */
+    private static String parseFindResponse(String response) throws Exception {
+        JSONArray results = new JSONObject(response).optJSONArray("movie_results");
+        if (results == null || results.length() == 0) return null;
+        JSONObject movie = results.optJSONObject(0);
+        return movie != null && movie.has("id") ? String.valueOf(movie.getInt("id")) : null;
+    }
+
+    /**
+     * Extrae el ID de IMDb de la respuesta de /movie/{id}/external_ids.
+     */
+    private static String parseExternalIdsResponse(String response) throws Exception {
+        String imdbId = new JSONObject(response).optString("imdb_id", "");
+        return imdbId.startsWith("tt") ? imdbId : null;
+    }
+}
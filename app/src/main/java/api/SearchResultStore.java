@@ -0,0 +1,176 @@
+package api;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import database.Movie;
+
+/**
+ * Almacén en memoria (de ámbito de proceso) de los resultados de búsqueda por género y año.
+ * <p>
+ * La pantalla de búsqueda guarda aquí el resultado y solo pasa a {@link
+ * edu.pmdm.delgado_victorimdbapp.MovieListActivity} un identificador ("handle") del
+ * conjunto de resultados. Así la lista no se serializa a través del Binder, no está
+ * limitada por el tamaño máximo de una transacción y no se duplica en memoria.
+ * <p>
+ * Cada conjunto guarda las páginas de TMDB ya descargadas y permite pedir las siguientes.
+ * Si el proceso se ha reiniciado, el conjunto no existe y se reconstruye con
+ * {@link #loadFirstPage(int, int)} a partir del género y el año.
+ */
+public class SearchResultStore {
+
+    private static final String TAG = "SearchResultStore";
+    private static final String TMDB_IMAGE_BASE_URL = "https://image.tmdb.org/t/p/w500";
+    private static final int MAX_RESULT_SETS = 5; // Conjuntos de resultados que se conservan como máximo
+
+    private static SearchResultStore instance;
+
+    // Conjuntos de resultados por handle, del menos al más recientemente usado
+    private final Map<String, ResultSet> resultSets = new LinkedHashMap<String, ResultSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResultSet> eldest) {
+            return size() > MAX_RESULT_SETS;
+        }
+    };
+    private final TMDBApiService apiService = new TMDBApiService();
+
+    /**
+     * Obtiene la instancia única (Singleton) del almacén.
+     *
+     * @return Instancia de SearchResultStore
+     */
+    public static synchronized SearchResultStore getInstance() {
+        if (instance == null) {
+            instance = new SearchResultStore();
+        }
+        return instance;
+    }
+
+    private SearchResultStore() {
+    }
+
+    /**
+     * Identificador del conjunto de resultados de una búsqueda.
+     *
+     * @param genreId ID del género.
+     * @param year    Año de estreno.
+     * @return Handle del conjunto de resultados.
+     */
+    public static String handleFor(int genreId, int year) {
+        return "discover:" + genreId + ":" + year;
+    }
+
+    /**
+     * Devuelve el conjunto de resultados guardado, sin acceder a la red.
+     *
+     * @param handle Handle del conjunto.
+     * @return El conjunto o null si no existe (por ejemplo, tras reiniciarse el proceso).
+     */
+    public synchronized ResultSet getResultSet(String handle) {
+        return resultSets.get(handle);
+    }
+
+    /**
+     * Descarga la primera página de una búsqueda y guarda el conjunto de resultados,
+     * sustituyendo al anterior de la misma búsqueda.
+     *
+     * @param genreId ID del género.
+     * @param year    Año de estreno.
+     * @return El conjunto de resultados con la primera página.
+     * @throws Exception En caso de error durante la solicitud o el análisis de la respuesta.
+     */
+    public ResultSet loadFirstPage(int genreId, int year) throws Exception {
+        ResultSet resultSet = new ResultSet(genreId, year);
+        resultSet.addPage(apiService.getMoviesByGenreAndYear(genreId, year, 1));
+        synchronized (this) {
+            resultSets.put(handleFor(genreId, year), resultSet);
+        }
+        return resultSet;
+    }
+
+    /**
+     * Descarga la siguiente página de un conjunto de resultados.
+     *
+     * @param resultSet Conjunto de resultados.
+     * @return True si se añadió una página, False si no quedaban más.
+     * @throws Exception En caso de error durante la solicitud o el análisis de la respuesta.
+     */
+    public boolean loadNextPage(ResultSet resultSet) throws Exception {
+        if (!resultSet.hasMorePages()) return false;
+        resultSet.addPage(apiService.getMoviesByGenreAndYear(
+                resultSet.genreId, resultSet.year, resultSet.getLoadedPages() + 1));
+        return true;
+    }
+
+    /**
+     * Resultados de una búsqueda: películas de las páginas descargadas, sin repetidos.
+     */
+    public static class ResultSet {
+        private final int genreId;
+        private final int year;
+        private final List<Movie> movies = new ArrayList<>();
+        private final Set<String> movieIds = new HashSet<>(); // Para descartar repetidos entre páginas
+        private int loadedPages = 0;
+        private int totalPages = 1;
+
+        ResultSet(int genreId, int year) {
+            this.genreId = genreId;
+            this.year = year;
+        }
+
+        public int getGenreId() {
+            return genreId;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        /**
+         * Copia de las películas descargadas hasta el momento, en orden.
+         */
+        public synchronized List<Movie> getMovies() {
+            return new ArrayList<>(movies);
+        }
+
+        public synchronized int getLoadedPages() {
+            return loadedPages;
+        }
+
+        public synchronized boolean hasMorePages() {
+            return loadedPages < totalPages;
+        }
+
+        /**
+         * Añade las películas de una respuesta de /discover/movie (solo las que tienen póster).
+         */
+        synchronized void addPage(String response) throws Exception {
+            JSONObject jsonObject = new JSONObject(response);
+            JSONArray results = jsonObject.getJSONArray("results");
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject movie = results.getJSONObject(i);
+
+                String id = String.valueOf(movie.getInt("id")); // ID de la película
+                String title = movie.optString("title", "Título no disponible"); // Título
+                String posterPath = movie.optString("poster_path", ""); // URL del póster
+
+                if (!posterPath.isEmpty() && !"null".equals(posterPath) && movieIds.add(id)) {
+                    movies.add(new Movie(id, TMDB_IMAGE_BASE_URL + posterPath, title));
+                }
+            }
+            loadedPages = jsonObject.optInt("page", loadedPages + 1);
+            totalPages = jsonObject.optInt("total_pages", loadedPages);
+            Log.d(TAG, "Página " + loadedPages + "/" + totalPages + " de " + handleFor(genreId, year)
+                    + ": " + movies.size() + " películas");
+        }
+    }
+}
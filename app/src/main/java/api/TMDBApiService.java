@@ -30,8 +30,22 @@ public class TMDBApiService {
      * @throws Exception En caso de error durante la solicitud HTTP.
      */
     public String getMoviesByGenreAndYear(int genreId, int year) throws Exception {
+        return getMoviesByGenreAndYear(genreId, year, 1);
+    }
+
+    /**
+     * Realiza una solicitud GET para obtener una página de películas filtradas por género y año.
+     *
+     * @param genreId ID del género para filtrar las películas.
+     * @param year Año específico de las películas que se desean obtener.
+     * @param page Número de página (empieza en 1).
+     * @return Respuesta JSON en formato String con la página de películas y "total_pages".
+     * @throws Exception En caso de error durante la solicitud HTTP.
+     */
+    public String getMoviesByGenreAndYear(int genreId, int year, int page) throws Exception {
         String endpoint = BASE_URL + "/discover/movie?with_genres=" + genreId
                 + "&primary_release_year=" + year
+                + "&page=" + page
                 + "&language=en-US&api_key=" + API_KEY;
         return makeApiRequest(endpoint);
     }
@@ -48,6 +62,30 @@ public class TMDBApiService {
         return makeApiRequest(endpoint);
     }
 
+    /**
+     * Realiza una solicitud GET para buscar una película de TMDB a partir de su ID de IMDb.
+     *
+     * @param imdbId ID de IMDb de la película (por ejemplo, "tt0120338").
+     * @return Respuesta JSON en formato String; la película aparece en "movie_results".
+     * @throws Exception En caso de error durante la solicitud HTTP.
+     */
+    public String findByImdbId(String imdbId) throws Exception {
+        String endpoint = BASE_URL + "/find/" + imdbId + "?external_source=imdb_id&api_key=" + API_KEY;
+        return makeApiRequest(endpoint);
+    }
+
+    /**
+     * Realiza una solicitud GET para obtener los IDs externos (IMDb, etc.) de una película de TMDB.
+     *
+     * @param movieId ID único de la película en TMDB.
+     * @return Respuesta JSON en formato String; el ID de IMDb aparece en "imdb_id".
+     * @throws Exception En caso de error durante la solicitud HTTP.
+     */
+    public String getExternalIds(String movieId) throws Exception {
+        String endpoint = BASE_URL + "/movie/" + movieId + "/external_ids?api_key=" + API_KEY;
+        return makeApiRequest(endpoint);
+    }
+
     /**
      * Método genérico para realizar solicitudes GET a un endpoint de la API.
      *
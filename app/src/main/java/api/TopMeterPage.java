@@ -0,0 +1,95 @@
+package api;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import database.Movie;
+
+/**
+ * Página del ranking "top meter" de IMDb: los títulos de la página y el cursor
+ * necesario para pedir la siguiente ("endCursor" / parámetro "after").
+ */
+public class TopMeterPage {
+
+    private static final String TAG = "TopMeterPage";
+
+    private final List<Movie> movies; // Títulos de la página, en orden de ranking
+    private final String endCursor;   // Cursor para pedir la siguiente página
+    private final boolean hasNextPage; // Indica si quedan más títulos
+
+    public TopMeterPage(List<Movie> movies, String endCursor, boolean hasNextPage) {
+        this.movies = movies;
+        this.endCursor = endCursor;
+        this.hasNextPage = hasNextPage;
+    }
+
+    public List<Movie> getMovies() {
+        return movies;
+    }
+
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    public boolean hasNextPage() {
+        return hasNextPage && endCursor != null;
+    }
+
+    /**
+     * Convierte la respuesta de get-top-meter en una página del ranking.
+     * Se descartan los títulos sin imagen.
+     *
+     * @param response Respuesta JSON de {@link IMDBApiService#getTopMeterTitles(int, String)}.
+     * @return La página (vacía y sin siguiente página si la respuesta no es válida).
+     */
+    public static TopMeterPage parse(String response) {
+        List<Movie> movies = new ArrayList<>();
+        String endCursor = null;
+        boolean hasNextPage = false;
+        try {
+            JSONObject jsonResponse = new JSONObject(response);
+            JSONObject data = jsonResponse.optJSONObject("data");
+            if (data == null) return new TopMeterPage(movies, null, false);
+
+            JSONObject topMeterTitles = data.optJSONObject("topMeterTitles");
+            if (topMeterTitles == null) return new TopMeterPage(movies, null, false);
+
+            JSONObject pageInfo = topMeterTitles.optJSONObject("pageInfo");
+            if (pageInfo != null) {
+                endCursor = pageInfo.isNull("endCursor") ? null : pageInfo.optString("endCursor", null);
+                hasNextPage = pageInfo.optBoolean("hasNextPage", false);
+            }
+
+            JSONArray edges = topMeterTitles.optJSONArray("edges");
+            if (edges == null) return new TopMeterPage(movies, endCursor, hasNextPage);
+
+            for (int i = 0; i < edges.length(); i++) {
+                JSONObject nodeWrapper = edges.optJSONObject(i);
+                if (nodeWrapper == null) continue;
+
+                JSONObject node = nodeWrapper.optJSONObject("node");
+                if (node == null) continue;
+
+                String id = node.optString("id", "Sin ID");
+
+                JSONObject titleText = node.optJSONObject("titleText");
+                String title = (titleText != null) ? titleText.optString("text", "Título desconocido") : "Título desconocido";
+
+                JSONObject primaryImage = node.optJSONObject("primaryImage");
+                String imageUrl = (primaryImage != null) ? primaryImage.optString("url", "") : "";
+
+                if (!imageUrl.isEmpty()) {
+                    movies.add(new Movie(id, imageUrl, title));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al analizar datos de películas", e);
+        }
+        return new TopMeterPage(movies, endCursor, hasNextPage);
+    }
+}
@@ -0,0 +1,186 @@
+package database;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fachada asíncrona sobre {@link SQLiteHelper}: todas las lecturas y escrituras se
+ * ejecutan fuera del hilo principal y el resultado se devuelve como {@link Future}
+ * (código en segundo plano) o como {@link LiveData} (pantallas, que lo reciben ya en
+ * el hilo principal).
+ * <p>
+ * Las escrituras (y las lecturas que deben ver una escritura anterior) se ejecutan, en
+ * orden, en un único hilo: una operación encolada después de una escritura ya ve el
+ * cambio. Las lecturas independientes ({@link #read(Callable)}) usan un pequeño grupo de
+ * hilos que, gracias al modo WAL, leen en paralelo sin esperar a las escrituras.
+ */
+public class AsyncDatabase {
+
+    private static final String TAG = "AsyncDatabase";
+    private static final int READER_THREADS = 3; // Lectores simultáneos (una conexión de lectura cada uno)
+
+    @SuppressLint("StaticFieldLeak")
+    private static AsyncDatabase instance;
+
+    private final SQLiteHelper dbHelper;
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "db-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Obtiene la instancia única (Singleton) de la fachada.
+     *
+     * @param context Contexto de la aplicación
+     * @return Instancia de AsyncDatabase
+     */
+    public static synchronized AsyncDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new AsyncDatabase(SQLiteHelper.getInstance(context));
+        }
+        return instance;
+    }
+
+    private AsyncDatabase(SQLiteHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Executor de la base de datos, para encadenar trabajo (por ejemplo, callbacks de
+     * Firestore) que debe acceder a SQLite.
+     */
+    public Executor getExecutor() {
+        return dbExecutor;
+    }
+
+    /**
+     * Encola una operación sin resultado.
+     */
+    public void execute(Runnable operation) {
+        dbExecutor.execute(() -> {
+            try {
+                operation.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error en una operación de base de datos", e);
+            }
+        });
+    }
+
+    /**
+     * Encola una operación y devuelve su resultado como Future.
+     */
+    public <T> Future<T> submit(Callable<T> operation) {
+        return dbExecutor.submit(operation);
+    }
+
+    /**
+     * Encola una operación y publica su resultado en un LiveData (null si falla).
+     */
+    public <T> LiveData<T> query(Callable<T> operation) {
+        MutableLiveData<T> result = new MutableLiveData<>();
+        dbExecutor.execute(() -> {
+            try {
+                result.postValue(operation.call());
+            } catch (Exception e) {
+                Log.e(TAG, "Error en una consulta de base de datos", e);
+                result.postValue(null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Ejecuta una lectura independiente en el grupo de lectores, sin esperar a las
+     * escrituras encoladas, y publica su resultado en un LiveData (null si falla).
+     * No debe usarse para leer algo que se acaba de escribir con este mismo objeto.
+     */
+    public <T> LiveData<T> read(Callable<T> operation) {
+        MutableLiveData<T> result = new MutableLiveData<>();
+        executeRead(() -> {
+            try {
+                result.postValue(operation.call());
+            } catch (Exception e) {
+                Log.e(TAG, "Error en una lectura de base de datos", e);
+                result.postValue(null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Encola una lectura independiente (sin resultado) en el grupo de lectores.
+     */
+    public void executeRead(Runnable operation) {
+        readExecutor.execute(() -> {
+            try {
+                operation.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Error en una lectura de base de datos", e);
+            }
+        });
+    }
+
+    // ---- Usuarios ----
+
+    public LiveData<User> getUser(String userId) {
+        return read(() -> dbHelper.getUser(userId));
+    }
+
+    public Future<Boolean> addUser(User user) {
+        return submit(() -> dbHelper.addUser(user));
+    }
+
+    public Future<Boolean> updateUserHeader(UserHeader header) {
+        return submit(() -> dbHelper.updateUserHeader(header));
+    }
+
+    public LiveData<Boolean> updateUserSpecificFields(String userId, String newName, String newEmail,
+                                                      String newAddress, String newImage, String newPhone) {
+        return query(() -> dbHelper.updateUserSpecificFields(userId, newName, newEmail, newAddress, newImage, newPhone));
+    }
+
+    // ---- Favoritos ----
+
+    public LiveData<List<Movie>> getFavoriteMovies(String userId) {
+        return read(() -> dbHelper.getFavoriteMovies(userId));
+    }
+
+    /**
+     * Añade una película a favoritos.
+     *
+     * @return LiveData con True si se añadió, False si ya era favorita (o no se pudo añadir).
+     */
+    public LiveData<Boolean> addMovieToFavorites(String userId, Movie movie) {
+        return query(() -> {
+            if (dbHelper.isMovieFavorite(userId, movie.getMovie_id())) return false;
+            dbHelper.addMovieToFavorites(userId, movie.getMovie_id(), movie.getPoster(), movie.getTitle());
+            return dbHelper.isMovieFavorite(userId, movie.getMovie_id());
+        });
+    }
+
+    /**
+     * Elimina una película (y su equivalente) de favoritos.
+     *
+     * @return LiveData con el número de filas eliminadas.
+     */
+    public LiveData<Integer> removeMovieFromFavorites(String userId, String movieId) {
+        return query(() -> dbHelper.removeMovieFromFavorites(userId, movieId));
+    }
+}
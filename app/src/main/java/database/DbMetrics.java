@@ -0,0 +1,192 @@
+package database;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de las operaciones de {@link SQLiteHelper}: para cada operación se cuentan las
+ * llamadas, las filas leídas o escritas, las que se hicieron desde el hilo principal y un
+ * histograma de la latencia. Las operaciones que superan {@link #SLOW_OPERATION_MS} se
+ * registran en el log junto con su SQL.
+ * <p>
+ * El resumen se obtiene con {@link #dump(PrintWriter)}; en depuración puede verse con
+ * {@code adb shell dumpsys activity edu.pmdm.delgado_victorimdbapp/.MainActivity db}.
+ */
+public class DbMetrics {
+
+    private static final String TAG = "DbMetrics";
+    static final long SLOW_OPERATION_MS = 16; // Una operación más larga que un fotograma se considera lenta
+    // Límites superiores (ms) de los intervalos del histograma; el último intervalo no tiene límite
+    private static final long[] BUCKET_LIMITS_MS = {1, 4, 16, 64, 256};
+
+    private final Map<String, OperationStats> operations = new TreeMap<>(); // Por nombre (protegido por 'this')
+
+    /**
+     * Marca el inicio de una operación.
+     *
+     * @return Instante de inicio, para pasarlo a record().
+     */
+    long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra una operación terminada.
+     *
+     * @param operation  Nombre de la operación (normalmente, el método de SQLiteHelper).
+     * @param sql        SQL ejecutado (o la tabla afectada), para el log de operaciones lentas.
+     * @param startNanos Valor devuelto por start().
+     * @param rows       Filas leídas o escritas.
+     */
+    void record(String operation, String sql, long startNanos, int rows) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+        OperationStats stats;
+        synchronized (this) {
+            stats = operations.get(operation);
+            if (stats == null) {
+                stats = new OperationStats(operation);
+                operations.put(operation, stats);
+            }
+        }
+        stats.add(elapsedNanos, rows, mainThread);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        if (elapsedMs >= SLOW_OPERATION_MS) {
+            Log.w(TAG, "Operación lenta: " + operation + " (" + elapsedMs + " ms, " + rows + " filas"
+                    + (mainThread ? ", hilo principal" : "") + "): " + sql);
+        }
+    }
+
+    /**
+     * Devuelve una copia de las métricas de cada operación, ordenadas por nombre.
+     */
+    public List<OperationStats> snapshot() {
+        List<OperationStats> snapshot = new ArrayList<>();
+        synchronized (this) {
+            for (OperationStats stats : operations.values()) {
+                snapshot.add(stats.copy());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Descarta todas las métricas recogidas.
+     */
+    public synchronized void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Escribe un resumen legible de las métricas: una línea por operación con el número de
+     * llamadas, la latencia media y máxima, las filas, las llamadas lentas y desde el hilo
+     * principal, y el histograma de latencia.
+     */
+    public void dump(PrintWriter writer) {
+        StringBuilder header = new StringBuilder("operación llamadas media_ms max_ms filas lentas hilo_principal");
+        for (long limit : BUCKET_LIMITS_MS) {
+            header.append(" <").append(limit).append("ms");
+        }
+        header.append(" >=").append(BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1]).append("ms");
+        writer.println(header);
+        for (OperationStats stats : snapshot()) {
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%s %d %.2f %.2f %d %d %d",
+                    stats.getOperation(), stats.getCount(), stats.getAverageMillis(), stats.getMaxMillis(),
+                    stats.getRows(), stats.getSlowCount(), stats.getMainThreadCount()));
+            for (long bucket : stats.getHistogram()) {
+                line.append(' ').append(bucket);
+            }
+            writer.println(line);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Métricas acumuladas de una operación.
+     */
+    public static class OperationStats {
+        private final String operation;
+        private final long[] histogram = new long[BUCKET_LIMITS_MS.length + 1];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private long slowCount;
+        private long mainThreadCount;
+
+        OperationStats(String operation) {
+            this.operation = operation;
+        }
+
+        synchronized void add(long elapsedNanos, int rows, boolean mainThread) {
+            count++;
+            totalNanos += elapsedNanos;
+            maxNanos = Math.max(maxNanos, elapsedNanos);
+            this.rows += rows;
+            if (mainThread) mainThreadCount++;
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            if (elapsedMs >= SLOW_OPERATION_MS) slowCount++;
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MS.length && elapsedMs >= BUCKET_LIMITS_MS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket]++;
+        }
+
+        synchronized OperationStats copy() {
+            OperationStats copy = new OperationStats(operation);
+            System.arraycopy(histogram, 0, copy.histogram, 0, histogram.length);
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.rows = rows;
+            copy.slowCount = slowCount;
+            copy.mainThreadCount = mainThreadCount;
+            return copy;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getAverageMillis() {
+            return count == 0 ? 0.0 : totalNanos / (count * 1_000_000.0);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getSlowCount() {
+            return slowCount;
+        }
+
+        public long getMainThreadCount() {
+            return mainThreadCount;
+        }
+
+        /**
+         * Número de llamadas en cada intervalo de latencia (&lt;1, &lt;4, &lt;16, &lt;64, &lt;256 y &gt;=256 ms).
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+    }
+}
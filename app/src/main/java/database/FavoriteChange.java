@@ -0,0 +1,52 @@
+package database;
+
+/**
+ * Estado de un favorito tal y como se sincroniza entre SQLite y Firestore: además de la
+ * película incluye cuándo se modificó por última vez y si se ha eliminado (marca de
+ * borrado), de modo que ambos lados puedan quedarse con la versión más reciente.
+ */
+public class FavoriteChange {
+
+    private final String movieId;
+    private final String poster;
+    private final String title;
+    private final long addedAt;   // Momento (ms) en que se añadió a favoritos
+    private final long updatedAt; // Momento (ms) de la última modificación
+    private final boolean deleted;
+
+    public FavoriteChange(String movieId, String poster, String title, long addedAt, long updatedAt, boolean deleted) {
+        this.movieId = movieId;
+        this.poster = poster;
+        this.title = title;
+        this.addedAt = addedAt;
+        this.updatedAt = updatedAt;
+        this.deleted = deleted;
+    }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public String getPoster() {
+        return poster;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getAddedAt() {
+        return addedAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Indica si el cambio es una eliminación.
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
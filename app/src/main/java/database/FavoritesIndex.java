@@ -0,0 +1,119 @@
+package database;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice en memoria de los favoritos de cada usuario, usado por {@link SQLiteHelper}.
+ * <p>
+ * Para cada usuario se cargan una sola vez los IDs de sus favoritos (junto con sus IDs
+ * equivalentes de IMDb/TMDB) y después se mantienen al día con cada escritura en la
+ * tabla 'favorites' (write-through). Así, comprobar si una película es favorita no
+ * accede a SQLite, que sigue siendo el almacenamiento persistente.
+ */
+class FavoritesIndex {
+
+    // IDs favoritos (y sus equivalentes) por usuario; solo usuarios ya cargados
+    private final Map<String, Set<String>> favoritesByUser = new HashMap<>();
+    // Usuarios cuya existencia en la tabla 'users' ya se ha comprobado
+    private final Set<String> knownUsers = new HashSet<>();
+
+    /**
+     * Indica si los favoritos del usuario ya están cargados en memoria.
+     */
+    synchronized boolean isLoaded(String userId) {
+        return favoritesByUser.containsKey(userId);
+    }
+
+    /**
+     * Guarda los favoritos leídos de la base de datos para un usuario.
+     *
+     * @param userId ID del usuario.
+     * @param ids    IDs favoritos y sus equivalentes.
+     */
+    synchronized void load(String userId, Collection<String> ids) {
+        favoritesByUser.put(userId, new HashSet<>(ids));
+        knownUsers.add(userId);
+    }
+
+    /**
+     * Indica si una película es favorita del usuario (directamente o por su ID equivalente).
+     */
+    synchronized boolean contains(String userId, String movieId) {
+        Set<String> ids = favoritesByUser.get(userId);
+        return ids != null && ids.contains(movieId);
+    }
+
+    /**
+     * Filtra los IDs indicados y devuelve los que son favoritos del usuario.
+     */
+    synchronized Set<String> filterFavorites(String userId, Collection<String> movieIds) {
+        Set<String> result = new HashSet<>();
+        Set<String> ids = favoritesByUser.get(userId);
+        if (ids == null) return result;
+        for (String movieId : movieIds) {
+            if (ids.contains(movieId)) result.add(movieId);
+        }
+        return result;
+    }
+
+    /**
+     * Registra un favorito recién insertado.
+     *
+     * @param linkedId ID equivalente en la otra fuente (puede ser null).
+     */
+    synchronized void add(String userId, String movieId, String linkedId) {
+        Set<String> ids = favoritesByUser.get(userId);
+        if (ids == null) return; // Se cargará completo la próxima vez
+        ids.add(movieId);
+        if (linkedId != null) ids.add(linkedId);
+    }
+
+    /**
+     * Registra la eliminación de un favorito (y de su equivalente).
+     */
+    synchronized void remove(String userId, String movieId, String linkedId) {
+        Set<String> ids = favoritesByUser.get(userId);
+        if (ids == null) return;
+        ids.remove(movieId);
+        if (linkedId != null) ids.remove(linkedId);
+    }
+
+    /**
+     * Registra una nueva equivalencia de IDs: si uno de los dos es favorito, el otro también.
+     */
+    synchronized void onMappingSaved(String imdbId, String tmdbId) {
+        for (Set<String> ids : favoritesByUser.values()) {
+            if (ids.contains(imdbId) || ids.contains(tmdbId)) {
+                ids.add(imdbId);
+                ids.add(tmdbId);
+            }
+        }
+    }
+
+    /**
+     * Descarta los favoritos en memoria de un usuario; se volverán a cargar en el siguiente acceso.
+     */
+    synchronized void invalidate(String userId) {
+        favoritesByUser.remove(userId);
+    }
+
+    synchronized boolean isKnownUser(String userId) {
+        return knownUsers.contains(userId);
+    }
+
+    synchronized void markKnownUser(String userId) {
+        knownUsers.add(userId);
+    }
+
+    /**
+     * Descarta todo el índice (por ejemplo, tras recrear las tablas).
+     */
+    synchronized void clear() {
+        favoritesByUser.clear();
+        knownUsers.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package database;
+
+import java.util.List;
+
+/**
+ * Página de favoritos obtenida con paginación por clave ("keyset"): en lugar de un OFFSET,
+ * cada página continúa a partir de la última fila de la anterior, de modo que el coste
+ * de pedir una página no depende de cuántas se hayan leído antes.
+ */
+public class FavoritesPage {
+
+    private final List<Movie> movies;
+    private final Key nextKey;
+
+    FavoritesPage(List<Movie> movies, Key nextKey) {
+        this.movies = movies;
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * Películas de la página, en el orden pedido.
+     */
+    public List<Movie> getMovies() {
+        return movies;
+    }
+
+    /**
+     * Clave para pedir la página siguiente, o null si esta es la última.
+     */
+    public Key getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasNextPage() {
+        return nextKey != null;
+    }
+
+    /**
+     * Posición de la última fila de una página: el valor de ordenación (fecha en que se
+     * añadió o título) y el ID de la película, que desempata.
+     */
+    public static class Key {
+        final long addedAt;
+        final String title;
+        final String movieId;
+
+        Key(long addedAt, String title, String movieId) {
+            this.addedAt = addedAt;
+            this.title = title;
+            this.movieId = movieId;
+        }
+    }
+}
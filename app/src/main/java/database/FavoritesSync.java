@@ -3,40 +3,78 @@ package database;
 import android.content.Context;
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Clase encargada de sincronizar la lista de películas favoritas
  * entre la base de datos local (SQLite) y la nube (Firestore).
  * <p>
+ * Cada favorito guarda, en ambos lados, cuándo se modificó por última vez (updated_at) y si
+ * se ha eliminado (deleted): eliminar un favorito deja una marca de borrado en lugar de
+ * borrar la fila o el documento, para que la eliminación llegue al otro lado. Si una película
+ * se modificó en ambos lados, gana la versión más reciente.
+ * <p>
+ * updated_at lo pone el reloj de cada dispositivo, así que solo sirve para decidir qué
+ * versión gana. Para saber qué hay que descargar, cada documento guarda además la hora
+ * del servidor a la que se escribió (synced_at). Así no se pierde un cambio subido tarde
+ * por un dispositivo que estuvo sin conexión, ni se deja de descargar porque otro
+ * dispositivo tenga el reloj adelantado. En local, cada favorito modificado queda marcado
+ * como pendiente de subir (dirty) hasta que su escritura en la nube se confirma.
+ * <p>
  * La estrategia de sincronización es la siguiente:
  *  - Al iniciar la aplicación (después del login en MainActivity), se
  *    invoca el método syncAtStartup():
- *      • Se consulta en Firestore si existe el documento de favoritos para
- *        el usuario actual.
- *      • Si el documento existe, se consulta la colección "movies":
- *          - Si hay datos en la nube pero no en la base de datos local, se
- *            insertan en SQLite.
- *          - Si hay datos en local pero la nube está vacía, se actualiza Firestore
- *            con los datos locales.
- *      • Si el documento no existe, se crea y se rellenan (si existen datos en local).
+ *      • Se descargan de la colección "movies" solo los documentos escritos en el servidor
+ *        después de la marca de agua de descarga y se aplican en SQLite.
+ *      • La primera vez, y después cada {@link #FULL_PULL_INTERVAL_HOURS} horas, se descarga
+ *        la colección completa: los documentos de versiones anteriores de la aplicación no
+ *        tienen synced_at (el filtro no los devuelve) y esas versiones borran el documento en
+ *        lugar de dejar una marca de borrado. Los favoritos ya subidos que no aparecen en la
+ *        nube se eliminan también en local.
+ *      • Se suben los favoritos locales pendientes en lotes de escrituras (WriteBatch)
+ *        con un número limitado de lotes en curso. Cada lote confirmado deja de estar
+ *        pendiente en SQLite.
+ *      • Cuando la subida termina, se eliminan las marcas de borrado locales que ya están
+ *        en la nube y tienen más de {@link #TOMBSTONE_RETENTION_DAYS} días.
  * <p>
- *  - Al añadir o eliminar una película se invocan los métodos addMovieToFavorites()
- *    y removeMovieFromFavorites() que actualizan ambos lados (local y nube) dinámicamente.
+ *  - Al añadir o eliminar una película en SQLite, el listener de {@link #cloudMirror(Context)}
+ *    (registrado una sola vez al iniciar la aplicación) replica el cambio en la nube y,
+ *    si la escritura se confirma, deja de estar pendiente.
  */
 public class FavoritesSync {
 
     private static final String TAG = "FavoritesSync";
+    private static final String FIELD_SYNCED_AT = "synced_at"; // Hora del servidor de la última escritura
+    // Horas entre descargas completas (para los documentos escritos por versiones anteriores)
+    private static final long FULL_PULL_INTERVAL_HOURS = 24;
+    // Días que se conservan en local las marcas de borrado ya subidas a la nube
+    private static final long TOMBSTONE_RETENTION_DAYS = 30;
+    // Firestore admite hasta 500 escrituras por lote
+    private static final int MAX_BATCH_OPERATIONS = 500;
+    // Lotes que pueden estar enviándose a la vez
+    private static final int MAX_PARALLEL_COMMITS = 3;
     private final FirebaseFirestore firestore;
     private final SQLiteHelper dbHelper;
+    private final AsyncDatabase asyncDb; // Hilo de la base de datos
     private final String userId; // ID del usuario actual
 
     /**
@@ -48,128 +86,251 @@ public class FavoritesSync {
     public FavoritesSync(Context context, String userId) {
         this.firestore = FirebaseFirestore.getInstance();
         this.dbHelper = SQLiteHelper.getInstance(context);
+        this.asyncDb = AsyncDatabase.getInstance(context);
         this.userId = userId;
     }
 
     /**
-     * Sincroniza los datos de favoritos entre la base de datos local y la nube
-     * al iniciar la aplicación.
+     * Crea el listener que replica en la nube cada favorito añadido o eliminado en SQLite,
+     * sea cual sea la pantalla que haga el cambio. Se sube el estado de la fila local, con
+     * su fecha de modificación, de modo que la siguiente sincronización lo reconozca.
+     *
+     * @param context Contexto de la aplicación.
+     * @return Listener para SQLiteHelper.addOnFavoritesChangedListener().
+     */
+    public static SQLiteHelper.OnFavoritesChangedListener cloudMirror(Context context) {
+        Context appContext = context.getApplicationContext();
+        return new SQLiteHelper.OnFavoritesChangedListener() {
+            @Override
+            public void onFavoriteAdded(String userId, Movie movie) {
+                new FavoritesSync(appContext, userId).pushLocalState(movie.getMovie_id());
+            }
+
+            @Override
+            public void onFavoriteRemoved(String userId, String movieId) {
+                new FavoritesSync(appContext, userId).pushLocalState(movieId);
+            }
+        };
+    }
+
+    /**
+     * Sincroniza los favoritos entre la base de datos local y la nube al iniciar la
+     * aplicación: primero se descargan y aplican los cambios de la nube y después se suben
+     * los cambios locales pendientes (ver la descripción de la clase).
      * <p>
-     * Se realiza lo siguiente:
-     *  - Se obtiene la lista de películas favoritas locales.
-     *  - Se consulta en Firestore si existe el documento de favoritos para el usuario.
-     *      • Si existe, se consulta la colección "movies":
-     *            - Si la nube tiene datos y la base de datos local está vacía, se
-     *              copian los datos de la nube a SQLite.
-     *            - Si la nube está vacía y local tiene datos, se actualiza Firestore.
-     *      • Si no existe, se crea el documento y se suben los datos locales (si existieran).
+     * Las lecturas y escrituras en SQLite se hacen en el hilo de la base de datos.
      */
     public void syncAtStartup() {
-        // Referencia al documento de favoritos del usuario en Firestore
-        DocumentReference userDocRef = firestore.collection("favorites").document(userId);
-        // Obtener los favoritos almacenados localmente
-        List<Movie> localFavorites = dbHelper.getFavoriteMovies(userId);
-
-        userDocRef.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                DocumentSnapshot document = task.getResult();
-                if (document.exists()) {
-                    // El documento de favoritos existe en la nube
-                    CollectionReference moviesCollection = userDocRef.collection("movies");
-                    moviesCollection.get().addOnCompleteListener(taskMovies -> {
-                        if (taskMovies.isSuccessful()) {
-                            QuerySnapshot querySnapshot = taskMovies.getResult();
-                            if (querySnapshot != null && !querySnapshot.isEmpty()) {
-                                // Existen datos en la nube
-                                if (localFavorites.isEmpty()) {
-                                    // Si no hay datos locales, se copian los datos de la nube a SQLite
-                                    querySnapshot.getDocuments().forEach(doc -> {
-                                        String movieId = doc.getString("movie_id");
-                                        String poster = doc.getString("poster");
-                                        String title = doc.getString("title");
-                                        dbHelper.addMovieToFavorites(userId, movieId, poster, title);
-                                    });
-                                    Log.d(TAG, "Se sincronizaron los datos de la nube a la base de datos local.");
-                                } else {
-                                    // Opcionalmente, se pueden comparar ambas listas y hacer merge si es necesario.
-                                    Log.d(TAG, "Los favoritos ya existen en ambos lados. Sincronización completada.");
-                                }
-                            } else {
-                                // La colección "movies" en la nube está vacía
-                                if (!localFavorites.isEmpty()) {
-                                    // Si hay datos locales, se actualiza la nube
-                                    for (Movie movie : localFavorites) {
-                                        addMovieToCloud(movie);
-                                    }
-                                    Log.d(TAG, "La nube estaba vacía. Se subieron los datos locales a la nube.");
-                                }
-                            }
-                        } else {
-                            Log.e(TAG, "Error al obtener las películas de la nube", taskMovies.getException());
-                        }
-                    });
-                } else {
-                    // El documento de favoritos no existe en la nube: se crea y se suben datos locales si existen
-                    userDocRef.set(new HashMap<>()).addOnCompleteListener(taskSet -> {
-                        if (taskSet.isSuccessful()) {
-                            Log.d(TAG, "Documento 'favorites' creado para el usuario: " + userId);
-                            if (!localFavorites.isEmpty()) {
-                                for (Movie movie : localFavorites) {
-                                    addMovieToCloud(movie);
-                                }
-                                Log.d(TAG, "Se subieron los datos locales a la nube.");
-                            }
-                        } else {
-                            Log.e(TAG, "Error al crear el documento 'favorites' para el usuario", taskSet.getException());
-                        }
-                    });
+        asyncDb.execute(this::pullCloudChanges);
+    }
+
+    /**
+     * Descarga los cambios de la nube escritos en el servidor después de la marca de agua
+     * de descarga, o la colección completa si toca (ver la descripción de la clase), y los
+     * aplica en SQLite. Se ejecuta en el hilo de la base de datos.
+     */
+    private void pullCloudChanges() {
+        long cloudWatermark = dbHelper.getCloudWatermark(userId);
+        long now = System.currentTimeMillis();
+        long lastFullPull = dbHelper.getLastFullPull(userId);
+        boolean fullPull = cloudWatermark == 0 || lastFullPull > now
+                || now - lastFullPull >= TimeUnit.HOURS.toMillis(FULL_PULL_INTERVAL_HOURS);
+        // Se leen antes de la consulta: un favorito cuya subida se confirme después podría no
+        // aparecer en la respuesta, y no por eso se ha borrado en la nube
+        Set<String> uploadedIds = fullPull ? dbHelper.getUploadedFavoriteIds(userId) : null;
+        Query query = moviesCollection();
+        if (!fullPull) {
+            query = query.whereGreaterThan(FIELD_SYNCED_AT, new Timestamp(new Date(cloudWatermark)));
+        }
+
+        // La respuesta se procesa en el hilo de la base de datos, ya que escribe en SQLite
+        query.get().addOnCompleteListener(asyncDb.getExecutor(), task -> {
+            if (!task.isSuccessful()) {
+                Log.e(TAG, "Error al obtener las películas de la nube", task.getException());
+                return;
+            }
+            QuerySnapshot querySnapshot = task.getResult();
+            List<FavoriteChange> cloudChanges = new ArrayList<>();
+            Set<String> cloudIds = new HashSet<>();
+            long newCloudWatermark = cloudWatermark;
+            if (querySnapshot != null) {
+                for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                    cloudIds.add(doc.getId());
+                    FavoriteChange change = fromDocument(doc);
+                    if (change == null) continue;
+                    cloudChanges.add(change);
+                    // En milisegundos, redondeando hacia abajo: en el peor caso se vuelve a
+                    // descargar algún documento, que no cambia nada al aplicarlo otra vez
+                    Timestamp syncedAt = doc.getTimestamp(FIELD_SYNCED_AT);
+                    if (syncedAt != null) {
+                        newCloudWatermark = Math.max(newCloudWatermark, syncedAt.toDate().getTime());
+                    }
                 }
+            }
+
+            int applied = dbHelper.mergeFavoriteChanges(userId, cloudChanges);
+            if (applied < 0) return; // Se reintentará en la siguiente sincronización
+            dbHelper.advanceCloudWatermark(userId, newCloudWatermark);
+            Log.d(TAG, "Cambios descargados de la nube: " + cloudChanges.size() + ", aplicados en local: " + applied);
+
+            // Sin conexión la respuesta sale de la caché de Firestore, que puede estar incompleta
+            if (uploadedIds != null && querySnapshot != null && !querySnapshot.getMetadata().isFromCache()) {
+                uploadedIds.removeAll(cloudIds);
+                int removed = dbHelper.removeFavoritesMissingFromCloud(userId, uploadedIds);
+                dbHelper.setLastFullPull(userId, now);
+                Log.d(TAG, "Descarga completa; favoritos borrados en la nube: " + removed);
+            }
+
+            pushLocalChanges();
+        });
+    }
+
+    /**
+     * Sube los favoritos locales pendientes (los cambios descargados de la nube no lo
+     * están). Se ejecuta en el hilo de la base de datos.
+     */
+    private void pushLocalChanges() {
+        List<FavoriteChange> uploads = dbHelper.getPendingFavoriteUploads(userId);
+        if (uploads.isEmpty()) {
+            purgeTombstones();
+            return;
+        }
+
+        uploadInBatches(uploads).addOnCompleteListener(asyncDb.getExecutor(), task -> {
+            if (!task.isSuccessful()) {
+                // Los lotes confirmados ya no están pendientes; el resto se sube la próxima vez
+                Log.e(TAG, "No se subieron todos los favoritos locales; se reintentará", task.getException());
             } else {
-                Log.e(TAG, "Error al obtener el documento 'favorites'", task.getException());
+                Log.d(TAG, "Se subieron " + uploads.size() + " favoritos locales a la nube.");
             }
+            purgeTombstones();
         });
     }
 
     /**
-     * Método auxiliar para añadir una película a la nube.
-     * <p>
-     * Se añade un documento en:
-     * favorites/{userId}/movies/{movieId}
+     * Elimina las marcas de borrado locales ya subidas a la nube y con más de
+     * {@link #TOMBSTONE_RETENTION_DAYS} días. Se ejecuta en el hilo de la base de datos.
+     */
+    private void purgeTombstones() {
+        long olderThan = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(TOMBSTONE_RETENTION_DAYS);
+        int purged = dbHelper.purgeFavoriteTombstones(userId, olderThan);
+        if (purged > 0) Log.d(TAG, "Marcas de borrado eliminadas: " + purged);
+    }
+
+    /**
+     * Sube una lista de favoritos (y marcas de borrado) agrupados en lotes de hasta
+     * {@link #MAX_BATCH_OPERATIONS} escrituras. Como mucho hay {@link #MAX_PARALLEL_COMMITS}
+     * lotes enviándose a la vez: los lotes se reparten en esa cantidad de cadenas y cada
+     * cadena envía el siguiente cuando termina el anterior.
      *
-     * @param movie Objeto Movie a añadir.
+     * @param changes Favoritos a subir.
+     * @return Tarea que termina cuando se han enviado todos los lotes; falla si falla alguno.
      */
-    public void addMovieToCloud(Movie movie) {
-        DocumentReference movieDocRef = firestore.collection("favorites")
-                .document(userId)
-                .collection("movies")
-                .document(movie.getMovie_id());
+    private Task<Void> uploadInBatches(List<FavoriteChange> changes) {
+        List<List<FavoriteChange>> batches = new ArrayList<>();
+        for (int from = 0; from < changes.size(); from += MAX_BATCH_OPERATIONS) {
+            batches.add(changes.subList(from, Math.min(from + MAX_BATCH_OPERATIONS, changes.size())));
+        }
 
-        Map<String, Object> movieData = new HashMap<>();
-        movieData.put("movie_id", movie.getMovie_id());
-        movieData.put("poster", movie.getPoster());
-        movieData.put("title", movie.getTitle());
+        List<Task<Void>> chains = new ArrayList<>();
+        for (int chain = 0; chain < Math.min(MAX_PARALLEL_COMMITS, batches.size()); chain++) {
+            Task<Void> tail = Tasks.forResult(null);
+            for (int i = chain; i < batches.size(); i += MAX_PARALLEL_COMMITS) {
+                List<FavoriteChange> batch = batches.get(i);
+                // Si un lote falla, los siguientes de la cadena no se envían
+                tail = tail.continueWithTask(previous -> previous.isSuccessful() ? commitBatch(batch) : previous);
+            }
+            chains.add(tail);
+        }
+        return Tasks.whenAll(chains);
+    }
 
-        movieDocRef.set(movieData)
-                .addOnSuccessListener(aVoid -> Log.d(TAG, "Película añadida a la nube: " + movie.getMovie_id()))
-                .addOnFailureListener(e -> Log.e(TAG, "Error al añadir la película a la nube: " + movie.getMovie_id(), e));
+    /**
+     * Envía un lote de escrituras en favorites/{userId}/movies en un solo commit. Si se
+     * confirma, los favoritos del lote dejan de estar pendientes en SQLite.
+     *
+     * @param changes Favoritos del lote (como mucho MAX_BATCH_OPERATIONS).
+     * @return Tarea del commit.
+     */
+    private Task<Void> commitBatch(List<FavoriteChange> changes) {
+        CollectionReference movies = moviesCollection();
+        WriteBatch batch = firestore.batch();
+        for (FavoriteChange change : changes) {
+            batch.set(movies.document(change.getMovieId()), toDocument(change));
+        }
+        return batch.commit()
+                .addOnSuccessListener(asyncDb.getExecutor(), aVoid -> {
+                    dbHelper.markFavoritesUploaded(userId, changes);
+                    Log.d(TAG, "Lote de " + changes.size() + " favoritos subido a la nube.");
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Error al subir un lote de " + changes.size() + " favoritos a la nube", e));
     }
 
     /**
-     * Método auxiliar para eliminar una película de la nube.
-     * <p>
-     * Se elimina el documento:
+     * Sube a la nube el estado local de un favorito (añadido o eliminado) y, si la escritura
+     * se confirma, lo marca como subido. Si falla, sigue pendiente y se sube en la siguiente
+     * sincronización. SQLite se usa desde el hilo de la base de datos.
+     *
+     * @param movieId ID de la película.
+     */
+    public void pushLocalState(String movieId) {
+        asyncDb.execute(() -> {
+            FavoriteChange change = dbHelper.getFavoriteChange(userId, movieId);
+            if (change != null) {
+                uploadChange(change).addOnSuccessListener(asyncDb.getExecutor(),
+                        aVoid -> dbHelper.markFavoritesUploaded(userId, Collections.singletonList(change)));
+            }
+        });
+    }
+
+    /**
+     * Escribe un favorito (o su marca de borrado) en:
      * favorites/{userId}/movies/{movieId}
      *
-     * @param movieId ID de la película a eliminar.
+     * @param change Estado del favorito.
+     * @return Tarea de la escritura.
+     */
+    private Task<Void> uploadChange(FavoriteChange change) {
+        String movieId = change.getMovieId();
+        return moviesCollection().document(movieId).set(toDocument(change))
+                .addOnSuccessListener(aVoid -> Log.d(TAG, (change.isDeleted() ? "Película eliminada de la nube: "
+                        : "Película añadida a la nube: ") + movieId))
+                .addOnFailureListener(e -> Log.e(TAG, "Error al subir la película a la nube: " + movieId, e));
+    }
+
+    private CollectionReference moviesCollection() {
+        return firestore.collection("favorites").document(userId).collection("movies");
+    }
+
+    private static Map<String, Object> toDocument(FavoriteChange change) {
+        Map<String, Object> movieData = new HashMap<>();
+        movieData.put("movie_id", change.getMovieId());
+        movieData.put("poster", change.getPoster());
+        movieData.put("title", change.getTitle());
+        movieData.put("added_at", change.getAddedAt());
+        movieData.put("updated_at", change.getUpdatedAt());
+        movieData.put("deleted", change.isDeleted());
+        movieData.put(FIELD_SYNCED_AT, FieldValue.serverTimestamp());
+        return movieData;
+    }
+
+    /**
+     * Convierte un documento de la nube en un cambio. Los documentos subidos por versiones
+     * anteriores no tienen fechas ni marca de borrado: se toman como favoritos con fecha 0,
+     * de modo que cualquier cambio local prevalece. Tampoco tienen synced_at, así que solo
+     * se descargan en las descargas completas, que no filtran.
+     *
+     * @return El cambio, o null si el documento no tiene ID de película.
      */
-    public void removeMovieFromCloud(String movieId) {
-        DocumentReference movieDocRef = firestore.collection("favorites")
-                .document(userId)
-                .collection("movies")
-                .document(movieId);
-
-        movieDocRef.delete()
-                .addOnSuccessListener(aVoid -> Log.d(TAG, "Película eliminada de la nube: " + movieId))
-                .addOnFailureListener(e -> Log.e(TAG, "Error al eliminar la película de la nube: " + movieId, e));
+    private static FavoriteChange fromDocument(DocumentSnapshot doc) {
+        String movieId = doc.getString("movie_id");
+        if (movieId == null) return null;
+        Long addedAt = doc.getLong("added_at");
+        Long updatedAt = doc.getLong("updated_at");
+        Boolean deleted = doc.getBoolean("deleted");
+        return new FavoriteChange(movieId, doc.getString("poster"), doc.getString("title"),
+                addedAt != null ? addedAt : 0L,
+                updatedAt != null ? updatedAt : 0L,
+                deleted != null && deleted);
     }
-}
\ No newline at end of file
+}
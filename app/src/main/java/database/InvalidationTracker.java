@@ -0,0 +1,199 @@
+package database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Avisa a las pantallas de que los datos de una tabla han cambiado para un usuario, de
+ * modo que solo vuelvan a consultar la base de datos cuando su contenido ha cambiado.
+ * <p>
+ * {@link SQLiteHelper} notifica cada escritura indicando la tabla y el usuario. Los avisos
+ * se agrupan y se entregan en el hilo principal una sola vez por fotograma, así que una
+ * ráfaga de escrituras (por ejemplo, una sincronización) produce un único aviso.
+ * <p>
+ * Los observadores pueden registrarse de dos formas:
+ *  - {@link #addObserver}: se guardan con una referencia débil, así que quien los registra
+ *    (normalmente un ViewModel) debe conservarlos mientras le interesen.
+ *  - {@link #observe}: quedan ligados al ciclo de vida indicado; solo reciben avisos mientras
+ *    está iniciado (los que llegan en segundo plano se entregan al volver) y se eliminan
+ *    al destruirse.
+ */
+public class InvalidationTracker {
+
+    public static final String TABLE_FAVORITES = "favorites";
+
+    /**
+     * Observador de cambios en una tabla.
+     */
+    public interface Observer {
+        /**
+         * Los datos de la tabla han cambiado para el usuario. Se llama en el hilo principal.
+         *
+         * @param table  Tabla modificada.
+         * @param userId Usuario cuyos datos han cambiado.
+         */
+        void onInvalidated(String table, String userId);
+    }
+
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> dispatchPending();
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    // Cambios pendientes de entregar, por tabla (protegido por 'this')
+    private Map<String, Set<String>> pending = new HashMap<>();
+    private boolean frameScheduled = false;
+
+    /**
+     * Registra un observador de los cambios de una tabla para un usuario. Se guarda con una
+     * referencia débil.
+     *
+     * @param table    Tabla observada.
+     * @param userId   Usuario observado (null para todos).
+     * @param observer Observador.
+     */
+    public void addObserver(String table, String userId, Observer observer) {
+        registrations.add(new Registration(table, userId, new WeakReference<>(observer), null));
+    }
+
+    /**
+     * Registra un observador ligado a un ciclo de vida: solo recibe avisos mientras está
+     * iniciado y se elimina al destruirse.
+     *
+     * @param owner    Ciclo de vida (por ejemplo, getViewLifecycleOwner()).
+     * @param table    Tabla observada.
+     * @param userId   Usuario observado (null para todos).
+     * @param observer Observador.
+     */
+    @MainThread
+    public void observe(LifecycleOwner owner, String table, String userId, Observer observer) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) return;
+        Registration registration = new Registration(table, userId, null, observer);
+        registration.lifecycle = owner.getLifecycle();
+        registrations.add(registration);
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner source) {
+                registration.deliverIfStale();
+            }
+
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                registrations.remove(registration);
+            }
+        });
+    }
+
+    /**
+     * Elimina un observador registrado con cualquiera de los dos métodos.
+     */
+    public void removeObserver(Observer observer) {
+        for (Registration registration : registrations) {
+            if (registration.get() == observer) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Anota que los datos de una tabla han cambiado para un usuario. Puede llamarse desde
+     * cualquier hilo; el aviso se entrega en el siguiente fotograma.
+     */
+    void notifyChanged(String table, String userId) {
+        if (registrations.isEmpty()) return;
+        synchronized (this) {
+            Set<String> users = pending.get(table);
+            if (users == null) {
+                users = new HashSet<>();
+                pending.put(table, users);
+            }
+            users.add(userId);
+            if (frameScheduled) return;
+            frameScheduled = true;
+        }
+        // Choreographer debe usarse desde el hilo principal
+        mainHandler.post(scheduleFrame);
+    }
+
+    /**
+     * Entrega los cambios acumulados a los observadores afectados. Hilo principal.
+     */
+    private void dispatchPending() {
+        Map<String, Set<String>> changes;
+        synchronized (this) {
+            changes = pending;
+            pending = new HashMap<>();
+            frameScheduled = false;
+        }
+        for (Registration registration : registrations) {
+            if (registration.get() == null) {
+                registrations.remove(registration); // El observador débil ya no existe
+                continue;
+            }
+            Set<String> users = changes.get(registration.table);
+            if (users == null) continue;
+            if (registration.userId == null) {
+                for (String userId : users) {
+                    registration.deliver(userId);
+                }
+            } else if (users.contains(registration.userId)) {
+                registration.deliver(registration.userId);
+            }
+        }
+    }
+
+    /**
+     * Observador registrado, con la tabla y el usuario que le interesan.
+     */
+    private static class Registration {
+        final String table;
+        final String userId;
+        final WeakReference<Observer> weakObserver;
+        final Observer observer;
+        Lifecycle lifecycle;   // Solo en los registros ligados a un ciclo de vida
+        String staleUserId;    // Cambio recibido mientras el ciclo de vida no estaba iniciado
+        boolean stale = false;
+
+        Registration(String table, String userId, WeakReference<Observer> weakObserver, Observer observer) {
+            this.table = table;
+            this.userId = userId;
+            this.weakObserver = weakObserver;
+            this.observer = observer;
+        }
+
+        Observer get() {
+            return observer != null ? observer : weakObserver.get();
+        }
+
+        void deliver(String changedUserId) {
+            Observer target = get();
+            if (target == null) return;
+            if (lifecycle != null && !lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                stale = true;
+                staleUserId = changedUserId;
+                return;
+            }
+            target.onInvalidated(table, changedUserId);
+        }
+
+        void deliverIfStale() {
+            if (!stale) return;
+            stale = false;
+            deliver(staleUserId);
+        }
+    }
+}
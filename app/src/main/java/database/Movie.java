@@ -25,4 +25,25 @@ public class Movie {
     public String getTitle() {
         return title;
     }
-}
\ No newline at end of file
+
+    /**
+     * Deriva un identificador numérico estable a partir del ID de la película:
+     * los IDs de IMDb ("tt0120338") son positivos y los de TMDB negativos.
+     * Se usa como ID estable en las listas. No es único para cualquier ID ("tt0120338" y
+     * "tt120338" dan el mismo número), así que no sirve como clave en la base de datos.
+     *
+     * @param movieId ID de la película.
+     * @return Identificador numérico (igual para el mismo ID en cualquier ejecución).
+     */
+    public static long stableIdOf(String movieId) {
+        try {
+            if (movieId.startsWith("tt")) {
+                return Long.parseLong(movieId.substring(2));
+            }
+            return -Long.parseLong(movieId);
+        } catch (NumberFormatException e) {
+            // IDs con otro formato: se usa un hash fuera del rango de los anteriores
+            return Long.MIN_VALUE / 2 + (movieId.hashCode() & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package database;
+
+/**
+ * Clase que representa los detalles de una película en la tabla 'movie_details'.
+ * Unifica en un solo formato las respuestas de IMDb y de TMDB.
+ */
+public class MovieDetails {
+    public static final String SOURCE_IMDB = "imdb"; // Detalles obtenidos de IMDb (RapidAPI)
+    public static final String SOURCE_TMDB = "tmdb"; // Detalles obtenidos de TMDB
+
+    private final String movieId;     // ID de la película ("tt..." o ID de TMDB)
+    private final String source;      // Origen de los datos (imdb / tmdb)
+    private final String title;       // Título de la película
+    private final String overview;    // Sinopsis
+    private final String poster;      // URL del póster a tamaño completo
+    private final double rating;      // Calificación media
+    private final String releaseDate; // Fecha de estreno (yyyy-MM-dd)
+    private final long fetchedAt;     // Momento en que se descargaron (ms desde epoch)
+
+    public MovieDetails(String movieId, String source, String title, String overview, String poster,
+                        double rating, String releaseDate, long fetchedAt) {
+        this.movieId = movieId;
+        this.source = source;
+        this.title = title;
+        this.overview = overview;
+        this.poster = poster;
+        this.rating = rating;
+        this.releaseDate = releaseDate;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public String getMovieId() {
+        return movieId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getOverview() {
+        return overview;
+    }
+
+    public String getPoster() {
+        return poster;
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    public String getReleaseDate() {
+        return releaseDate;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
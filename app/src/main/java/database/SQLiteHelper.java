@@ -3,31 +3,65 @@ package database;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import utils.ProfileImageStore;
 
 /**
  * SQLiteHelper maneja la base de datos local de la aplicación.
- * Contiene dos tablas: 'users' y 'favorites'.
+ * Contiene las tablas 'users', 'favorites', 'movie_details' (detalles de películas
+ * compartidos por todas las pantallas) y 'movie_id_map' (equivalencias entre IDs de
+ * IMDb y TMDB), además de la tabla virtual FTS 'movie_search' que indexa títulos y
+ * sinopsis para búsquedas sin conexión.
  * <p>
  * Se han agregado modificaciones para notificar cuando se añade o elimina
  * una película, facilitando la sincronización entre la base de datos local y la nube.
+ * <p>
+ * Los favoritos de cada usuario se mantienen además en memoria ({@link FavoritesIndex}),
+ * de modo que comprobar o añadir un favorito no requiere consultas previas a SQLite.
+ * <p>
+ * Las imágenes de perfil se guardan aparte ({@link ProfileImageStore}); la tabla 'users'
+ * solo contiene su URL o una referencia local.
+ * <p>
+ * El acceso a disco debe hacerse fuera del hilo principal (ver {@link AsyncDatabase}).
+ * En las compilaciones de depuración, abrir la base de datos desde el hilo principal
+ * lanza una excepción para detectar estos accesos cuanto antes.
  */
 public class SQLiteHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "app_database.db"; // Nombre de la base de datos
-    private static final int DATABASE_VERSION = 1; // Versión de la base de datos
+    private static final int DATABASE_VERSION = 7; // Versión de la base de datos
+    private static final int CACHE_SIZE_KB = 4096; // Caché de páginas de la conexión de escritura
     private final Context context;
+    private final boolean failOnMainThread; // True en depuración: el acceso desde el hilo principal falla
 
     // Nombres de las tablas
     private static final String TABLE_USERS = "users";
     private static final String TABLE_FAVORITES = "favorites";
+    private static final String TABLE_MOVIE_SEARCH = "movie_search"; // Tabla virtual FTS4
+    private static final String TABLE_MOVIE_DETAILS = "movie_details";
+    private static final String TABLE_MOVIE_ID_MAP = "movie_id_map";
+    private static final String TABLE_FAVORITES_SYNC = "favorites_sync"; // Marcas de agua de la sincronización
 
     // Columnas de la tabla 'users'
     private static final String COLUMN_USER_ID = "user_id"; // PRIMARY KEY
@@ -43,27 +77,158 @@ public class SQLiteHelper extends SQLiteOpenHelper {
     private static final String COLUMN_MOVIE_ID = "movie_id"; // PRIMARY KEY parte 2
     private static final String COLUMN_POSTER = "poster";
     private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_ADDED_AT = "added_at"; // Momento (ms) en que se añadió a favoritos
+    private static final String COLUMN_UPDATED_AT = "updated_at"; // Momento (ms) de la última modificación
+    private static final String COLUMN_DELETED = "deleted"; // 1 si se eliminó (marca de borrado)
+    private static final String COLUMN_DIRTY = "dirty"; // 1 si el cambio local aún no se ha subido a la nube
+
+    // Columnas adicionales de las tablas 'movie_search' y 'movie_details'
+    private static final String COLUMN_OVERVIEW = "overview";
+    private static final String COLUMN_SOURCE = "source";
+    private static final String COLUMN_RATING = "rating";
+    private static final String COLUMN_RELEASE_DATE = "release_date";
+    private static final String COLUMN_FETCHED_AT = "fetched_at";
+
+    // Columnas de la tabla 'movie_id_map'
+    private static final String COLUMN_IMDB_ID = "imdb_id"; // PRIMARY KEY ("tt...")
+    private static final String COLUMN_TMDB_ID = "tmdb_id"; // UNIQUE (ID numérico de TMDB)
+
+    // Columnas de la tabla 'favorites_sync' (una fila por usuario)
+    private static final String COLUMN_CLOUD_WATERMARK = "cloud_watermark";   // Mayor synced_at (hora del servidor) descargado
+    private static final String COLUMN_FULL_PULL_AT = "full_pull_at";         // Momento (ms) de la última descarga completa
+
+    // Índices de 'favorites' para recorrer los favoritos de un usuario por fecha o por título
+    private static final String INDEX_FAVORITES_ADDED_AT = "idx_favorites_user_added_at";
+    private static final String INDEX_FAVORITES_TITLE = "idx_favorites_user_title";
+    // Índice parcial con solo los favoritos pendientes de subir
+    private static final String INDEX_FAVORITES_DIRTY = "idx_favorites_user_dirty";
+
+    // Pesos usados al ordenar los resultados de búsqueda (movie_id, poster, title, overview)
+    private static final double[] SEARCH_COLUMN_WEIGHTS = {0.0, 0.0, 2.0, 1.0};
+
+    // Condición que descarta un favorito de TMDB si su equivalente de IMDb también es favorito
+    private static final String NOT_DUPLICATED_FAVORITE = "NOT EXISTS (SELECT 1 FROM " + TABLE_MOVIE_ID_MAP + " m"
+            + " JOIN " + TABLE_FAVORITES + " f2 ON f2." + COLUMN_MOVIE_ID + " = m." + COLUMN_IMDB_ID
+            + " WHERE m." + COLUMN_TMDB_ID + " = " + TABLE_FAVORITES + "." + COLUMN_MOVIE_ID
+            + " AND f2." + COLUMN_USER_ID + " = " + TABLE_FAVORITES + "." + COLUMN_USER_ID
+            + " AND f2." + COLUMN_DELETED + " = 0)";
+
+    // Sentencias de las operaciones más frecuentes (se compilan una sola vez, ver StatementCache)
+    private static final String SQL_USER_EXISTS = "SELECT COUNT(*) FROM " + TABLE_USERS
+            + " WHERE " + COLUMN_USER_ID + " = ?";
+    private static final String SQL_SELECT_USER = "SELECT " + COLUMN_USER_ID + ", " + COLUMN_NAME + ", "
+            + COLUMN_EMAIL + ", " + COLUMN_LOGIN_TIME + ", " + COLUMN_LOGOUT_TIME + ", " + COLUMN_ADDRESS + ", "
+            + COLUMN_PHONE + ", " + COLUMN_IMAGE + " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_ID + " = ?";
+    // Proyecciones parciales de 'users' (sin la imagen ni los campos cifrados cuando no hacen falta)
+    private static final String SQL_SELECT_USER_SESSION = "SELECT " + COLUMN_USER_ID + ", " + COLUMN_NAME + ", "
+            + COLUMN_EMAIL + ", " + COLUMN_LOGIN_TIME + ", " + COLUMN_LOGOUT_TIME
+            + " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_ID + " = ?";
+    private static final String SQL_SELECT_USER_HEADER = "SELECT " + COLUMN_USER_ID + ", " + COLUMN_NAME + ", "
+            + COLUMN_EMAIL + ", " + COLUMN_IMAGE + " FROM " + TABLE_USERS + " WHERE " + COLUMN_USER_ID + " = ?";
+    private static final String SQL_UPDATE_LOGIN_TIME = "UPDATE " + TABLE_USERS + " SET " + COLUMN_LOGIN_TIME
+            + " = ? WHERE " + COLUMN_USER_ID + " = ?";
+    private static final String SQL_UPDATE_LOGOUT_TIME = "UPDATE " + TABLE_USERS + " SET " + COLUMN_LOGOUT_TIME
+            + " = ? WHERE " + COLUMN_USER_ID + " = ?";
+    private static final String SQL_INSERT_FAVORITE = "INSERT OR IGNORE INTO " + TABLE_FAVORITES + " ("
+            + COLUMN_USER_ID + ", " + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", " + COLUMN_TITLE + ", "
+            + COLUMN_ADDED_AT + ", " + COLUMN_UPDATED_AT + ", " + COLUMN_DIRTY + ") VALUES (?, ?, ?, ?, ?, ?, 1)";
+    // Vuelve a añadir un favorito que se había eliminado (su fila es una marca de borrado)
+    private static final String SQL_REVIVE_FAVORITE = "UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_POSTER + " = ?, "
+            + COLUMN_TITLE + " = ?, " + COLUMN_ADDED_AT + " = ?, " + COLUMN_UPDATED_AT + " = ?, " + COLUMN_DELETED + " = 0, "
+            + COLUMN_DIRTY + " = 1 WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ? AND " + COLUMN_DELETED + " = 1";
+    // Eliminar un favorito deja una marca de borrado, para que la eliminación llegue a la nube
+    private static final String SQL_DELETE_FAVORITE = "UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_DELETED + " = 1, "
+            + COLUMN_DIRTY + " = 1, " + COLUMN_UPDATED_AT + " = ? WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ? AND "
+            + COLUMN_DELETED + " = 0";
+    private static final String SQL_TMDB_FOR_IMDB = "SELECT " + COLUMN_TMDB_ID + " FROM " + TABLE_MOVIE_ID_MAP
+            + " WHERE " + COLUMN_IMDB_ID + " = ?";
+    private static final String SQL_IMDB_FOR_TMDB = "SELECT " + COLUMN_IMDB_ID + " FROM " + TABLE_MOVIE_ID_MAP
+            + " WHERE " + COLUMN_TMDB_ID + " = ?";
+    private static final String SQL_SELECT_FAVORITES = "SELECT " + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", "
+            + COLUMN_TITLE + " FROM " + TABLE_FAVORITES + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DELETED + " = 0 AND "
+            + NOT_DUPLICATED_FAVORITE;
+    private static final String SQL_LOAD_FAVORITE_IDS = "SELECT f." + COLUMN_MOVIE_ID + ", m." + COLUMN_IMDB_ID + ", m." + COLUMN_TMDB_ID
+            + " FROM " + TABLE_FAVORITES + " f LEFT JOIN " + TABLE_MOVIE_ID_MAP + " m"
+            + " ON m." + COLUMN_IMDB_ID + " = f." + COLUMN_MOVIE_ID + " OR m." + COLUMN_TMDB_ID + " = f." + COLUMN_MOVIE_ID
+            + " WHERE f." + COLUMN_USER_ID + " = ? AND f." + COLUMN_DELETED + " = 0";
+    // Sincronización incremental de favoritos
+    private static final String SQL_SELECT_PENDING_UPLOADS = "SELECT " + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", "
+            + COLUMN_TITLE + ", " + COLUMN_ADDED_AT + ", " + COLUMN_UPDATED_AT + ", " + COLUMN_DELETED
+            + " FROM " + TABLE_FAVORITES + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DIRTY + " = 1"
+            + " ORDER BY " + COLUMN_UPDATED_AT;
+    // Solo se limpia si la fila sigue siendo la versión subida (no se modificó mientras tanto)
+    private static final String SQL_MARK_FAVORITE_UPLOADED = "UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_DIRTY + " = 0"
+            + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ? AND " + COLUMN_UPDATED_AT + " = ? AND "
+            + COLUMN_DELETED + " = ? AND " + COLUMN_DIRTY + " = 1";
+    private static final String SQL_SELECT_FAVORITE_CHANGE = "SELECT " + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", "
+            + COLUMN_TITLE + ", " + COLUMN_ADDED_AT + ", " + COLUMN_UPDATED_AT + ", " + COLUMN_DELETED
+            + " FROM " + TABLE_FAVORITES + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?";
+    private static final String SQL_SELECT_UPLOADED_FAVORITE_IDS = "SELECT " + COLUMN_MOVIE_ID + " FROM " + TABLE_FAVORITES
+            + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_DELETED + " = 0 AND " + COLUMN_DIRTY + " = 0";
+    private static final String SQL_FAVORITE_UPDATED_AT = "SELECT " + COLUMN_UPDATED_AT + " FROM " + TABLE_FAVORITES
+            + " WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?";
+    // Los cambios descargados de la nube ya están allí: no quedan pendientes de subir
+    private static final String SQL_INSERT_FAVORITE_CHANGE = "INSERT INTO " + TABLE_FAVORITES + " ("
+            + COLUMN_POSTER + ", " + COLUMN_TITLE + ", " + COLUMN_ADDED_AT + ", " + COLUMN_UPDATED_AT + ", "
+            + COLUMN_DELETED + ", " + COLUMN_USER_ID + ", " + COLUMN_MOVIE_ID + ", " + COLUMN_DIRTY + ") VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final String SQL_UPDATE_FAVORITE_CHANGE = "UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_POSTER + " = ?, "
+            + COLUMN_TITLE + " = ?, " + COLUMN_ADDED_AT + " = ?, " + COLUMN_UPDATED_AT + " = ?, " + COLUMN_DELETED + " = ?, "
+            + COLUMN_DIRTY + " = 0 WHERE " + COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?";
 
     // Instancia singleton
     @SuppressLint("StaticFieldLeak")
     private static SQLiteHelper instance;
 
-    // Interfaz para notificar cambios en los favoritos
+    // Favoritos de cada usuario en memoria, actualizados con cada escritura (write-through)
+    private final FavoritesIndex favoritesIndex = new FavoritesIndex();
+    // Sentencias compiladas de las operaciones más frecuentes
+    private final StatementCache statementCache = new StatementCache();
+
+    // Avisos de cambios en las tablas para las pantallas
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+    // Latencia, filas y accesos desde el hilo principal de cada operación
+    private final DbMetrics metrics = new DbMetrics();
+
+    /**
+     * Interfaz para notificar cambios en los favoritos (para sincronizarlos con la nube).
+     * Se llama en el hilo que hace la escritura.
+     */
     public interface OnFavoritesChangedListener {
-        void onFavoriteAdded(Movie movie);
-        void onFavoriteRemoved(String movieId);
+        void onFavoriteAdded(String userId, Movie movie);
+        void onFavoriteRemoved(String userId, String movieId);
     }
 
-    // Variable para almacenar el listener (puede ser nulo si no se ha registrado)
-    private static OnFavoritesChangedListener favoritesChangedListener;
+    // Listeners registrados (se recorren sin bloquear desde el hilo de escritura)
+    private final CopyOnWriteArrayList<OnFavoritesChangedListener> favoritesChangedListeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Establece el listener para cambios en los favoritos.
+     * Registra un listener para los cambios en los favoritos.
      *
      * @param listener Listener que recibirá las notificaciones.
      */
-    public static void setOnFavoritesChangedListener(OnFavoritesChangedListener listener) {
-        favoritesChangedListener = listener;
+    public void addOnFavoritesChangedListener(OnFavoritesChangedListener listener) {
+        favoritesChangedListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Elimina un listener registrado con addOnFavoritesChangedListener.
+     */
+    public void removeOnFavoritesChangedListener(OnFavoritesChangedListener listener) {
+        favoritesChangedListeners.remove(listener);
+    }
+
+    /**
+     * Devuelve el tracker que avisa a las pantallas de los cambios en las tablas.
+     */
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * Devuelve las métricas de las operaciones sobre la base de datos.
+     */
+    public DbMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -79,6 +244,17 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         return instance;
     }
 
+    /**
+     * Cierra y descarta la instancia única, para que cada prueba use una base de datos nueva.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
     /**
      * Constructor privado para forzar el uso de getInstance().
      *
@@ -87,6 +263,38 @@ public class SQLiteHelper extends SQLiteOpenHelper {
     private SQLiteHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.context = context.getApplicationContext();
+        this.failOnMainThread = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        checkNotMainThread();
+        return super.getReadableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        checkNotMainThread();
+        return super.getWritableDatabase();
+    }
+
+    @Override
+    public synchronized void close() {
+        statementCache.clear();
+        super.close();
+    }
+
+    /**
+     * Comprueba que no se accede a disco desde el hilo principal. En depuración lanza
+     * una excepción; en producción solo lo registra.
+     */
+    private void checkNotMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) return;
+        String message = "Acceso a la base de datos desde el hilo principal; usa AsyncDatabase.";
+        if (failOnMainThread) {
+            throw new IllegalStateException(message);
+        }
+        Log.w("SQLiteHelper", message);
     }
 
     /**
@@ -114,17 +322,88 @@ public class SQLiteHelper extends SQLiteOpenHelper {
                 + COLUMN_MOVIE_ID + " TEXT NOT NULL, "
                 + COLUMN_POSTER + " TEXT, "
                 + COLUMN_TITLE + " TEXT, "
+                + COLUMN_ADDED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_DELETED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_DIRTY + " INTEGER NOT NULL DEFAULT 0, "
                 + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_MOVIE_ID + "), "
                 + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ") ON DELETE CASCADE"
                 + ")";
 
+        // SQL para crear la tabla virtual de búsqueda de texto completo.
+        // Solo se indexan el título y la sinopsis; el ID y el póster se guardan sin indexar.
+        String CREATE_MOVIE_SEARCH_TABLE = "CREATE VIRTUAL TABLE " + TABLE_MOVIE_SEARCH + " USING fts4("
+                + COLUMN_MOVIE_ID + ", "
+                + COLUMN_POSTER + ", "
+                + COLUMN_TITLE + ", "
+                + COLUMN_OVERVIEW + ", "
+                + "notindexed=" + COLUMN_MOVIE_ID + ", "
+                + "notindexed=" + COLUMN_POSTER
+                + ")";
+
+        // SQL para crear la tabla 'movie_details' con el formato unificado IMDb/TMDB
+        String CREATE_MOVIE_DETAILS_TABLE = "CREATE TABLE " + TABLE_MOVIE_DETAILS + " ("
+                + COLUMN_MOVIE_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_SOURCE + " TEXT NOT NULL, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_OVERVIEW + " TEXT, "
+                + COLUMN_POSTER + " TEXT, "
+                + COLUMN_RATING + " REAL, "
+                + COLUMN_RELEASE_DATE + " TEXT, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL"
+                + ")";
+
+        // SQL para crear la tabla 'movie_id_map' (relación 1 a 1 entre IDs de IMDb y TMDB)
+        String CREATE_MOVIE_ID_MAP_TABLE = "CREATE TABLE " + TABLE_MOVIE_ID_MAP + " ("
+                + COLUMN_IMDB_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_TMDB_ID + " TEXT NOT NULL UNIQUE"
+                + ")";
+
         // Ejecutar los comandos SQL para crear las tablas
         db.execSQL(CREATE_USERS_TABLE);
         db.execSQL(CREATE_FAVORITES_TABLE);
+        db.execSQL(CREATE_MOVIE_SEARCH_TABLE);
+        db.execSQL(CREATE_MOVIE_DETAILS_TABLE);
+        db.execSQL(CREATE_MOVIE_ID_MAP_TABLE);
+        createFavoritesIndexes(db);
+        createFavoritesSyncSchema(db);
+    }
+
+    /**
+     * Crea los índices de 'favorites' usados por la paginación (más recientes primero y por título).
+     * Incluyen el ID de la película, que desempata entre filas con el mismo valor.
+     *
+     * @param db La base de datos
+     */
+    private static void createFavoritesIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_FAVORITES_ADDED_AT + " ON " + TABLE_FAVORITES
+                + " (" + COLUMN_USER_ID + ", " + COLUMN_ADDED_AT + ", " + COLUMN_MOVIE_ID + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_FAVORITES_TITLE + " ON " + TABLE_FAVORITES
+                + " (" + COLUMN_USER_ID + ", " + COLUMN_TITLE + " COLLATE NOCASE, " + COLUMN_MOVIE_ID + ")");
     }
 
     /**
-     * Se llama cuando se actualiza la versión de la base de datos.
+     * Crea la tabla con la marca de agua de descarga y la fecha de la última descarga
+     * completa de cada usuario, y el índice parcial de
+     * los favoritos pendientes de subir (solo contiene esas filas, así que casi siempre está vacío).
+     *
+     * @param db La base de datos
+     */
+    private static void createFavoritesSyncSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_FAVORITES_SYNC + " ("
+                + COLUMN_USER_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_CLOUD_WATERMARK + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_FULL_PULL_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + "FOREIGN KEY(" + COLUMN_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_USER_ID + ") ON DELETE CASCADE)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_FAVORITES_DIRTY + " ON " + TABLE_FAVORITES
+                + " (" + COLUMN_USER_ID + ") WHERE " + COLUMN_DIRTY + " = 1");
+    }
+
+    /**
+     * Se llama cuando se actualiza la versión de la base de datos. Aplica, en orden, cada
+     * migración entre la versión anterior y la nueva, conservando los usuarios y favoritos
+     * locales. SQLiteOpenHelper ejecuta este método dentro de una transacción, así que si
+     * falla un paso no se aplica ninguno.
      *
      * @param db         La base de datos
      * @param oldVersion Versión anterior
@@ -132,15 +411,111 @@ public class SQLiteHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Eliminar tablas existentes
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVORITES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        // Recrear las tablas
-        onCreate(db);
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(db, version);
+        }
     }
 
     /**
-     * Configuración para habilitar restricciones de claves foráneas.
+     * Migra la base de datos desde la versión anterior a la indicada.
+     * <p>
+     * Cada paso describe el cambio tal y como se hizo en esa versión: si el esquema vuelve
+     * a cambiar se añade un paso nuevo en lugar de modificar los existentes.
+     *
+     * @param db      La base de datos
+     * @param version Versión a la que se migra
+     */
+    private void migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // Índice FTS de búsqueda por título y sinopsis (se rellena al buscar)
+                db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_MOVIE_SEARCH + " USING fts4("
+                        + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", " + COLUMN_TITLE + ", " + COLUMN_OVERVIEW + ", "
+                        + "notindexed=" + COLUMN_MOVIE_ID + ", notindexed=" + COLUMN_POSTER + ")");
+                break;
+            case 3:
+                // Detalles de películas compartidos por todas las pantallas
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_MOVIE_DETAILS + " ("
+                        + COLUMN_MOVIE_ID + " TEXT PRIMARY KEY, "
+                        + COLUMN_SOURCE + " TEXT NOT NULL, "
+                        + COLUMN_TITLE + " TEXT, "
+                        + COLUMN_OVERVIEW + " TEXT, "
+                        + COLUMN_POSTER + " TEXT, "
+                        + COLUMN_RATING + " REAL, "
+                        + COLUMN_RELEASE_DATE + " TEXT, "
+                        + COLUMN_FETCHED_AT + " INTEGER NOT NULL)");
+                break;
+            case 4:
+                // Equivalencias entre IDs de IMDb y TMDB
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_MOVIE_ID_MAP + " ("
+                        + COLUMN_IMDB_ID + " TEXT PRIMARY KEY, "
+                        + COLUMN_TMDB_ID + " TEXT NOT NULL UNIQUE)");
+                break;
+            case 5:
+                // Fecha en que se añadió cada favorito e índices de paginación. Los favoritos
+                // existentes no tienen fecha: se numeran por orden de inserción (rowid), que
+                // conserva su orden relativo y queda por detrás de cualquier favorito nuevo.
+                db.execSQL("ALTER TABLE " + TABLE_FAVORITES + " ADD COLUMN " + COLUMN_ADDED_AT + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_ADDED_AT + " = rowid");
+                db.execSQL("UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_TITLE + " = '' WHERE " + COLUMN_TITLE + " IS NULL");
+                createFavoritesIndexes(db);
+                break;
+            case 6:
+                // Las imágenes de perfil en Base64 pasan al almacén de imágenes
+                migrateProfileImagesToStore(db);
+                break;
+            case 7:
+                // Sincronización incremental: fecha de modificación, marca de borrado y cambio
+                // pendiente de subir de cada favorito, y marca de agua de descarga por usuario.
+                // Los favoritos existentes toman como fecha de modificación la fecha en que se
+                // añadieron y quedan pendientes, así que se suben en la siguiente sincronización.
+                db.execSQL("ALTER TABLE " + TABLE_FAVORITES + " ADD COLUMN " + COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE_FAVORITES + " ADD COLUMN " + COLUMN_DELETED + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE_FAVORITES + " ADD COLUMN " + COLUMN_DIRTY + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_FAVORITES + " SET " + COLUMN_UPDATED_AT + " = " + COLUMN_ADDED_AT + ", "
+                        + COLUMN_DIRTY + " = 1");
+                createFavoritesSyncSchema(db);
+                break;
+            default:
+                throw new IllegalStateException("No hay migración a la versión " + version);
+        }
+    }
+
+    /**
+     * Mueve las imágenes de perfil guardadas en Base64 en 'users' al almacén de imágenes y
+     * deja en la fila solo la referencia. Si una imagen no se puede decodificar se descarta
+     * (la de Firestore se recupera en la siguiente sincronización).
+     * <p>
+     * Los archivos se escriben dentro de la transacción de onUpgrade, que no puede
+     * deshacerlos. Por eso el paso es idempotente: cada usuario tiene siempre los mismos
+     * archivos, que se reemplazan de forma atómica. Si un paso posterior falla y la
+     * transacción se deshace, las filas vuelven a tener la imagen en Base64 y nada lee esos
+     * archivos (solo se usan con una referencia local). Al reintentar la migración se
+     * sobrescriben, sin dejar archivos de más.
+     *
+     * @param db La base de datos
+     */
+    private void migrateProfileImagesToStore(SQLiteDatabase db) {
+        ProfileImageStore imageStore = ProfileImageStore.getInstance(context);
+        List<String[]> images = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_USER_ID + ", " + COLUMN_IMAGE + " FROM " + TABLE_USERS
+                + " WHERE " + COLUMN_IMAGE + " IS NOT NULL AND " + COLUMN_IMAGE + " != ''", null)) {
+            while (cursor.moveToNext()) {
+                images.add(new String[]{cursor.getString(0), cursor.getString(1)});
+            }
+        }
+        for (String[] image : images) {
+            if (!ProfileImageStore.isEmbeddedImage(image[1])) continue;
+            String reference = imageStore.importBase64(image[0], image[1]);
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_IMAGE, reference != null ? reference : "");
+            db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{image[0]});
+        }
+    }
+
+    /**
+     * Configuración de la conexión: restricciones de claves foráneas, modo WAL
+     * (write-ahead logging) con varias conexiones de lectura y ajustes de rendimiento.
      *
      * @param db La base de datos
      */
@@ -148,6 +523,11 @@ public class SQLiteHelper extends SQLiteOpenHelper {
     public void onConfigure(SQLiteDatabase db) {
         super.onConfigure(db);
         db.setForeignKeyConstraintsEnabled(true);
+        // WAL: las lecturas usan sus propias conexiones y no esperan a las escrituras de la sincronización
+        db.enableWriteAheadLogging();
+        // Con WAL basta con sincronizar en cada checkpoint; una caída no corrompe la base de datos
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KB);
     }
 
     /**
@@ -157,20 +537,24 @@ public class SQLiteHelper extends SQLiteOpenHelper {
      * @return True si existe, False en caso contrario
      */
     public boolean doesUserExist(String userId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.query(
-                TABLE_USERS,
-                new String[]{COLUMN_USER_ID},
-                COLUMN_USER_ID + "=?",
-                new String[]{userId},
-                null,
-                null,
-                null
-        )) {
-            return (cursor != null && cursor.moveToFirst());
+        if (userId == null) return false;
+        if (favoritesIndex.isKnownUser(userId)) return true;
+        long start = metrics.start();
+        SQLiteStatement statement = statementCache.get(this.getReadableDatabase(), SQL_USER_EXISTS);
+        try {
+            boolean exists;
+            synchronized (statement) {
+                statement.bindString(1, userId);
+                exists = statement.simpleQueryForLong() > 0;
+                statement.clearBindings();
+            }
+            if (exists) favoritesIndex.markKnownUser(userId);
+            return exists;
         } catch (Exception e) {
             Log.e("SQLiteHelper", "Error al verificar existencia del usuario: " + userId, e);
             return false;
+        } finally {
+            metrics.record("doesUserExist", SQL_USER_EXISTS, start, 1);
         }
     }
 
@@ -207,7 +591,7 @@ public class SQLiteHelper extends SQLiteOpenHelper {
             values.put(COLUMN_ADDRESS, newAddress);
         }
         if (newImage != null) {
-            values.put(COLUMN_IMAGE, newImage);
+            values.put(COLUMN_IMAGE, toImageReference(userId, newImage));
         }
         if (newPhone != null) {
             values.put(COLUMN_PHONE, newPhone);
@@ -222,7 +606,9 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         }
 
         // Realizar la actualización en la base de datos local
+        long start = metrics.start();
         int rowsUpdated = db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{userId});
+        metrics.record("updateUserSpecificFields", TABLE_USERS, start, rowsUpdated);
         if (rowsUpdated > 0) {
             Log.d("SQLiteHelper", "Campos actualizados exitosamente para el usuario: " + userId);
 
@@ -245,6 +631,10 @@ public class SQLiteHelper extends SQLiteOpenHelper {
 
     /**
      * Agrega o actualiza un usuario en la tabla 'users'.
+     * <p>
+     * Se actualiza la fila existente y solo se inserta si no había ninguna. Un REPLACE borraría
+     * la fila antes de insertarla de nuevo y, por las claves ajenas ON DELETE CASCADE, con ella
+     * los favoritos y el estado de sincronización del usuario en cada inicio de sesión.
      *
      * @param user Objeto User con los datos del usuario
      * @return True si la inserción fue exitosa, False en caso contrario
@@ -258,25 +648,56 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
 
-        values.put(COLUMN_USER_ID, user.getUserId());
         values.put(COLUMN_NAME, user.getName());
         values.put(COLUMN_EMAIL, user.getEmail());
         values.put(COLUMN_LOGIN_TIME, user.getLoginTime());
         values.put(COLUMN_LOGOUT_TIME, user.getLogoutTime());
         values.put(COLUMN_ADDRESS, user.getAddress());
         values.put(COLUMN_PHONE, user.getPhone());
-        values.put(COLUMN_IMAGE, user.getImage());
+        values.put(COLUMN_IMAGE, toImageReference(user.getUserId(), user.getImage()));
 
-        long result = db.insertWithOnConflict(TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        long start = metrics.start();
+        long result = -1;
+        db.beginTransactionNonExclusive();
+        try {
+            if (db.update(TABLE_USERS, values, COLUMN_USER_ID + "=?", new String[]{user.getUserId()}) > 0) {
+                result = 1;
+            } else {
+                values.put(COLUMN_USER_ID, user.getUserId());
+                result = db.insert(TABLE_USERS, null, values);
+            }
+            if (result != -1) db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al guardar el usuario: " + user.getUserId(), e);
+            result = -1;
+        } finally {
+            db.endTransaction();
+        }
+        metrics.record("addUser", TABLE_USERS, start, result == -1 ? 0 : 1);
         if (result == -1) {
             Log.e("SQLiteHelper", "Error al insertar/actualizar usuario: " + user.getUserId());
             return false;
         } else {
             Log.d("SQLiteHelper", "Usuario insertado/actualizado exitosamente: " + user.getUserId());
+            favoritesIndex.markKnownUser(user.getUserId());
             return true;
         }
     }
 
+    /**
+     * Valor que se guarda en users.image: las imágenes en Base64 (por ejemplo, las que llegan
+     * de Firestore) se guardan en el almacén de imágenes y solo se conserva su referencia.
+     *
+     * @param userId ID del usuario
+     * @param image  URL, referencia local o imagen en Base64
+     * @return URL o referencia local (vacío si la imagen no es válida)
+     */
+    private String toImageReference(String userId, String image) {
+        if (!ProfileImageStore.isEmbeddedImage(image)) return image;
+        String reference = ProfileImageStore.getInstance(context).importBase64(userId, image);
+        return reference != null ? reference : "";
+    }
+
     /**
      * Obtiene un usuario de la tabla 'users' por su user_id.
      *
@@ -284,66 +705,195 @@ public class SQLiteHelper extends SQLiteOpenHelper {
      * @return Objeto User si se encuentra, null en caso contrario
      */
     public User getUser(String userId) {
+        if (userId == null) return null;
+        long start = metrics.start();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = null;
         User user = null;
-        try {
-            cursor = db.query(
-                    TABLE_USERS,
-                    null, // Todas las columnas
-                    COLUMN_USER_ID + "=?",
-                    new String[]{userId},
-                    null,
-                    null,
-                    null
-            );
-
-            if (cursor != null && cursor.moveToFirst()) {
-                String id = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_ID));
-                String name = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME));
-                String email = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EMAIL));
-                String loginTime = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOGIN_TIME));
-                String logoutTime = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOGOUT_TIME));
-                String address = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ADDRESS));
-                String phone = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PHONE));
-                String image = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE));
-
-                user = new User(id, name, email, loginTime, logoutTime, address, phone, image);
+        // Columnas en el orden de SQL_SELECT_USER, así que se leen por posición
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_USER, new String[]{userId})) {
+            if (cursor.moveToFirst()) {
+                user = new User(
+                        cursor.getString(0), // user_id
+                        cursor.getString(1), // name
+                        cursor.getString(2), // email
+                        cursor.getString(3), // login_time
+                        cursor.getString(4), // logout_time
+                        cursor.getString(5), // address
+                        cursor.getString(6), // phone
+                        cursor.getString(7)  // image
+                );
             }
         } catch (Exception e) {
             Log.e("SQLiteHelper", "Error al obtener usuario: " + userId, e);
-        } finally {
-            if (cursor != null) cursor.close();
         }
+        metrics.record("getUser", SQL_SELECT_USER, start, user != null ? 1 : 0);
         return user;
     }
 
+    /**
+     * Obtiene solo los datos de sesión de un usuario (nombre, correo y horas de login/logout).
+     *
+     * @param userId ID del usuario
+     * @return Objeto UserSession si se encuentra, null en caso contrario
+     */
+    public UserSession getUserSession(String userId) {
+        if (userId == null) return null;
+        long start = metrics.start();
+        UserSession session = null;
+        try (Cursor cursor = this.getReadableDatabase().rawQuery(SQL_SELECT_USER_SESSION, new String[]{userId})) {
+            if (cursor.moveToFirst()) {
+                session = new UserSession(cursor.getString(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener la sesión del usuario: " + userId, e);
+        }
+        metrics.record("getUserSession", SQL_SELECT_USER_SESSION, start, session != null ? 1 : 0);
+        return session;
+    }
+
+    /**
+     * Obtiene solo los datos de la cabecera del menú de un usuario (nombre, correo e imagen).
+     *
+     * @param userId ID del usuario
+     * @return Objeto UserHeader si se encuentra, null en caso contrario
+     */
+    public UserHeader getUserHeader(String userId) {
+        if (userId == null) return null;
+        long start = metrics.start();
+        UserHeader header = null;
+        try (Cursor cursor = this.getReadableDatabase().rawQuery(SQL_SELECT_USER_HEADER, new String[]{userId})) {
+            if (cursor.moveToFirst()) {
+                header = new UserHeader(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getString(3));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener la cabecera del usuario: " + userId, e);
+        }
+        metrics.record("getUserHeader", SQL_SELECT_USER_HEADER, start, header != null ? 1 : 0);
+        return header;
+    }
+
+    /**
+     * Actualiza solo el nombre, el correo y la imagen de un usuario existente, sin
+     * sincronizar con Firestore.
+     *
+     * @param header Datos de cabecera del usuario
+     * @return True si se actualizó el usuario, False en caso contrario
+     */
+    public boolean updateUserHeader(UserHeader header) {
+        if (header == null || header.getUserId() == null) return false;
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, header.getName());
+        values.put(COLUMN_EMAIL, header.getEmail());
+        values.put(COLUMN_IMAGE, toImageReference(header.getUserId(), header.getImage()));
+        long start = metrics.start();
+        int rowsUpdated = this.getWritableDatabase().update(TABLE_USERS, values,
+                COLUMN_USER_ID + "=?", new String[]{header.getUserId()});
+        metrics.record("updateUserHeader", TABLE_USERS, start, rowsUpdated);
+        return rowsUpdated > 0;
+    }
+
+    /**
+     * Registra la hora de login de un usuario sin leer ni reescribir el resto de la fila.
+     *
+     * @param userId    ID del usuario
+     * @param loginTime Hora de login
+     * @return True si el usuario existe y se actualizó, False en caso contrario
+     */
+    public boolean updateLoginTime(String userId, String loginTime) {
+        return updateSessionTime(SQL_UPDATE_LOGIN_TIME, userId, loginTime);
+    }
+
+    /**
+     * Registra la hora de logout de un usuario sin leer ni reescribir el resto de la fila.
+     *
+     * @param userId     ID del usuario
+     * @param logoutTime Hora de logout
+     * @return True si el usuario existe y se actualizó, False en caso contrario
+     */
+    public boolean updateLogoutTime(String userId, String logoutTime) {
+        return updateSessionTime(SQL_UPDATE_LOGOUT_TIME, userId, logoutTime);
+    }
+
+    private boolean updateSessionTime(String sql, String userId, String time) {
+        if (userId == null) return false;
+        long start = metrics.start();
+        int rowsUpdated = 0;
+        SQLiteStatement statement = statementCache.get(this.getWritableDatabase(), sql);
+        try {
+            synchronized (statement) {
+                try {
+                    bindNullable(statement, 1, time);
+                    statement.bindString(2, userId);
+                    rowsUpdated = statement.executeUpdateDelete();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al registrar la hora de sesión del usuario: " + userId, e);
+        }
+        metrics.record(sql.equals(SQL_UPDATE_LOGIN_TIME) ? "updateLoginTime" : "updateLogoutTime", sql, start, rowsUpdated);
+        return rowsUpdated > 0;
+    }
+
     /**
      * Verifica si una película está en los favoritos de un usuario.
+     * También se considera favorita si lo es su equivalente en la otra fuente (IMDb/TMDB).
      *
      * @param userId  ID del usuario
      * @param movieId ID de la película
      * @return True si ya está en favoritos, False en caso contrario
      */
     public boolean isMovieFavorite(String userId, String movieId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        try (Cursor cursor = db.query(
-                TABLE_FAVORITES,
-                new String[]{COLUMN_MOVIE_ID},
-                COLUMN_USER_ID + "=? AND " + COLUMN_MOVIE_ID + "=?",
-                new String[]{userId, movieId},
-                null,
-                null,
-                null
-        )) {
+        ensureFavoritesLoaded(userId);
+        return favoritesIndex.contains(userId, movieId);
+    }
 
-            return (cursor != null && cursor.moveToFirst());
-        } catch (Exception e) {
-            Log.e("SQLiteHelper", "Error al verificar si la película es favorita: " + movieId + " para el usuario: " + userId, e);
-            return false;
+    /**
+     * Carga en memoria los favoritos del usuario (y sus IDs equivalentes) si aún no se ha hecho.
+     * A partir de ahí, el índice se mantiene al día con cada escritura en 'favorites'.
+     *
+     * @param userId ID del usuario
+     */
+    private void ensureFavoritesLoaded(String userId) {
+        if (userId == null || favoritesIndex.isLoaded(userId)) return;
+        SQLiteDatabase db = this.getReadableDatabase();
+        // Se bloquea el índice durante la lectura: una escritura que termine mientras tanto
+        // espera y se aplica sobre el conjunto ya cargado, en lugar de perderse
+        synchronized (favoritesIndex) {
+            if (favoritesIndex.isLoaded(userId)) return;
+            long start = metrics.start();
+            Set<String> ids = new HashSet<>();
+            try (Cursor cursor = db.rawQuery(SQL_LOAD_FAVORITE_IDS, new String[]{userId})) {
+                while (cursor.moveToNext()) {
+                    for (int i = 0; i < 3; i++) {
+                        if (!cursor.isNull(i)) ids.add(cursor.getString(i));
+                    }
+                }
+                favoritesIndex.load(userId, ids);
+            } catch (Exception e) {
+                Log.e("SQLiteHelper", "Error al cargar los favoritos del usuario: " + userId, e);
+            }
+            metrics.record("loadFavoriteIds", SQL_LOAD_FAVORITE_IDS, start, ids.size());
         }
     }
 
+    /**
+     * Indica cuáles de las películas indicadas son favoritas del usuario (también si lo es
+     * su equivalente de IMDb/TMDB). Se responde desde el índice en memoria, por lo que marcar
+     * todas las casillas de una página de resultados no hace ninguna consulta por casilla.
+     *
+     * @param userId   ID del usuario
+     * @param movieIds IDs de las películas a comprobar
+     * @return Conjunto con los IDs (de los indicados) que son favoritos
+     */
+    public Set<String> getFavoriteMovieIds(String userId, Collection<String> movieIds) {
+        if (userId == null || movieIds == null || movieIds.isEmpty()) return new HashSet<>();
+        ensureFavoritesLoaded(userId);
+        return favoritesIndex.filterFavorites(userId, movieIds);
+    }
+
     /**
      * Agrega una película a los favoritos de un usuario.
      * Además de insertarla en la base de datos local, notifica el cambio para la sincronización.
@@ -354,93 +904,837 @@ public class SQLiteHelper extends SQLiteOpenHelper {
      * @param title   Título de la película
      */
     public void addMovieToFavorites(String userId, String movieId, String poster, String title) {
-        if (!doesUserExist(userId)) {
-            Log.e("SQLiteHelper", "No se puede agregar a favoritos: El usuario " + userId + " no existe.");
+        // Comprobaciones en memoria: solo la primera vez para cada usuario acceden a SQLite
+        if (isMovieFavorite(userId, movieId)) {
+            Log.i("SQLiteHelper", "La película " + movieId + " ya es favorita para el usuario " + userId);
             return;
         }
 
-        if (isMovieFavorite(userId, movieId)) {
-            Log.i("SQLiteHelper", "La película " + movieId + " ya es favorita para el usuario " + userId);
+        if (!doesUserExist(userId)) {
+            Log.e("SQLiteHelper", "No se puede agregar a favoritos: El usuario " + userId + " no existe.");
             return;
         }
 
+        // Se reactiva la marca de borrado si existe; si no, INSERT OR IGNORE: si la fila ya
+        // existía no se duplica ni se notifica de nuevo
+        long start = metrics.start();
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-
-        values.put(COLUMN_USER_ID, userId);
-        values.put(COLUMN_MOVIE_ID, movieId);
-        values.put(COLUMN_POSTER, poster);
-        values.put(COLUMN_TITLE, title);
-
-        long result = db.insert(TABLE_FAVORITES, null, values);
-        if (result == -1) {
-            Log.e("SQLiteHelper", "Error al agregar película a favoritos: " + movieId + " para el usuario " + userId);
+        SQLiteStatement revive = statementCache.get(db, SQL_REVIVE_FAVORITE);
+        SQLiteStatement insert = statementCache.get(db, SQL_INSERT_FAVORITE);
+        boolean added = false;
+        try {
+            synchronized (revive) {
+                synchronized (insert) {
+                    added = addOrReviveFavorite(revive, insert, userId, movieId, poster, title, System.currentTimeMillis());
+                }
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al agregar película a favoritos: " + movieId + " para el usuario " + userId, e);
+            return;
+        } finally {
+            metrics.record("addMovieToFavorites", SQL_INSERT_FAVORITE, start, added ? 1 : 0);
+        }
+        if (!added) {
+            Log.i("SQLiteHelper", "La película " + movieId + " ya estaba guardada como favorita para el usuario " + userId);
+            favoritesIndex.add(userId, movieId, null);
         } else {
             Log.d("SQLiteHelper", "Película agregada a favoritos: " + movieId + " para el usuario " + userId);
-            // Notificar que se ha añadido una película (para sincronización)
-            if (favoritesChangedListener != null) {
-                favoritesChangedListener.onFavoriteAdded(new Movie(movieId, poster, title));
+            favoritesIndex.add(userId, movieId, getLinkedMovieId(movieId));
+            // Notificar que se ha añadido una película (para sincronización y para las pantallas)
+            Movie movie = new Movie(movieId, poster, title);
+            for (OnFavoritesChangedListener listener : favoritesChangedListeners) {
+                listener.onFavoriteAdded(userId, movie);
             }
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_FAVORITES, userId);
+        }
+    }
+
+    /**
+     * Añade un favorito reactivando su marca de borrado, si existe, o insertándolo. El que
+     * llama debe estar sincronizado sobre ambas sentencias.
+     *
+     * @return True si se añadió; False si ya era favorito
+     */
+    private static boolean addOrReviveFavorite(SQLiteStatement revive, SQLiteStatement insert, String userId,
+                                               String movieId, String poster, String title, long time) {
+        String storedTitle = title != null ? title : ""; // Sin nulos: se ordena por título
+        try {
+            bindNullable(revive, 1, poster);
+            revive.bindString(2, storedTitle);
+            revive.bindLong(3, time);
+            revive.bindLong(4, time);
+            revive.bindString(5, userId);
+            revive.bindString(6, movieId);
+            if (revive.executeUpdateDelete() > 0) return true;
+        } finally {
+            revive.clearBindings();
+        }
+        try {
+            insert.bindString(1, userId);
+            insert.bindString(2, movieId);
+            bindNullable(insert, 3, poster);
+            insert.bindString(4, storedTitle);
+            insert.bindLong(5, time);
+            insert.bindLong(6, time);
+            return insert.executeInsert() != -1;
+        } finally {
+            insert.clearBindings();
         }
     }
 
     /**
      * Elimina una película de los favoritos de un usuario.
-     * Además de eliminarla de la base de datos local, notifica el cambio para la sincronización.
+     * La fila queda como marca de borrado pendiente de subir a la nube, y se
+     * notifica el cambio para la sincronización.
+     * Si su equivalente en la otra fuente (IMDb/TMDB) también era favorito, se elimina igualmente.
      *
      * @param userId  ID del usuario
      * @param movieId ID de la película
      * @return Número de filas eliminadas
      */
     public int removeMovieFromFavorites(String userId, String movieId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        int rowsDeleted = db.delete(
-                TABLE_FAVORITES,
-                COLUMN_USER_ID + "=? AND " + COLUMN_MOVIE_ID + "=?",
-                new String[]{userId, movieId}
-        );
+        int rowsDeleted = deleteFavorite(userId, movieId);
+        String linkedId = getLinkedMovieId(movieId);
+        if (linkedId != null) {
+            rowsDeleted += deleteFavorite(userId, linkedId);
+        }
+        favoritesIndex.remove(userId, movieId, linkedId);
         Log.d("SQLiteHelper", "Número de favoritos eliminados: " + rowsDeleted + " para el usuario " + userId);
-        // Notificar que se ha eliminado una película (para sincronización)
-        if (rowsDeleted > 0 && favoritesChangedListener != null) {
-            favoritesChangedListener.onFavoriteRemoved(movieId);
+        return rowsDeleted;
+    }
+
+    /**
+     * Marca como eliminada una fila concreta de 'favorites' y notifica el cambio para la sincronización.
+     */
+    private int deleteFavorite(String userId, String movieId) {
+        long start = metrics.start();
+        SQLiteStatement statement = statementCache.get(this.getWritableDatabase(), SQL_DELETE_FAVORITE);
+        int rowsDeleted;
+        synchronized (statement) {
+            statement.bindLong(1, System.currentTimeMillis());
+            statement.bindString(2, userId);
+            statement.bindString(3, movieId);
+            rowsDeleted = statement.executeUpdateDelete();
+            statement.clearBindings();
+        }
+        metrics.record("removeMovieFromFavorites", SQL_DELETE_FAVORITE, start, rowsDeleted);
+        // Notificar que se ha eliminado una película (para sincronización y para las pantallas)
+        if (rowsDeleted > 0) {
+            for (OnFavoritesChangedListener listener : favoritesChangedListeners) {
+                listener.onFavoriteRemoved(userId, movieId);
+            }
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_FAVORITES, userId);
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Obtiene los favoritos de un usuario con cambios locales pendientes de subir a la nube,
+     * incluidas las marcas de borrado, ordenados por fecha de modificación. No incluye los
+     * cambios descargados de la nube, que ya están allí.
+     *
+     * @param userId ID del usuario
+     * @return Lista de cambios pendientes
+     */
+    public List<FavoriteChange> getPendingFavoriteUploads(String userId) {
+        long start = metrics.start();
+        List<FavoriteChange> changes = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_PENDING_UPLOADS, new String[]{userId})) {
+            while (cursor.moveToNext()) {
+                changes.add(readFavoriteChange(cursor));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener los favoritos pendientes de subir del usuario: " + userId, e);
+        }
+        metrics.record("getPendingFavoriteUploads", SQL_SELECT_PENDING_UPLOADS, start, changes.size());
+        return changes;
+    }
+
+    /**
+     * Marca como subidos los favoritos indicados, en una sola transacción. Una fila solo deja
+     * de estar pendiente si sigue siendo la versión que se subió: si se modificó mientras
+     * tanto, el cambio nuevo se sube en la siguiente sincronización.
+     *
+     * @param userId  ID del usuario
+     * @param changes Versiones que se han escrito en la nube
+     * @return Número de favoritos marcados como subidos
+     */
+    public int markFavoritesUploaded(String userId, List<FavoriteChange> changes) {
+        if (userId == null || changes == null || changes.isEmpty()) return 0;
+        long start = metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int marked = 0;
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement statement = db.compileStatement(SQL_MARK_FAVORITE_UPLOADED)) {
+            for (FavoriteChange change : changes) {
+                statement.bindString(1, userId);
+                statement.bindString(2, change.getMovieId());
+                statement.bindLong(3, change.getUpdatedAt());
+                statement.bindLong(4, change.isDeleted() ? 1 : 0);
+                marked += statement.executeUpdateDelete();
+                statement.clearBindings();
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al marcar como subidos los favoritos del usuario " + userId, e);
+            marked = 0; // La transacción se deshace: se volverán a subir
+        } finally {
+            db.endTransaction();
+        }
+        metrics.record("markFavoritesUploaded", SQL_MARK_FAVORITE_UPLOADED, start, marked);
+        return marked;
+    }
+
+    /**
+     * Obtiene el estado local de un favorito, aunque esté eliminado (marca de borrado).
+     *
+     * @param userId  ID del usuario
+     * @param movieId ID de la película
+     * @return El estado del favorito, o null si nunca fue favorito (o ya se purgó)
+     */
+    public FavoriteChange getFavoriteChange(String userId, String movieId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_FAVORITE_CHANGE, new String[]{userId, movieId})) {
+            return cursor.moveToFirst() ? readFavoriteChange(cursor) : null;
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener el favorito " + movieId + " del usuario: " + userId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Lee la fila actual de un cursor de SQL_SELECT_FAVORITE_CHANGE o SQL_SELECT_PENDING_UPLOADS.
+     */
+    private static FavoriteChange readFavoriteChange(Cursor cursor) {
+        return new FavoriteChange(
+                cursor.getString(0),
+                cursor.getString(1),
+                cursor.getString(2),
+                cursor.getLong(3),
+                cursor.getLong(4),
+                cursor.getInt(5) != 0);
+    }
+
+    /**
+     * Aplica en una sola transacción los cambios de favoritos descargados de la nube. Para
+     * cada película se queda la versión modificada más recientemente (la local se conserva
+     * si es igual o más nueva), y las que no existían se insertan, aunque sean marcas de
+     * borrado. Las filas escritas desde la nube no quedan pendientes de subir; una fila
+     * local más nueva conserva su cambio pendiente. La marca de agua de descarga no
+     * interviene: un cambio que llega tarde con una fecha antigua se aplica igualmente si
+     * es más reciente que la fila local.
+     * <p>
+     * No se avisa a los OnFavoritesChangedListener (los cambios vienen de la nube y no hay
+     * que devolverlos), pero sí se invalidan las pantallas que observan los favoritos.
+     *
+     * @param userId  ID del usuario
+     * @param changes Cambios descargados
+     * @return Número de cambios aplicados, o -1 si no se pudieron aplicar
+     */
+    public int mergeFavoriteChanges(String userId, List<FavoriteChange> changes) {
+        if (userId == null || changes == null || changes.isEmpty()) return 0;
+        if (!doesUserExist(userId)) {
+            Log.e("SQLiteHelper", "No se pueden sincronizar favoritos: El usuario " + userId + " no existe.");
+            return -1;
+        }
+
+        long start = metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int applied = 0;
+        db.beginTransactionNonExclusive();
+        try (SQLiteStatement localVersion = db.compileStatement(SQL_FAVORITE_UPDATED_AT);
+             SQLiteStatement update = db.compileStatement(SQL_UPDATE_FAVORITE_CHANGE);
+             SQLiteStatement insert = db.compileStatement(SQL_INSERT_FAVORITE_CHANGE)) {
+            for (FavoriteChange change : changes) {
+                if (change == null || change.getMovieId() == null) continue;
+                localVersion.bindString(1, userId);
+                localVersion.bindString(2, change.getMovieId());
+                Long localUpdatedAt;
+                try {
+                    localUpdatedAt = localVersion.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    localUpdatedAt = null; // No existe en local
+                }
+                localVersion.clearBindings();
+                if (localUpdatedAt != null && localUpdatedAt >= change.getUpdatedAt()) continue;
+
+                SQLiteStatement statement = localUpdatedAt == null ? insert : update;
+                bindNullable(statement, 1, change.getPoster());
+                statement.bindString(2, change.getTitle() != null ? change.getTitle() : "");
+                statement.bindLong(3, change.getAddedAt());
+                statement.bindLong(4, change.getUpdatedAt());
+                statement.bindLong(5, change.isDeleted() ? 1 : 0);
+                statement.bindString(6, userId);
+                statement.bindString(7, change.getMovieId());
+                statement.executeUpdateDelete();
+                statement.clearBindings();
+                applied++;
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al sincronizar los favoritos del usuario " + userId, e);
+            applied = -1; // La transacción se deshace
+        } finally {
+            db.endTransaction();
+        }
+        metrics.record("mergeFavoriteChanges", SQL_UPDATE_FAVORITE_CHANGE, start, Math.max(applied, 0));
+
+        Log.d("SQLiteHelper", "Cambios de favoritos aplicados desde la nube: " + applied + " de " + changes.size()
+                + " para el usuario " + userId);
+        if (applied > 0) {
+            favoritesIndex.invalidate(userId);
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_FAVORITES, userId);
+        }
+        return applied;
+    }
+
+    /**
+     * Obtiene los IDs de los favoritos (no eliminados) de un usuario que ya están en la nube,
+     * es decir, sin cambios pendientes de subir.
+     *
+     * @param userId ID del usuario
+     * @return Conjunto de IDs de película
+     */
+    public Set<String> getUploadedFavoriteIds(String userId) {
+        Set<String> movieIds = new HashSet<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_UPLOADED_FAVORITE_IDS, new String[]{userId})) {
+            while (cursor.moveToNext()) {
+                movieIds.add(cursor.getString(0));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener los favoritos ya subidos del usuario: " + userId, e);
+        }
+        return movieIds;
+    }
+
+    /**
+     * Elimina de local, en una sola transacción, favoritos que ya no existen en la nube (los
+     * borró del todo un dispositivo con una versión anterior, sin dejar marca de borrado). Solo
+     * se eliminan los que siguen sin cambios pendientes: si se modificaron mientras tanto en
+     * local, el cambio se sube en lugar de perderse.
+     * <p>
+     * Igual que mergeFavoriteChanges, no avisa a los OnFavoritesChangedListener pero sí
+     * invalida las pantallas que observan los favoritos.
+     *
+     * @param userId   ID del usuario
+     * @param movieIds IDs de las películas que no están en la nube
+     * @return Número de favoritos eliminados
+     */
+    public int removeFavoritesMissingFromCloud(String userId, Collection<String> movieIds) {
+        if (userId == null || movieIds == null || movieIds.isEmpty()) return 0;
+        long start = metrics.start();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int removed = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            for (String movieId : movieIds) {
+                removed += db.delete(TABLE_FAVORITES, COLUMN_USER_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ? AND "
+                        + COLUMN_DELETED + " = 0 AND " + COLUMN_DIRTY + " = 0", new String[]{userId, movieId});
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al eliminar los favoritos borrados en la nube del usuario " + userId, e);
+            removed = 0; // La transacción se deshace
+        } finally {
+            db.endTransaction();
+        }
+        metrics.record("removeFavoritesMissingFromCloud", TABLE_FAVORITES, start, removed);
+
+        if (removed > 0) {
+            Log.d("SQLiteHelper", "Favoritos borrados en la nube eliminados en local: " + removed
+                    + " para el usuario " + userId);
+            favoritesIndex.invalidate(userId);
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_FAVORITES, userId);
+        }
+        return removed;
+    }
+
+    /**
+     * Devuelve la hora del servidor (ms) de la última escritura ya descargada de la nube
+     * (0 si nunca se sincronizó). No se compara con updated_at, que depende del reloj de
+     * cada dispositivo.
+     */
+    public long getCloudWatermark(String userId) {
+        return getWatermark(userId, COLUMN_CLOUD_WATERMARK);
+    }
+
+    /**
+     * Avanza la marca de agua de descarga (hora del servidor, en ms). Nunca retrocede.
+     */
+    public void advanceCloudWatermark(String userId, long syncedAt) {
+        writeSyncColumn(userId, COLUMN_CLOUD_WATERMARK, syncedAt, true);
+    }
+
+    /**
+     * Devuelve el momento (ms, reloj local) de la última descarga completa de los favoritos
+     * de la nube (0 si nunca se hizo).
+     */
+    public long getLastFullPull(String userId) {
+        return getWatermark(userId, COLUMN_FULL_PULL_AT);
+    }
+
+    /**
+     * Guarda el momento (ms, reloj local) de la última descarga completa. A diferencia de la
+     * marca de agua, puede retroceder si se atrasa el reloj del dispositivo.
+     */
+    public void setLastFullPull(String userId, long time) {
+        writeSyncColumn(userId, COLUMN_FULL_PULL_AT, time, false);
+    }
+
+    private long getWatermark(String userId, String column) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT " + column + " FROM " + TABLE_FAVORITES_SYNC
+                + " WHERE " + COLUMN_USER_ID + " = ?", new String[]{userId})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener la marca de agua " + column + " del usuario: " + userId, e);
+            return 0L;
+        }
+    }
+
+    private void writeSyncColumn(String userId, String column, long value, boolean onlyForward) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_FAVORITES_SYNC + " (" + COLUMN_USER_ID + ") VALUES (?)",
+                    new Object[]{userId});
+            db.execSQL("UPDATE " + TABLE_FAVORITES_SYNC + " SET " + column + " = "
+                    + (onlyForward ? "MAX(" + column + ", ?)" : "?")
+                    + " WHERE " + COLUMN_USER_ID + " = ?", new Object[]{value, userId});
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al guardar " + column + " del usuario: " + userId, e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Elimina definitivamente las marcas de borrado de un usuario anteriores a un momento
+     * dado. Solo se eliminan las que ya están en la nube (no pendientes de subir), para que
+     * la eliminación no se pierda.
+     *
+     * @param userId     ID del usuario
+     * @param olderThan  Momento (ms); se eliminan las marcas de borrado modificadas antes
+     * @return Número de filas eliminadas
+     */
+    public int purgeFavoriteTombstones(String userId, long olderThan) {
+        long start = metrics.start();
+        int rowsDeleted = 0;
+        try {
+            rowsDeleted = this.getWritableDatabase().delete(TABLE_FAVORITES,
+                    COLUMN_USER_ID + " = ? AND " + COLUMN_DELETED + " = 1 AND " + COLUMN_DIRTY + " = 0 AND "
+                            + COLUMN_UPDATED_AT + " < ?",
+                    new String[]{userId, String.valueOf(olderThan)});
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al eliminar las marcas de borrado del usuario: " + userId, e);
         }
+        metrics.record("purgeFavoriteTombstones", TABLE_FAVORITES, start, rowsDeleted);
         return rowsDeleted;
     }
 
     /**
      * Obtiene todas las películas favoritas de un usuario.
+     * Si una película está guardada con su ID de IMDb y con su ID de TMDB, solo se
+     * devuelve la de IMDb.
      *
      * @param userId ID del usuario
      * @return Lista de objetos Movie representando los favoritos
      */
     public List<Movie> getFavoriteMovies(String userId) {
+        long start = metrics.start();
         List<Movie> favoriteMovies = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_FAVORITES, new String[]{userId})) {
+            // Índices de columna resueltos una sola vez por cursor
+            int movieIdIndex = cursor.getColumnIndexOrThrow(COLUMN_MOVIE_ID);
+            int posterIndex = cursor.getColumnIndexOrThrow(COLUMN_POSTER);
+            int titleIndex = cursor.getColumnIndexOrThrow(COLUMN_TITLE);
+            while (cursor.moveToNext()) {
+                favoriteMovies.add(new Movie(
+                        cursor.getString(movieIdIndex),
+                        cursor.getString(posterIndex),
+                        cursor.getString(titleIndex)));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener películas favoritas para el usuario: " + userId, e);
+        }
+        metrics.record("getFavoriteMovies", SQL_SELECT_FAVORITES, start, favoriteMovies.size());
+
+        Log.d("SQLiteHelper", "Número de películas favoritas obtenidas para el usuario " + userId + ": " + favoriteMovies.size());
+        return favoriteMovies;
+    }
+
+    /**
+     * Obtiene una página de favoritos de un usuario, de los más recientes a los más antiguos.
+     * Como getFavoriteMovies, omite las películas de TMDB cuyo equivalente de IMDb también es favorito.
+     *
+     * @param userId ID del usuario
+     * @param after  Clave devuelta por la página anterior (null para la primera)
+     * @param limit  Número máximo de películas de la página
+     * @return Página de favoritos
+     */
+    public FavoritesPage getFavoritesNewestFirst(String userId, FavoritesPage.Key after, int limit) {
+        StringBuilder where = new StringBuilder(COLUMN_USER_ID + " = ? AND " + COLUMN_DELETED + " = 0 AND " + NOT_DUPLICATED_FAVORITE);
+        List<String> args = new ArrayList<>();
+        args.add(userId);
+        if (after != null) {
+            where.append(" AND (" + COLUMN_ADDED_AT + " < ? OR (" + COLUMN_ADDED_AT + " = ? AND " + COLUMN_MOVIE_ID + " < ?))");
+            args.add(String.valueOf(after.addedAt));
+            args.add(String.valueOf(after.addedAt));
+            args.add(after.movieId);
+        }
+        return queryFavoritesPage("getFavoritesNewestFirst", where.toString(), COLUMN_ADDED_AT + " DESC, " + COLUMN_MOVIE_ID + " DESC", args, limit);
+    }
+
+    /**
+     * Obtiene una página de favoritos de un usuario ordenados por título (A-Z, sin distinguir
+     * mayúsculas), opcionalmente solo los que empiezan por un prefijo.
+     *
+     * @param userId      ID del usuario
+     * @param titlePrefix Prefijo del título (null o vacío para todos)
+     * @param after       Clave devuelta por la página anterior (null para la primera)
+     * @param limit       Número máximo de películas de la página
+     * @return Página de favoritos
+     */
+    public FavoritesPage getFavoritesByTitle(String userId, String titlePrefix, FavoritesPage.Key after, int limit) {
+        String title = COLUMN_TITLE + " COLLATE NOCASE";
+        StringBuilder where = new StringBuilder(COLUMN_USER_ID + " = ? AND " + COLUMN_DELETED + " = 0 AND " + NOT_DUPLICATED_FAVORITE);
+        List<String> args = new ArrayList<>();
+        args.add(userId);
+        if (titlePrefix != null && !titlePrefix.isEmpty()) {
+            // Rango [prefijo, prefijo + U+FFFF): a diferencia de LIKE, puede usar el índice por título
+            where.append(" AND ").append(title).append(" >= ? AND ").append(title).append(" < ?");
+            args.add(titlePrefix);
+            args.add(titlePrefix + '\uffff');
+        }
+        if (after != null) {
+            where.append(" AND (").append(title).append(" > ? OR (").append(title)
+                    .append(" = ? AND " + COLUMN_MOVIE_ID + " > ?))");
+            args.add(after.title);
+            args.add(after.title);
+            args.add(after.movieId);
+        }
+        return queryFavoritesPage("getFavoritesByTitle", where.toString(), title + ", " + COLUMN_MOVIE_ID, args, limit);
+    }
+
+    /**
+     * Ejecuta una consulta paginada sobre 'favorites'. Se pide una fila de más para saber
+     * si hay una página siguiente.
+     */
+    private FavoritesPage queryFavoritesPage(String operation, String where, String orderBy, List<String> args, int limit) {
+        long start = metrics.start();
+        List<Movie> movies = new ArrayList<>();
+        FavoritesPage.Key lastKey = null;
+        boolean hasMore = false;
+        String sql = "SELECT " + COLUMN_MOVIE_ID + ", " + COLUMN_POSTER + ", " + COLUMN_TITLE + ", " + COLUMN_ADDED_AT
+                + " FROM " + TABLE_FAVORITES + " WHERE " + where + " ORDER BY " + orderBy + " LIMIT " + (limit + 1);
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                if (movies.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                Movie movie = new Movie(cursor.getString(0), cursor.getString(1), cursor.getString(2));
+                movies.add(movie);
+                lastKey = new FavoritesPage.Key(cursor.getLong(3), movie.getTitle(), movie.getMovie_id());
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener una página de favoritos para el usuario: " + args.get(0), e);
+        }
+        metrics.record(operation, sql, start, movies.size());
+        return new FavoritesPage(movies, hasMore ? lastKey : null);
+    }
+
+    /**
+     * Guarda la equivalencia entre el ID de IMDb y el ID de TMDB de una película.
+     *
+     * @param imdbId ID de IMDb ("tt...")
+     * @param tmdbId ID numérico de TMDB
+     */
+    public void saveMovieIdMapping(String imdbId, String tmdbId) {
+        if (imdbId == null || !imdbId.startsWith("tt") || tmdbId == null || tmdbId.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_IMDB_ID, imdbId);
+        values.put(COLUMN_TMDB_ID, tmdbId);
+        long start = metrics.start();
+        long result = db.insertWithOnConflict(TABLE_MOVIE_ID_MAP, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        metrics.record("saveMovieIdMapping", TABLE_MOVIE_ID_MAP, start, result == -1 ? 0 : 1);
+        if (result == -1) {
+            Log.e("SQLiteHelper", "Error al guardar la equivalencia de IDs: " + imdbId + " <-> " + tmdbId);
+        } else {
+            favoritesIndex.onMappingSaved(imdbId, tmdbId);
+        }
+    }
+
+    /**
+     * Obtiene el ID equivalente de una película en la otra fuente:
+     * el de TMDB si se recibe uno de IMDb y viceversa.
+     *
+     * @param movieId ID de IMDb ("tt...") o de TMDB
+     * @return El ID equivalente o null si todavía no se conoce
+     */
+    public String getLinkedMovieId(String movieId) {
+        if (movieId == null) return null;
+        String sql = movieId.startsWith("tt") ? SQL_TMDB_FOR_IMDB : SQL_IMDB_FOR_TMDB;
+        long start = metrics.start();
+        String linkedId = null;
+        SQLiteStatement statement = statementCache.get(this.getReadableDatabase(), sql);
+        try {
+            synchronized (statement) {
+                try {
+                    statement.bindString(1, movieId);
+                    linkedId = statement.simpleQueryForString();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
+        } catch (SQLiteDoneException e) {
+            // Todavía no se conoce la equivalencia
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al obtener el ID equivalente de: " + movieId, e);
+        }
+        metrics.record("getLinkedMovieId", sql, start, linkedId != null ? 1 : 0);
+        return linkedId;
+    }
+
+    /**
+     * Guarda (o reemplaza) los detalles unificados de una película en la tabla 'movie_details'
+     * y actualiza el índice de búsqueda con su título y sinopsis.
+     *
+     * @param details Detalles de la película
+     * @return True si se guardaron correctamente, False en caso contrario
+     */
+    public boolean saveMovieDetails(MovieDetails details) {
+        if (details == null || details.getMovieId() == null) {
+            Log.e("SQLiteHelper", "No se pueden guardar detalles nulos o sin ID.");
+            return false;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(COLUMN_MOVIE_ID, details.getMovieId());
+        values.put(COLUMN_SOURCE, details.getSource());
+        values.put(COLUMN_TITLE, details.getTitle());
+        values.put(COLUMN_OVERVIEW, details.getOverview());
+        values.put(COLUMN_POSTER, details.getPoster());
+        values.put(COLUMN_RATING, details.getRating());
+        values.put(COLUMN_RELEASE_DATE, details.getReleaseDate());
+        values.put(COLUMN_FETCHED_AT, details.getFetchedAt());
+
+        long start = metrics.start();
+        long result = db.insertWithOnConflict(TABLE_MOVIE_DETAILS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        metrics.record("saveMovieDetails", TABLE_MOVIE_DETAILS, start, result == -1 ? 0 : 1);
+        if (result == -1) {
+            Log.e("SQLiteHelper", "Error al guardar detalles de la película: " + details.getMovieId());
+            return false;
+        }
+
+        indexMovieForSearch(details.getMovieId(), details.getTitle(), details.getOverview(), details.getPoster());
+        return true;
+    }
+
+    /**
+     * Obtiene los detalles guardados de una película.
+     *
+     * @param movieId ID de la película
+     * @return Objeto MovieDetails si existe, null en caso contrario
+     */
+    public MovieDetails getMovieDetails(String movieId) {
+        if (movieId == null) return null;
+        long start = metrics.start();
+        MovieDetails details = null;
+        SQLiteDatabase db = this.getReadableDatabase();
         try (Cursor cursor = db.query(
-                TABLE_FAVORITES,
-                new String[]{COLUMN_MOVIE_ID, COLUMN_POSTER, COLUMN_TITLE},
-                COLUMN_USER_ID + "=?",
-                new String[]{userId},
+                TABLE_MOVIE_DETAILS,
+                new String[]{COLUMN_MOVIE_ID, COLUMN_SOURCE, COLUMN_TITLE, COLUMN_OVERVIEW,
+                        COLUMN_POSTER, COLUMN_RATING, COLUMN_RELEASE_DATE, COLUMN_FETCHED_AT},
+                COLUMN_MOVIE_ID + "=?",
+                new String[]{movieId},
                 null,
                 null,
                 null
         )) {
-
             if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    String movieId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MOVIE_ID));
-                    String poster = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_POSTER));
-                    String title = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TITLE));
-
-                    Movie movie = new Movie(movieId, poster, title);
-                    favoriteMovies.add(movie);
-                } while (cursor.moveToNext());
+                details = new MovieDetails(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getDouble(5),
+                        cursor.getString(6),
+                        cursor.getLong(7)
+                );
             }
         } catch (Exception e) {
-            Log.e("SQLiteHelper", "Error al obtener películas favoritas para el usuario: " + userId, e);
+            Log.e("SQLiteHelper", "Error al obtener detalles de la película: " + movieId, e);
         }
+        metrics.record("getMovieDetails", TABLE_MOVIE_DETAILS, start, details != null ? 1 : 0);
+        return details;
+    }
 
-        Log.d("SQLiteHelper", "Número de películas favoritas obtenidas para el usuario " + userId + ": " + favoriteMovies.size());
-        return favoriteMovies;
+    /**
+     * Guarda (o reemplaza) el título y la sinopsis de una película en el índice de búsqueda.
+     * Se invoca cada vez que la aplicación obtiene los detalles de una película, de modo
+     * que después se pueda buscar sobre ellos sin conexión.
+     *
+     * @param movieId  ID de la película (IMDb "tt..." o ID numérico de TMDB)
+     * @param title    Título de la película
+     * @param overview Sinopsis de la película (puede ser null)
+     * @param poster   URL del póster de la película (puede ser null)
+     */
+    public void indexMovieForSearch(String movieId, String title, String overview, String poster) {
+        if (movieId == null || movieId.isEmpty()) {
+            Log.e("SQLiteHelper", "No se puede indexar una película sin ID.");
+            return;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_MOVIE_ID, movieId);
+        values.put(COLUMN_POSTER, poster);
+        values.put(COLUMN_TITLE, title);
+        values.put(COLUMN_OVERVIEW, overview);
+
+        long start = metrics.start();
+        db.beginTransaction();
+        try {
+            // Las tablas FTS no tienen restricciones UNIQUE, así que se reemplaza a mano por
+            // movie_id. No se usa un docid derivado del ID: dos IDs distintos pueden dar el
+            // mismo número ("tt0120338" y "tt120338") y se reemplazaría otra película
+            db.delete(TABLE_MOVIE_SEARCH, COLUMN_MOVIE_ID + "=?", new String[]{movieId});
+            db.insert(TABLE_MOVIE_SEARCH, null, values);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al indexar la película para búsqueda: " + movieId, e);
+        } finally {
+            db.endTransaction();
+        }
+        metrics.record("indexMovieForSearch", TABLE_MOVIE_SEARCH, start, 1);
+    }
+
+    /**
+     * Busca, entre los favoritos de un usuario, las películas cuyo título o sinopsis
+     * coinciden con el texto indicado. Los resultados se ordenan por relevancia (las
+     * coincidencias en el título pesan más).
+     *
+     * @param userId ID del usuario
+     * @param query  Texto introducido por el usuario
+     * @param limit  Número máximo de resultados
+     * @return Lista de películas favoritas ordenadas por relevancia
+     */
+    public List<Movie> searchFavoriteMovies(String userId, String query, int limit) {
+        String matchQuery = buildMatchQuery(query);
+        if (matchQuery == null || userId == null) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT " + TABLE_FAVORITES + "." + COLUMN_MOVIE_ID + ", "
+                + TABLE_FAVORITES + "." + COLUMN_POSTER + ", "
+                + TABLE_FAVORITES + "." + COLUMN_TITLE + ", "
+                + "matchinfo(" + TABLE_MOVIE_SEARCH + ", 'pcx')"
+                + " FROM " + TABLE_MOVIE_SEARCH
+                + " JOIN " + TABLE_FAVORITES + " ON " + TABLE_FAVORITES + "." + COLUMN_MOVIE_ID
+                + " = " + TABLE_MOVIE_SEARCH + "." + COLUMN_MOVIE_ID
+                + " WHERE " + TABLE_MOVIE_SEARCH + " MATCH ? AND " + TABLE_FAVORITES + "." + COLUMN_USER_ID + " = ?"
+                + " AND " + TABLE_FAVORITES + "." + COLUMN_DELETED + " = 0";
+        return runRankedSearch("searchFavoriteMovies", sql, new String[]{matchQuery, userId}, limit);
+    }
+
+    /**
+     * Ejecuta una consulta FTS cuyas cuatro columnas son (movie_id, poster, title, matchinfo)
+     * y devuelve las películas ordenadas por puntuación.
+     */
+    private List<Movie> runRankedSearch(String operation, String sql, String[] args, int limit) {
+        long start = metrics.start();
+        List<ScoredMovie> scored = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Movie movie = new Movie(cursor.getString(0), cursor.getString(1), cursor.getString(2));
+                scored.add(new ScoredMovie(movie, rankMatch(cursor.getBlob(3))));
+            }
+        } catch (Exception e) {
+            Log.e("SQLiteHelper", "Error al buscar películas: " + args[0], e);
+        }
+        metrics.record(operation, sql, start, scored.size());
+
+        Collections.sort(scored, (a, b) -> Double.compare(b.score, a.score));
+        List<Movie> results = new ArrayList<>();
+        for (int i = 0; i < scored.size() && i < limit; i++) {
+            results.add(scored.get(i).movie);
+        }
+        return results;
+    }
+
+    /**
+     * Calcula la relevancia de una fila a partir del blob devuelto por matchinfo(..., 'pcx').
+     * Por cada frase y columna se suma peso * (apariciones en la fila / apariciones totales).
+     */
+    private static double rankMatch(byte[] matchInfo) {
+        if (matchInfo == null) return 0.0;
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+        double score = 0.0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount && column < SEARCH_COLUMN_WEIGHTS.length; column++) {
+                int base = 8 + 12 * (phrase * columnCount + column);
+                int hitsThisRow = buffer.getInt(base);
+                int hitsAllRows = buffer.getInt(base + 4);
+                if (hitsThisRow > 0 && hitsAllRows > 0) {
+                    score += SEARCH_COLUMN_WEIGHTS[column] * ((double) hitsThisRow / hitsAllRows);
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Convierte el texto del usuario en una consulta MATCH segura: solo letras y dígitos,
+     * cada palabra como prefijo ("matr*") y todas obligatorias.
+     *
+     * @return La consulta MATCH o null si no queda ninguna palabra válida
+     */
+    private static String buildMatchQuery(String query) {
+        if (query == null) return null;
+        StringBuilder match = new StringBuilder();
+        for (String token : query.split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(token).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * Asigna un parámetro de texto que puede ser null.
+     */
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Película acompañada de su puntuación de relevancia.
+     */
+    private static class ScoredMovie {
+        final Movie movie;
+        final double score;
+
+        ScoredMovie(Movie movie, double score) {
+            this.movie = movie;
+            this.score = score;
+        }
     }
-}
\ No newline at end of file
+}
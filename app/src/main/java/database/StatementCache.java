@@ -0,0 +1,51 @@
+package database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caché de sentencias compiladas ({@link SQLiteStatement}) usada por {@link SQLiteHelper}
+ * en las operaciones más frecuentes, para no construir ni compilar el SQL en cada llamada.
+ * <p>
+ * Una sentencia guarda sus parámetros, así que quien la use debe sincronizarse sobre ella
+ * mientras los asigna y la ejecuta. Si la base de datos se vuelve a abrir, las sentencias
+ * anteriores se descartan.
+ */
+class StatementCache {
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private SQLiteDatabase database; // Base de datos sobre la que se compilaron las sentencias
+
+    /**
+     * Devuelve la sentencia compilada para el SQL indicado, compilándola la primera vez.
+     *
+     * @param db  Base de datos abierta.
+     * @param sql Sentencia SQL (con parámetros '?').
+     */
+    synchronized SQLiteStatement get(SQLiteDatabase db, String sql) {
+        if (db != database) {
+            clear();
+            database = db;
+        }
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Cierra y descarta todas las sentencias compiladas.
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+        database = null;
+    }
+}
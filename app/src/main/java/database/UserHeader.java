@@ -0,0 +1,49 @@
+package database;
+
+/**
+ * Vista parcial de un usuario de la tabla 'users' con los datos de la cabecera del menú
+ * lateral: nombre, correo e imagen (URL o referencia al almacén de imágenes).
+ */
+public class UserHeader {
+    private final String userId;
+    private String name;
+    private String email;
+    private String image;
+
+    public UserHeader(String userId, String name, String email, String image) {
+        this.userId = userId;
+        this.name = name;
+        this.email = email;
+        this.image = image;
+    }
+
+    // Getters y setters
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public void setImage(String image) {
+        this.image = image;
+    }
+}
@@ -0,0 +1,44 @@
+package database;
+
+/**
+ * Vista parcial de un usuario de la tabla 'users' con los datos de sesión: nombre, correo
+ * y horas de login/logout. La usan el registro de actividad y su sincronización, que no
+ * necesitan la imagen ni los campos cifrados.
+ */
+public class UserSession {
+    private final String userId;
+    private final String name;
+    private final String email;
+    private final String loginTime;
+    private final String logoutTime;
+
+    public UserSession(String userId, String name, String email, String loginTime, String logoutTime) {
+        this.userId = userId;
+        this.name = name;
+        this.email = email;
+        this.loginTime = loginTime;
+        this.logoutTime = logoutTime;
+    }
+
+    // Getters
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getLoginTime() {
+        return loginTime;
+    }
+
+    public String getLogoutTime() {
+        return logoutTime;
+    }
+}
@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import utils.ProfileImageStore;
+
 /**
  * Clase encargada de la sincronización de datos entre SQLite y Firestore para el usuario.
  * Proporciona métodos para sincronizar la actividad del usuario y los datos de su perfil entre ambas bases de datos.
@@ -26,6 +28,8 @@ public class UsersSync {
     private static final String TAG = "UsersSync"; // Etiqueta para los logs.
     private final FirebaseFirestore firestore; // Instancia de Firestore para la sincronización.
     private final SQLiteHelper dbHelper; // Instancia de la base de datos SQLite local.
+    private final AsyncDatabase asyncDb; // Hilo de la base de datos (las lecturas no se hacen en el hilo principal).
+    private final ProfileImageStore imageStore; // Imágenes de perfil guardadas en disco.
     private final String userId; // Identificador único del usuario.
 
     /**
@@ -36,6 +40,8 @@ public class UsersSync {
     public UsersSync(Context context, String userId) {
         this.firestore = FirebaseFirestore.getInstance(); // Obtiene la instancia de Firestore.
         this.dbHelper = SQLiteHelper.getInstance(context); // Obtiene la instancia de SQLiteHelper.
+        this.asyncDb = AsyncDatabase.getInstance(context);
+        this.imageStore = ProfileImageStore.getInstance(context);
         this.userId = userId; // Asigna el identificador del usuario.
     }
 
@@ -46,8 +52,14 @@ public class UsersSync {
      * @return Task<Void> Tarea que representa el proceso de sincronización.
      */
     public Task<Void> syncActivityLog() {
+        return readLocalSession().continueWithTask(task -> uploadActivityLog(task.getResult()));
+    }
+
+    /**
+     * Sube a Firestore el activity_log a partir del usuario leído de SQLite.
+     */
+    private Task<Void> uploadActivityLog(UserSession user) {
         DocumentReference userDocRef = firestore.collection("users").document(userId);
-        User user = dbHelper.getUser(userId);
 
         if (user == null) {
             // Si no existe el usuario en SQLite, no se sincroniza nada.
@@ -130,13 +142,15 @@ public class UsersSync {
 
     /**
      * Sincroniza los datos del usuario desde Firestore a SQLite si no existen localmente.
-     * Llama al callback `onComplete.run()` cuando la sincronización finaliza.
+     * Llama al callback `onComplete.run()` cuando la sincronización finaliza, desde el hilo
+     * de la base de datos (no desde el hilo principal).
      * @param onComplete El callback que se llama cuando la sincronización termina.
      */
     public void syncFromCloudToLocal(Runnable onComplete) {
         DocumentReference userDocRef = firestore.collection("users").document(userId); // Referencia al documento del usuario en Firestore.
 
-        userDocRef.get().addOnCompleteListener(task -> {
+        // La respuesta se procesa en el hilo de la base de datos, ya que lee y escribe en SQLite
+        userDocRef.get().addOnCompleteListener(asyncDb.getExecutor(), task -> {
             if (task.isSuccessful()) {
                 DocumentSnapshot document = task.getResult();
                 if (document.exists()) {
@@ -234,8 +248,14 @@ public class UsersSync {
      * @return Task<Void> Tarea que representa el proceso de sincronización.
      */
     public Task<Void> syncSpecificFields() {
+        return readLocalUser().continueWithTask(task -> uploadSpecificFields(task.getResult()));
+    }
+
+    /**
+     * Sube a Firestore los campos específicos del usuario leído de SQLite.
+     */
+    private Task<Void> uploadSpecificFields(User localUser) {
         DocumentReference userDocRef = firestore.collection("users").document(userId); // Referencia al documento del usuario en Firestore.
-        User localUser = dbHelper.getUser(userId); // Obtiene el usuario local desde SQLite.
 
         if (localUser == null) {
             Log.w(TAG, "No se puede sincronizar: usuario no existe en SQLite.");
@@ -250,7 +270,8 @@ public class UsersSync {
             if (!localUser.getName().isEmpty()) updateData.put("name", localUser.getName());
             if (!localUser.getEmail().isEmpty()) updateData.put("email", localUser.getEmail());
             if (!localUser.getAddress().isEmpty()) updateData.put("address", localUser.getAddress());
-            if (!localUser.getImage().isEmpty()) updateData.put("image", localUser.getImage());
+            String image = cloudImageOf(localUser); // La función de la transacción no se ejecuta en el hilo principal
+            if (image != null && !image.isEmpty()) updateData.put("image", image);
             if (!localUser.getPhone().isEmpty()) updateData.put("phone", localUser.getPhone());
 
             if (updateData.isEmpty()) return null; // Si no hay campos para actualizar, termina la tarea.
@@ -267,4 +288,49 @@ public class UsersSync {
 
         return tcs.getTask(); // Devuelve la tarea.
     }
-}
\ No newline at end of file
+
+    /**
+     * Imagen del usuario tal y como se guarda en Firestore: la URL o, si la imagen está en el
+     * almacén local, su contenido en Base64 (ya reducido). Lee de disco, así que no debe
+     * llamarse desde el hilo principal.
+     */
+    private String cloudImageOf(User user) {
+        String image = user.getImage();
+        return ProfileImageStore.isLocalReference(image) ? imageStore.toBase64(userId) : image;
+    }
+
+    /**
+     * Lee los datos de sesión del usuario local en el hilo de la base de datos (sin la imagen
+     * ni los campos cifrados, que el registro de actividad no necesita).
+     * @return Tarea con los datos de sesión (null si el usuario no existe o no se pudo leer).
+     */
+    private Task<UserSession> readLocalSession() {
+        TaskCompletionSource<UserSession> source = new TaskCompletionSource<>();
+        asyncDb.execute(() -> {
+            UserSession session = null;
+            try {
+                session = dbHelper.getUserSession(userId);
+            } finally {
+                source.setResult(session);
+            }
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Lee el usuario local en el hilo de la base de datos.
+     * @return Tarea con el usuario (null si no existe o no se pudo leer).
+     */
+    private Task<User> readLocalUser() {
+        TaskCompletionSource<User> source = new TaskCompletionSource<>();
+        asyncDb.execute(() -> {
+            User user = null;
+            try {
+                user = dbHelper.getUser(userId);
+            } finally {
+                source.setResult(user);
+            }
+        });
+        return source.getTask();
+    }
+}
@@ -13,7 +13,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.text.TextUtils;
-import android.util.Base64;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
@@ -39,7 +38,6 @@ import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
 import com.hbb20.CountryCodePicker;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -52,10 +50,12 @@ import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import database.AsyncDatabase;
 import database.SQLiteHelper;
 import database.User;
 import database.UsersSync;
 import security.KeyStoreManager;
+import utils.ProfileImageStore;
 
 /**
  * Actividad para editar los datos de un usuario, como nombre, correo, dirección, teléfono e imagen.
@@ -381,9 +381,6 @@ public class EditUserActivity extends AppCompatActivity {
             return;
         }
 
-        // Convertir la imagen a Base64
-        String base64Image = convertImageToBase64(userImageView);
-
         // Cifrar los datos sensibles
         String encryptedPhone = phoneNumber.isEmpty() ? "" : keystoreManager.encrypt(phoneNumber); // Si el número está vacío, no cifrar
         String encryptedAddress = edtAddress.getText().toString().trim().isEmpty() ? "" : keystoreManager.encrypt(edtAddress.getText().toString().trim()); // Si la dirección está vacía, no cifrar
@@ -396,58 +393,77 @@ public class EditUserActivity extends AppCompatActivity {
 
         FirebaseUser user = mAuth.getCurrentUser();
         if (user != null) {
-            // Actualizar los datos en la base de datos local
-            updateLocalUserData(user.getUid(), newName, edtEmail.getText().toString().trim(),
-                    encryptedPhone, encryptedAddress, base64Image);
-
-            // Sincronizar los datos con Firebase Firestore
-            UsersSync usersSync = new UsersSync(this, currentUserId);
-            usersSync.syncActivityLog().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    // Actualizar Firestore con los nuevos datos del usuario
-                    Map<String, Object> userData = new HashMap<>();
-                    userData.put("name", newName);
-                    userData.put("email", edtEmail.getText().toString().trim());
-                    userData.put("phone", encryptedPhone); // Guardar vacío si es nulo
-                    userData.put("address", encryptedAddress); // Guardar vacío si es nulo
-                    userData.put("image", base64Image);
-
-                    FirebaseFirestore firestore = FirebaseFirestore.getInstance();
-                    firestore.collection("users").document(user.getUid())
-                            .set(userData, SetOptions.merge())
-                            .addOnSuccessListener(aVoid -> {
-                                Toast.makeText(this, "Datos sincronizados y guardados correctamente.", Toast.LENGTH_SHORT).show();
-                                startActivity(new Intent(this, MainActivity.class));
-                                finish();
-                            })
-                            .addOnFailureListener(e -> {
-                                Toast.makeText(this, "Error al sincronizar los datos en la nube", Toast.LENGTH_SHORT).show();
-                                Log.e("EditUserActivity", "Error al guardar datos en Firestore", e);
-                            });
-                } else {
-                    Toast.makeText(this, "Error al sincronizar los datos", Toast.LENGTH_SHORT).show();
-                }
+            String newEmail = edtEmail.getText().toString().trim();
+            Bitmap bitmap = getSelectedImage();
+
+            // La imagen se reduce y se guarda en disco fuera del hilo principal
+            executorService.execute(() -> {
+                ProfileImageStore imageStore = ProfileImageStore.getInstance(this);
+                String imageReference = bitmap != null ? imageStore.save(user.getUid(), bitmap) : null;
+                String cloudImage = imageReference != null ? imageStore.toBase64(user.getUid()) : null;
+                runOnUiThread(() -> saveAndSyncUserData(user, newName, newEmail, encryptedPhone,
+                        encryptedAddress, imageReference, cloudImage));
             });
         }
     }
 
     /**
-     * Convierte la imagen del ImageView en una cadena Base64.
-     * @param imageView El ImageView que contiene la imagen.
-     * @return La cadena Base64 que representa la imagen.
+     * Guarda los datos del usuario en la base de datos local y los sube a Firestore.
+     * @param user El usuario autenticado.
+     * @param newName El nuevo nombre del usuario.
+     * @param newEmail El nuevo correo electrónico del usuario.
+     * @param encryptedPhone El teléfono cifrado.
+     * @param encryptedAddress La dirección cifrada.
+     * @param imageReference Referencia a la imagen guardada en disco (null si no se cambia).
+     * @param cloudImage La imagen reducida en Base64 para Firestore (null si no se cambia).
      */
-    private String convertImageToBase64(ImageView imageView) {
-        // Obtener el bitmap de la imagen en el ImageView
-        Bitmap bitmap = ((BitmapDrawable) imageView.getDrawable()).getBitmap();
-
-        // Comprimir la imagen antes de convertirla a Base64
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, byteArrayOutputStream);
+    private void saveAndSyncUserData(FirebaseUser user, String newName, String newEmail, String encryptedPhone,
+                                     String encryptedAddress, String imageReference, String cloudImage) {
+        // Actualizar los datos en la base de datos local
+        updateLocalUserData(user.getUid(), newName, newEmail,
+                encryptedPhone, encryptedAddress, imageReference);
+
+        // Sincronizar los datos con Firebase Firestore
+        UsersSync usersSync = new UsersSync(this, currentUserId);
+        usersSync.syncActivityLog().addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                // Actualizar Firestore con los nuevos datos del usuario
+                Map<String, Object> userData = new HashMap<>();
+                userData.put("name", newName);
+                userData.put("email", newEmail);
+                userData.put("phone", encryptedPhone); // Guardar vacío si es nulo
+                userData.put("address", encryptedAddress); // Guardar vacío si es nulo
+                if (cloudImage != null) {
+                    userData.put("image", cloudImage);
+                }
 
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
+                FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+                firestore.collection("users").document(user.getUid())
+                        .set(userData, SetOptions.merge())
+                        .addOnSuccessListener(aVoid -> {
+                            Toast.makeText(this, "Datos sincronizados y guardados correctamente.", Toast.LENGTH_SHORT).show();
+                            startActivity(new Intent(this, MainActivity.class));
+                            finish();
+                        })
+                        .addOnFailureListener(e -> {
+                            Toast.makeText(this, "Error al sincronizar los datos en la nube", Toast.LENGTH_SHORT).show();
+                            Log.e("EditUserActivity", "Error al guardar datos en Firestore", e);
+                        });
+            } else {
+                Toast.makeText(this, "Error al sincronizar los datos", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
-        // Convertir la imagen comprimida a una cadena Base64
-        return Base64.encodeToString(byteArray, Base64.DEFAULT);
+    /**
+     * Obtiene la imagen mostrada en el ImageView del perfil.
+     * @return El Bitmap de la imagen, o null si se muestra la imagen por defecto.
+     */
+    private Bitmap getSelectedImage() {
+        if (userImageView.getDrawable() instanceof BitmapDrawable) {
+            return ((BitmapDrawable) userImageView.getDrawable()).getBitmap();
+        }
+        return null;
     }
 
     /**
@@ -559,31 +575,32 @@ public class EditUserActivity extends AppCompatActivity {
                                      String encryptedPhone,
                                      String encryptedAddress,
                                      String newPhotoUrl) {
-        // 1. Verificar si el usuario existe en la base de datos
-        User existingUser = dbHelper.getUser(userId);
-
-        // 2. Conservar datos que no se modifican (login_time y logout_time)
-        if (existingUser == null) {
-            Log.e("EditUserActivity", "El usuario no existe en la base de datos local: " + userId);
-            return;
-        }
+        // Se ejecuta en el hilo de la base de datos, antes que cualquier lectura encolada después
+        AsyncDatabase.getInstance(this).execute(() -> {
+            // 1. Verificar si el usuario existe en la base de datos (sin leer la fila completa)
+            // 2. Los datos que no se modifican (login_time y logout_time) se conservan
+            if (!dbHelper.doesUserExist(userId)) {
+                Log.e("EditUserActivity", "El usuario no existe en la base de datos local: " + userId);
+                return;
+            }
 
-        // 3. Actualizar solo los campos específicos usando el nuevo método
-        boolean success = dbHelper.updateUserSpecificFields(
-                userId,
-                newName,          // Nuevo nombre (puede ser null si no se actualiza)
-                newEmail,         // Nuevo correo electrónico (puede ser null si no se actualiza)
-                encryptedAddress, // Dirección cifrada (puede ser null si no se actualiza)
-                newPhotoUrl,      // Nueva imagen (puede ser null si no se actualiza)
-                encryptedPhone    // Teléfono cifrado (puede ser null si no se actualiza)
-        );
-
-        // 4. Manejar el resultado de la actualización
-        if (!success) {
-            Log.e("EditUserActivity", "Error al actualizar los campos específicos del usuario: " + userId);
-        } else {
-            Log.d("EditUserActivity", "Campos específicos actualizados correctamente para el usuario: " + userId);
-        }
+            // 3. Actualizar solo los campos específicos usando el nuevo método
+            boolean success = dbHelper.updateUserSpecificFields(
+                    userId,
+                    newName,          // Nuevo nombre (puede ser null si no se actualiza)
+                    newEmail,         // Nuevo correo electrónico (puede ser null si no se actualiza)
+                    encryptedAddress, // Dirección cifrada (puede ser null si no se actualiza)
+                    newPhotoUrl,      // Nueva imagen (puede ser null si no se actualiza)
+                    encryptedPhone    // Teléfono cifrado (puede ser null si no se actualiza)
+            );
+
+            // 4. Manejar el resultado de la actualización
+            if (!success) {
+                Log.e("EditUserActivity", "Error al actualizar los campos específicos del usuario: " + userId);
+            } else {
+                Log.d("EditUserActivity", "Campos específicos actualizados correctamente para el usuario: " + userId);
+            }
+        });
     }
 
     /**
@@ -638,9 +655,15 @@ public class EditUserActivity extends AppCompatActivity {
             return;
         }
 
-        // 1. Intentar cargar datos desde la base de datos local
-        User localUser = dbHelper.getUser(currentUserId);
+        // 1. Intentar cargar datos desde la base de datos local (leídos en el hilo de la base de datos)
+        AsyncDatabase.getInstance(this).getUser(currentUserId).observe(this, this::showUserData);
+    }
 
+    /**
+     * Muestra en el formulario los datos del usuario local o, si no existe, los del proveedor.
+     * @param localUser Usuario leído de la base de datos local (puede ser null).
+     */
+    private void showUserData(User localUser) {
         if (localUser != null) {
             // Cargar datos locales en la UI
             edtName.setText(localUser.getName());
@@ -648,12 +671,12 @@ public class EditUserActivity extends AppCompatActivity {
             edtPhone.setText(keystoreManager.decrypt(localUser.getPhone()));
             edtAddress.setText(keystoreManager.decrypt(localUser.getAddress()));
 
-            // Manejar la imagen (Base64 o URL)
+            // Manejar la imagen (guardada en disco o URL)
             if (localUser.getImage() != null && !localUser.getImage().isEmpty()) {
                 if (localUser.getImage().startsWith("http")) {
                     loadImageFromUrl(userImageView, localUser.getImage());
-                } else {
-                    decodeBase64Image(localUser.getImage());
+                } else if (ProfileImageStore.isLocalReference(localUser.getImage())) {
+                    loadStoredImage(localUser.getUserId());
                 }
             }
         } else {
@@ -704,17 +727,19 @@ public class EditUserActivity extends AppCompatActivity {
     }
 
     /**
-     * Método para decodificar imágenes Base64 y mostrarlas en el ImageView.
-     * @param base64Image La cadena Base64 que representa la imagen.
+     * Carga en segundo plano la imagen de perfil guardada en disco y la muestra en el ImageView.
+     * @param userId El ID del usuario.
      */
-    private void decodeBase64Image(String base64Image) {
-        try {
-            byte[] decodedBytes = Base64.decode(base64Image, Base64.DEFAULT);
-            Bitmap bitmap = BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
-            userImageView.setImageBitmap(bitmap);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Error decodificando imagen Base64", e);
-            userImageView.setImageResource(R.mipmap.ic_launcher_round);
-        }
+    private void loadStoredImage(String userId) {
+        executorService.execute(() -> {
+            Bitmap bitmap = ProfileImageStore.getInstance(this).loadImage(userId);
+            runOnUiThread(() -> {
+                if (bitmap != null) {
+                    userImageView.setImageBitmap(bitmap);
+                } else {
+                    userImageView.setImageResource(R.mipmap.ic_launcher_round);
+                }
+            });
+        });
     }
 }
\ No newline at end of file
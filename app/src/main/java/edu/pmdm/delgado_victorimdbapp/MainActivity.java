@@ -5,7 +5,6 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -20,6 +19,8 @@ import com.google.android.gms.auth.api.signin.GoogleSignInClient;
 import com.google.android.gms.auth.api.signin.GoogleSignInOptions;
 import com.google.android.material.navigation.NavigationView;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.AppBarConfiguration;
@@ -27,7 +28,9 @@ import androidx.navigation.ui.NavigationUI;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.FileDescriptor;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -40,13 +43,17 @@ import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.GoogleAuthProvider;
 import com.google.firebase.auth.UserInfo;
 
+import database.AsyncDatabase;
 import database.DatabaseManager;
+import database.DbMetrics;
 import database.SQLiteHelper;
 import database.User;
+import database.UserHeader;
 import edu.pmdm.delgado_victorimdbapp.databinding.ActivityMainBinding;
 import database.FavoritesSync;
 import database.UsersSync;
 import utils.AppLifecycleManager;
+import utils.ProfileImageStore;
 
 /**
  * MainActivity que maneja el menú principal y la navegación en la aplicación.
@@ -101,10 +108,11 @@ public class MainActivity extends AppCompatActivity {
             UsersSync usersSync = new UsersSync(this, userId);
 
             // 🔹 Sincronizar los datos del usuario desde Firestore a SQLite antes de mostrar la UI
+            // (el callback se ejecuta en el hilo de la base de datos)
             usersSync.syncFromCloudToLocal(() -> {
-                // Verificar si ya existe el usuario en la base de datos local
+                // Verificar si ya existe el usuario en la base de datos local (solo los datos de la cabecera)
                 SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-                User localUser = dbHelper.getUser(userId);
+                UserHeader localUser = dbHelper.getUserHeader(userId);
 
                 if (localUser == null) {
                     // Si no hay datos, crear usuario localmente con los datos obtenidos del proveedor
@@ -194,14 +202,14 @@ public class MainActivity extends AppCompatActivity {
 
                 // Actualizar la UI en el hilo principal
                 runOnUiThread(() -> {
-                    displayUserData(newUser, userNameTextView, userEmailTextView, userImageView);
+                    displayUserData(headerOf(newUser), userNameTextView, userEmailTextView, userImageView);
                 });
             } else {
                 // Si faltan datos, registrar un error y NO sincronizar con la nube
                 Log.e("MainActivity", "Datos insuficientes para sincronizar. Se requiere user_id, name y email completos.");
                 runOnUiThread(() -> {
                     // Incluso si no se sincroniza, se actualiza la UI con lo que se tiene localmente.
-                    displayUserData(newUser, userNameTextView, userEmailTextView, userImageView);
+                    displayUserData(headerOf(newUser), userNameTextView, userEmailTextView, userImageView);
                 });
             }
         } else {
@@ -209,16 +217,23 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Obtiene los datos de la cabecera del menú a partir de un usuario completo.
+     */
+    private static UserHeader headerOf(User user) {
+        return new UserHeader(user.getUserId(), user.getName(), user.getEmail(), user.getImage());
+    }
+
     /**
      * Muestra los datos del usuario en la UI.
      * Se utiliza después de crear o actualizar los datos del usuario en la base de datos local.
      *
-     * @param user El usuario con los datos a mostrar.
+     * @param user Los datos de cabecera del usuario a mostrar.
      * @param nameTextView El TextView para mostrar el nombre.
      * @param emailTextView El TextView para mostrar el correo electrónico.
      * @param imageView El ImageView para mostrar la imagen de perfil.
      */
-    private void displayUserData(User user, TextView nameTextView, TextView emailTextView, ImageView imageView) {
+    private void displayUserData(UserHeader user, TextView nameTextView, TextView emailTextView, ImageView imageView) {
         // Primero, mostrar los datos existentes en la base de datos local
         nameTextView.setText(user.getName());
         emailTextView.setText(user.getEmail());
@@ -227,8 +242,10 @@ public class MainActivity extends AppCompatActivity {
         if (user.getImage() != null && !user.getImage().isEmpty()) {
             if (user.getImage().startsWith("http")) {
                 loadImageFromUrl(imageView, user.getImage());
+            } else if (ProfileImageStore.isLocalReference(user.getImage())) {
+                loadStoredThumbnail(imageView, user.getUserId()); // Miniatura guardada en disco
             } else {
-                decodeBase64Image(imageView, user.getImage()); // Usar Base64 si es necesario
+                imageView.setImageResource(R.mipmap.ic_launcher_round); // Imagen por defecto
             }
         } else {
             imageView.setImageResource(R.mipmap.ic_launcher_round); // Imagen por defecto
@@ -261,9 +278,8 @@ public class MainActivity extends AppCompatActivity {
                 user.setEmail((email != null && !email.isEmpty()) ? email : "Correo no disponible");
                 user.setImage(imageUrl);
 
-                // Actualizar los datos en la base de datos local
-                SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-                dbHelper.addUser(user);
+                // Actualizar los datos en la base de datos local (en el hilo de la base de datos)
+                AsyncDatabase.getInstance(this).updateUserHeader(user);
 
                 // Refrescar la UI con los nuevos datos
                 nameTextView.setText(user.getName());
@@ -280,9 +296,8 @@ public class MainActivity extends AppCompatActivity {
                 user.setName(name != null ? name : "Usuario de Facebook");
                 user.setEmail("Conectado con Facebook");
 
-                // Actualizar los datos en la base de datos local
-                SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-                dbHelper.addUser(user);
+                // Actualizar los datos en la base de datos local (en el hilo de la base de datos)
+                AsyncDatabase.getInstance(this).updateUserHeader(user);
 
                 // Refrescar la UI con los nuevos datos
                 nameTextView.setText(user.getName());
@@ -301,9 +316,8 @@ public class MainActivity extends AppCompatActivity {
                 user.setName((name != null && !name.isEmpty()) ? name : "Nombre no disponible");
                 user.setEmail((email != null && !email.isEmpty()) ? email : "Correo no disponible");
 
-                // Actualizar los datos en la base de datos local
-                SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-                dbHelper.addUser(user);
+                // Actualizar los datos en la base de datos local (en el hilo de la base de datos)
+                AsyncDatabase.getInstance(this).updateUserHeader(user);
 
                 // Refrescar la UI con los nuevos datos
                 nameTextView.setText(user.getName());
@@ -318,17 +332,20 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Decodifica una imagen en Base64 y la muestra en un ImageView.
+     * Carga en segundo plano la miniatura de la imagen de perfil guardada en disco y la
+     * muestra en un ImageView.
      */
-    private void decodeBase64Image(ImageView imageView, String base64Image) {
-        try {
-            byte[] decodedBytes = Base64.decode(base64Image, Base64.DEFAULT);
-            Bitmap bitmap = BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
-            imageView.setImageBitmap(bitmap);
-        } catch (IllegalArgumentException e) {
-            Log.e("MainActivity", "Error decodificando imagen Base64", e);
-            imageView.setImageResource(R.mipmap.ic_launcher_round); // Imagen por defecto
-        }
+    private void loadStoredThumbnail(ImageView imageView, String userId) {
+        executorService.execute(() -> {
+            Bitmap bitmap = ProfileImageStore.getInstance(this).loadThumbnail(userId);
+            runOnUiThread(() -> {
+                if (bitmap != null) {
+                    imageView.setImageBitmap(bitmap);
+                } else {
+                    imageView.setImageResource(R.mipmap.ic_launcher_round); // Imagen por defecto
+                }
+            });
+        });
     }
 
     /**
@@ -427,13 +444,17 @@ public class MainActivity extends AppCompatActivity {
             String userId = firebaseUser.getUid();
             String currentTime = getCurrentTime();
             SQLiteHelper dbHelper = DatabaseManager.getInstance(this);
-            User user = dbHelper.getUser(userId);
 
-            if (user != null) {
-                user.setLogoutTime(currentTime);
-                dbHelper.addUser(user);
+            // 🔹 Actualizar el logout_time en el hilo de la base de datos
+            AsyncDatabase.getInstance(this).query(() -> {
+                if (!dbHelper.updateLogoutTime(userId, currentTime)) return false;
                 Log.d("MainActivity", "Usuario logout actualizado en la base local: " + userId);
-
+                return true;
+            }).observe(this, updated -> {
+                if (!Boolean.TRUE.equals(updated)) {
+                    resetLoginStateAndSignOut();
+                    return;
+                }
                 // 🔹 Sincronizar en la nube antes de proceder con el logout
                 new UsersSync(this, userId)
                         .syncActivityLog()
@@ -445,8 +466,8 @@ public class MainActivity extends AppCompatActivity {
                             // 🔹 Incluso si falla la sincronización, se procede al logout
                             resetLoginStateAndSignOut();
                         });
-                return;
-            }
+            });
+            return;
         }
         resetLoginStateAndSignOut();
     }
@@ -514,6 +535,24 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Con el argumento "db" muestra las métricas de la base de datos en lugar del estado de
+     * la actividad ("db reset" las pone a cero):
+     * adb shell dumpsys activity edu.pmdm.delgado_victorimdbapp/.MainActivity db
+     */
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer, @Nullable String[] args) {
+        if (args != null && args.length > 0 && "db".equals(args[0])) {
+            DbMetrics metrics = SQLiteHelper.getInstance(this).getMetrics();
+            metrics.dump(writer);
+            if (args.length > 1 && "reset".equals(args[1])) {
+                metrics.reset();
+            }
+            return;
+        }
+        super.dump(prefix, fd, writer, args);
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         // Manejar la navegación hacia arriba
@@ -5,8 +5,6 @@ import android.annotation.SuppressLint;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.ContactsContract;
@@ -24,15 +22,9 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 
-import org.json.JSONObject;
-
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
-import api.IMDBApiService;
-import api.TMDBApiService;
+import database.MovieDetails;
 
 /**
  * Clase para mostrar los detalles de una película y permitir el envío de su información por SMS.
@@ -40,8 +32,6 @@ import api.TMDBApiService;
 public class MovieDetailsActivity extends AppCompatActivity {
 
     private static final int SOLICITUD_PERMISOS_SMS_CONTACTOS = 1; // Código de solicitud de permisos
-    private IMDBApiService imdbApiService; // Servicio para obtener datos de IMDb
-    private TMDBApiService tmdbApiService; // Servicio para obtener datos de TMDB
     private int contadorRechazosPermiso = 0; // Contador para rastrear rechazos de permisos
 
     private String movieTitle = "Título Desconocido"; // Título de la película
@@ -64,20 +54,19 @@ public class MovieDetailsActivity extends AppCompatActivity {
         TextView textViewRating = findViewById(R.id.textViewRating);
         Button buttonSendSMS = findViewById(R.id.buttonSendSMS);
 
-        // Inicializar servicios de API
-        imdbApiService = new IMDBApiService();
-        tmdbApiService = new TMDBApiService();
-
         // Obtener datos enviados desde otra actividad
         String movieId = getIntent().getStringExtra("MOVIE_ID");
         String imageUrl = getIntent().getStringExtra("IMAGE_URL");
         movieTitle = getIntent().getStringExtra("TITLE");
 
-        // Determinar si se utiliza IMDb o TMDB según el formato del ID de la película
-        if (movieId != null && movieId.startsWith("tt")) {
-            fetchIMDBData(movieId, imageUrl, imageViewMovie, textViewTitle, textViewDescription, textViewReleaseDate, textViewRating, buttonSendSMS);
-        } else {
-            fetchTMDBData(movieId, imageViewMovie, textViewTitle, textViewDescription, textViewReleaseDate, textViewRating, buttonSendSMS);
+        // Cargar los detalles (desde disco si están guardados, si no desde IMDb o TMDB).
+        // Tras un giro el ViewModel ya los tiene y no se repite ninguna descarga.
+        MovieDetailsViewModel viewModel = new ViewModelProvider(this).get(MovieDetailsViewModel.class);
+        viewModel.getDetails().observe(this, details ->
+                showMovieDetails(details, textViewTitle, textViewDescription, textViewReleaseDate, textViewRating, buttonSendSMS));
+        viewModel.getPoster().observe(this, imageViewMovie::setImageBitmap);
+        if (movieId != null) {
+            viewModel.loadIfNeeded(movieId, imageUrl);
         }
     }
 
@@ -148,186 +137,20 @@ public class MovieDetailsActivity extends AppCompatActivity {
     }
 
     /**
-     * Descarga una imagen desde una URL y devuelve un Bitmap, escalando dinámicamente
-     * su tamaño para no usar demasiada memoria, pero manteniendo mejor calidad.
-     *
-     * @param imageUrl URL de la imagen a descargar.
-     * @return El Bitmap decodificado o null si ocurrió un error.
-     */
-    private Bitmap getBitmapFromURL(String imageUrl) {
-        if (imageUrl == null || imageUrl.isEmpty()) {
-            Log.e("MovieDetailsActivity", "URL de imagen vacía o nula");
-            return null;
-        }
-
-        InputStream inputStream = null;
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-
-            // (inJustDecodeBounds=true para solo obtener width/height)
-            inputStream = connection.getInputStream();
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(inputStream, null, options);
-
-            // Cerrar el InputStream para reabrirlo en el segundo pase
-            inputStream.close();
-            connection.disconnect();
-
-            // Por ejemplo, queremos que la imagen a decodificar no exceda 1024x1024
-            // antes de un escalado final.
-            int reqWidth = 1024;
-            int reqHeight = 1024;
-            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-
-            // Volvemos a abrir la conexión/stream
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            inputStream = connection.getInputStream();
-
-            // Decodificar con inSampleSize calculado
-            options.inJustDecodeBounds = false;
-            // Usamos ARGB_8888 para conservar calidad (24 bits + alpha)
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-
-            Bitmap scaledBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-
-            // Cerrar
-            inputStream.close();
-            connection.disconnect();
-
-            return scaledBitmap;
-        } catch (Exception e) {
-            Log.e("MovieDetailsActivity", "Error al descargar/decodificar la imagen: " + imageUrl, e);
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (Exception ignored) {}
-            }
-            return null;
-        }
-    }
-
-    /**
-     * Consume la API de IMDb para obtener detalles de la película.
+     * Actualiza la interfaz con los detalles de la película.
      */
     @SuppressLint("SetTextI18n")
-    private void fetchIMDBData(String movieId, String imageUrl, ImageView imageViewMovie, TextView textViewTitle,
-                               TextView textViewDescription, TextView textViewReleaseDate, TextView textViewRating,
-                               Button buttonSendSMS) {
-        new Thread(() -> {
-            try {
-                // Realizar la solicitud a la API de IMDb
-                String response = imdbApiService.getTitleDetails(movieId);
-                JSONObject jsonObject = new JSONObject(response);
-                JSONObject data = jsonObject.getJSONObject("data").getJSONObject("title");
-
-                // Extraer datos relevantes
-                String descripcion = data.getJSONObject("plot").getJSONObject("plotText").getString("plainText");
-                String fechaEstreno = data.getJSONObject("releaseDate").getInt("year") + "-" +
-                        data.getJSONObject("releaseDate").getInt("month") + "-" +
-                        data.getJSONObject("releaseDate").getInt("day");
-                calificacionPelicula = data.getJSONObject("ratingsSummary").getDouble("aggregateRating");
-
-                // Actualizar interfaz de usuario en el hilo principal
-                runOnUiThread(() -> {
-                    textViewTitle.setText(movieTitle);
-                    textViewDescription.setText(descripcion);
-                    textViewReleaseDate.setText("Release Date: " + fechaEstreno);
-                    textViewRating.setText("Rating: " + calificacionPelicula);
-                    setupSendSMSButton(buttonSendSMS);
-                });
-            } catch (Exception e) {
-                Log.e("MovieDetailsActivity", "Error al obtener los detalles de la película", e);
-            }
-        }).start();
-
-        // Descargar y mostrar la imagen
-        new Thread(() -> {
-            Bitmap bitmap = getBitmapFromURL(imageUrl);
-            if (bitmap != null) {
-                runOnUiThread(() -> imageViewMovie.setImageBitmap(bitmap));
-            }
-        }).start();
-    }
-
-    /**
-     * Consume la API de TMDB para obtener detalles de la película.
-     */
-    @SuppressLint("SetTextI18n")
-    private void fetchTMDBData(String movieId, ImageView imageViewMovie, TextView textViewTitle, TextView textViewDescription,
-                               TextView textViewReleaseDate, TextView textViewRating, Button buttonSendSMS) {
-        new Thread(() -> {
-            try {
-                // Realizar la solicitud a la API de TMDB
-                String response = tmdbApiService.getMovieDetailsById(movieId);
-                JSONObject jsonObject = new JSONObject(response);
-
-                // Extraer datos relevantes
-                movieTitle = jsonObject.getString("title");
-                String descripcion = jsonObject.getString("overview");
-                String fechaEstreno = jsonObject.getString("release_date");
-                calificacionPelicula = jsonObject.getDouble("vote_average");
-                String posterPath = "https://image.tmdb.org/t/p/w500" + jsonObject.getString("poster_path");
-
-                // Actualizar interfaz de usuario en el hilo principal
-                runOnUiThread(() -> {
-                    textViewTitle.setText(movieTitle);
-                    textViewDescription.setText(descripcion);
-                    textViewReleaseDate.setText("Release Date: " + fechaEstreno);
-                    textViewRating.setText("Rating: " + calificacionPelicula);
-
-                    // Descargar y mostrar la imagen
-                    new Thread(() -> {
-                        Bitmap bitmap = getBitmapFromURL(posterPath);
-                        if (bitmap != null) {
-                            runOnUiThread(() -> imageViewMovie.setImageBitmap(bitmap));
-                        }
-                    }).start();
-
-                    setupSendSMSButton(buttonSendSMS);
-                });
-            } catch (Exception e) {
-                Log.e("MovieDetailsActivity", "Error al obtener los detalles de la película desde TMDB", e);
-            }
-        }).start();
-    }
-
-    /**
-     * Calcula un inSampleSize adecuado para decodificar la imagen a un tamaño manejable,
-     * basándose en las dimensiones deseadas (reqWidth, reqHeight) y las dimensiones
-     * originales (options.outWidth, options.outHeight).
-     *
-     * @param options   Opciones del BitmapFactory con outWidth y outHeight ya cargados.
-     * @param reqWidth  Ancho máximo deseado.
-     * @param reqHeight Alto máximo deseado.
-     * @return Un valor de inSampleSize (1,2,4,...) para decodificar la imagen.
-     */
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        // Dimensiones originales de la imagen
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        // Si la imagen es más grande que el tamaño requerido, calculamos la reducción necesaria
-        if (height > reqHeight || width > reqWidth) {
-            // Mitades
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-
-            // Aumentar inSampleSize mientras la mitad de la altura y anchura sigan
-            // siendo mayores que reqWidth/reqHeight
-            while ((halfHeight / inSampleSize) >= reqHeight
-                    && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
-            }
+    private void showMovieDetails(MovieDetails details, TextView textViewTitle, TextView textViewDescription,
+                                  TextView textViewReleaseDate, TextView textViewRating, Button buttonSendSMS) {
+        if (details.getTitle() != null) {
+            movieTitle = details.getTitle();
         }
-
-        return inSampleSize;
+        calificacionPelicula = details.getRating();
+        textViewTitle.setText(movieTitle);
+        textViewDescription.setText(details.getOverview());
+        textViewReleaseDate.setText("Release Date: " + details.getReleaseDate());
+        textViewRating.setText("Rating: " + calificacionPelicula);
+        setupSendSMSButton(buttonSendSMS);
     }
 
     /**
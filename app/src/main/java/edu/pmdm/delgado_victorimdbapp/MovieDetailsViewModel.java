@@ -0,0 +1,105 @@
+package edu.pmdm.delgado_victorimdbapp;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import api.MovieDetailsRepository;
+import database.MovieDetails;
+import utils.PosterCache;
+
+/**
+ * ViewModel de los detalles de una película. Conserva los detalles y el póster ya
+ * cargados, de modo que al girar el dispositivo no se repite ninguna descarga.
+ */
+public class MovieDetailsViewModel extends AndroidViewModel {
+
+    private static final String TAG = "MovieDetailsViewModel";
+
+    private final MutableLiveData<MovieDetails> details = new MutableLiveData<>();
+    private final MutableLiveData<Bitmap> poster = new MutableLiveData<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Cargas en curso
+    private final MovieDetailsRepository detailsRepository; // Detalles de películas (disco + IMDb/TMDB)
+    private boolean started = false;
+
+    public MovieDetailsViewModel(@NonNull Application application) {
+        super(application);
+        detailsRepository = new MovieDetailsRepository(application);
+    }
+
+    /**
+     * Detalles de la película (primero los guardados en disco y después los actualizados).
+     */
+    public LiveData<MovieDetails> getDetails() {
+        return details;
+    }
+
+    /**
+     * Póster de la película ya decodificado.
+     */
+    public LiveData<Bitmap> getPoster() {
+        return poster;
+    }
+
+    /**
+     * Carga los detalles y el póster si aún no se ha hecho.
+     * Si hay detalles guardados en disco se publican de inmediato; si han caducado o no
+     * existen, se descargan de IMDb o TMDB (según el formato del ID) y se vuelven a publicar.
+     *
+     * @param movieId  ID de la película.
+     * @param imageUrl URL del póster recibida en el Intent (puede ser null).
+     */
+    public void loadIfNeeded(String movieId, String imageUrl) {
+        if (started) return;
+        started = true;
+        executor.execute(() -> {
+            MovieDetails cached = detailsRepository.getCachedDetails(movieId);
+            if (cached != null) {
+                details.postValue(cached);
+            }
+            // Descargar el póster (el del Intent o, si no hay, el de los detalles guardados)
+            String posterUrl = imageUrl != null ? imageUrl : (cached != null ? cached.getPoster() : null);
+            if (posterUrl != null) {
+                loadPoster(posterUrl);
+            }
+
+            if (detailsRepository.isFresh(cached)) {
+                return;
+            }
+            try {
+                MovieDetails refreshed = detailsRepository.refreshMovieDetails(movieId);
+                details.postValue(refreshed);
+                if (posterUrl == null && refreshed.getPoster() != null) {
+                    loadPoster(refreshed.getPoster());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error al obtener los detalles de la película", e);
+            }
+        });
+    }
+
+    /**
+     * Obtiene el póster desde la caché en disco (descargándolo solo si hace falta),
+     * escalado para no exceder 1024x1024.
+     */
+    private void loadPoster(String posterUrl) {
+        Bitmap bitmap = PosterCache.getInstance(getApplication()).loadBitmap(posterUrl, 1024, 1024);
+        if (bitmap != null) {
+            poster.postValue(bitmap);
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        executor.shutdownNow();
+    }
+}
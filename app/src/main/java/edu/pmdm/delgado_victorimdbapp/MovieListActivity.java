@@ -1,31 +1,23 @@
 package edu.pmdm.delgado_victorimdbapp;
 
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import database.FavoritesSync;
+import database.AsyncDatabase;
+import database.Movie;
 import database.SQLiteHelper;
+import edu.pmdm.delgado_victorimdbapp.ui.MoviePosterAdapter;
 
 /**
  * Actividad para mostrar una lista de películas en un RecyclerView con soporte para
@@ -34,11 +26,16 @@ import database.SQLiteHelper;
 public class MovieListActivity extends AppCompatActivity {
 
     private static final String TAG = "MovieListActivity";
+    private static final int LOAD_MORE_THRESHOLD = 6; // Casillas restantes antes de pedir la siguiente página
+
+    // Extras del Intent: handle del resultado en SearchResultStore y parámetros de la búsqueda
+    public static final String EXTRA_RESULT_HANDLE = "RESULT_HANDLE";
+    public static final String EXTRA_GENRE_ID = "GENRE_ID";
+    public static final String EXTRA_YEAR = "YEAR";
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
     private SQLiteHelper dbHelper;  // Helper para la base de datos local
     private String currentUserId;   // userId del usuario autenticado
-    private FavoritesSync favoritesSync; // Instancia para sincronizar favoritos en la nube
+    private MovieListViewModel viewModel; // Resultados y marcas de favorito (sobreviven a los giros)
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,50 +48,50 @@ public class MovieListActivity extends AppCompatActivity {
         // Inicializar SQLiteHelper y obtener el userId
         initializeDatabaseHelper();
 
-        // Si el usuario está autenticado, inicializa la sincronización en la nube
+        // Los cambios en los favoritos se replican en la nube desde AppLifecycleManager
         FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
         if (firebaseUser != null) {
             currentUserId = firebaseUser.getUid();
-            favoritesSync = new FavoritesSync(this, currentUserId);
-            // Registra el listener para que, al agregar o eliminar un favorito, se sincronice la nube
-            SQLiteHelper.setOnFavoritesChangedListener(new SQLiteHelper.OnFavoritesChangedListener() {
-                @Override
-                public void onFavoriteAdded(database.Movie movie) {
-                    favoritesSync.addMovieToCloud(movie);
-                    Log.d(TAG, "Synced addition in cloud: " + movie.getMovie_id());
-                }
-
-                @Override
-                public void onFavoriteRemoved(String movieId) {
-                    favoritesSync.removeMovieFromCloud(movieId);
-                    Log.d(TAG, "Synced removal in cloud: " + movieId);
-                }
-            });
         } else {
             Log.e(TAG, "Usuario no autenticado.");
         }
 
-        // Obtener datos de películas desde el Intent
-        ArrayList<String> posterUrls = getIntent().getStringArrayListExtra("POSTER_URLS");
-        ArrayList<String> titles = getIntent().getStringArrayListExtra("TITLES");
-        ArrayList<String> tconsts = getIntent().getStringArrayListExtra("TCONSTS");
-
-        if (posterUrls == null || posterUrls.isEmpty() ||
-                titles == null || titles.isEmpty() ||
-                tconsts == null || tconsts.isEmpty()) {
-            Toast.makeText(this, "No se encontraron películas", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
         // Configurar el adaptador del RecyclerView
-        recyclerView.setAdapter(new MovieAdapter(posterUrls, titles, tconsts));
+        MoviePosterAdapter adapter = new MoviePosterAdapter(ViewGroup.LayoutParams.MATCH_PARENT, 750, 16, 16, this::addToFavorites);
+        // Las casillas enlazadas son las visibles: se descargan sus detalles por adelantado
+        adapter.setPrefetchOnBind(true);
+        recyclerView.setAdapter(adapter);
+
+        // Los resultados se leen del almacén compartido a partir del handle recibido
+        viewModel = new ViewModelProvider(this).get(MovieListViewModel.class);
+        viewModel.getMovies().observe(this, adapter::submitList);
+        // Marcas de favorito de todas las casillas, obtenidas con una sola consulta por página
+        viewModel.getFavoriteIds().observe(this, adapter::setFavoriteIds);
+        viewModel.getLoadFailed().observe(this, failed -> {
+            if (failed == null || !failed) return;
+            viewModel.onLoadFailedShown();
+            Toast.makeText(this, "No se encontraron películas", Toast.LENGTH_SHORT).show();
+        });
+        viewModel.loadIfNeeded(getIntent().getStringExtra(EXTRA_RESULT_HANDLE),
+                getIntent().getIntExtra(EXTRA_GENRE_ID, 0),
+                getIntent().getIntExtra(EXTRA_YEAR, 0));
+
+        // Al acercarse al final de la lista se pide la siguiente página de resultados
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+                    viewModel.loadNextPage();
+                }
+            }
+        });
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         dbHelper = null;
-        executorService.shutdown();
     }
 
     /**
@@ -126,167 +123,24 @@ public class MovieListActivity extends AppCompatActivity {
     }
 
     /**
-     * Adaptador para mostrar la lista de películas en el RecyclerView.
-     */
-    private class MovieAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
-
-        private final ArrayList<String> posterUrls; // URLs de los pósters
-        private final ArrayList<String> titles;     // Títulos de las películas
-        private final ArrayList<String> tconsts;      // IDs de las películas (por ejemplo, "tt1234567")
-
-        public MovieAdapter(ArrayList<String> posterUrls, ArrayList<String> titles, ArrayList<String> tconsts) {
-            this.posterUrls = posterUrls;
-            this.titles = titles;
-            this.tconsts = tconsts;
-        }
-
-        @NonNull
-        @Override
-        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            // Crear un ImageView para mostrar cada póster
-            ImageView imageView = new ImageView(parent.getContext());
-            RecyclerView.LayoutParams params = new RecyclerView.LayoutParams(
-                    ViewGroup.LayoutParams.MATCH_PARENT,
-                    750 // Altura fija
-            );
-            params.setMargins(16, 16, 16, 16);
-            imageView.setLayoutParams(params);
-            imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-            return new RecyclerView.ViewHolder(imageView) {};
-        }
-
-        @Override
-        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-            ImageView imageView = (ImageView) holder.itemView;
-            String imageUrl = posterUrls.get(position);
-            String title = titles.get(position);
-            String tconst = tconsts.get(position);
-
-            // Descargar la imagen en segundo plano y mostrarla
-            executorService.execute(() -> {
-                Bitmap bitmap = getBitmapFromURL(imageUrl);
-                if (bitmap != null) {
-                    runOnUiThread(() -> imageView.setImageBitmap(bitmap));
-                } else {
-                    runOnUiThread(() -> imageView.setImageResource(android.R.drawable.stat_notify_error));
-                }
-            });
-
-            // Configurar listeners para clic y long click
-            setupImageViewListeners(imageView, tconst, imageUrl, title);
-        }
-
-        @Override
-        public int getItemCount() {
-            return posterUrls.size();
-        }
-
-        /**
-         * Configura los eventos de clic y long click para cada imagen.
-         */
-        private void setupImageViewListeners(ImageView imageView, String tconst, String imageUrl, String title) {
-            // Al mantener presionado, se agrega a favoritos
-            imageView.setOnLongClickListener(v -> {
-                if (dbHelper != null && currentUserId != null) {
-                    boolean isFav = dbHelper.isMovieFavorite(currentUserId, tconst);
-                    if (isFav) {
-                        Toast.makeText(imageView.getContext(),
-                                title + " ya está en favoritos",
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        dbHelper.addMovieToFavorites(currentUserId, tconst, imageUrl, title);
-                        Toast.makeText(imageView.getContext(),
-                                "Agregada a favoritos: " + title,
-                                Toast.LENGTH_SHORT).show();
-                    }
-                } else {
-                    Log.e(TAG, "SQLiteHelper no inicializado o userId es null.");
-                }
-                return true;
-            });
-
-            // Al hacer clic, se abren los detalles de la película
-            imageView.setOnClickListener(v -> {
-                Intent intent = new Intent(MovieListActivity.this, MovieDetailsActivity.class);
-                intent.putExtra("MOVIE_ID", tconst);
-                intent.putExtra("IMAGE_URL", imageUrl);
-                intent.putExtra("TITLE", title);
-                startActivity(intent);
-            });
-        }
-    }
-
-    /**
-     * Descarga una imagen desde una URL y la decodifica en un Bitmap, escalándola para optimizar memoria.
+     * Acción de la pulsación larga: agrega la película a favoritos.
      *
-     * @param imageUrl URL de la imagen.
-     * @return El Bitmap decodificado o null en caso de error.
+     * @param movie Película pulsada.
      */
-    private Bitmap getBitmapFromURL(String imageUrl) {
-        if (imageUrl == null || imageUrl.isEmpty()) {
-            Log.e(TAG, "URL de imagen vacía o nula");
-            return null;
-        }
-        InputStream inputStream = null;
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-
-            // Primer pase: obtener dimensiones
-            inputStream = connection.getInputStream();
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            connection.disconnect();
-
-            int reqWidth = 1024;
-            int reqHeight = 1024;
-            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-
-            // Segundo pase: decodificar imagen completa
-            connection = (HttpURLConnection) new URL(imageUrl).openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            inputStream = connection.getInputStream();
-            options.inJustDecodeBounds = false;
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-            Bitmap scaledBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            connection.disconnect();
-            return scaledBitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Error al descargar/decodificar la imagen: " + imageUrl, e);
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (Exception ignored) {}
-            }
-            return null;
-        }
-    }
-
-    /**
-     * Calcula un valor adecuado de inSampleSize para escalar la imagen.
-     *
-     * @param options  Opciones con las dimensiones originales de la imagen.
-     * @param reqWidth Ancho deseado.
-     * @param reqHeight Alto deseado.
-     * @return El valor de inSampleSize calculado.
-     */
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-        if (height > reqHeight || width > reqWidth) {
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
-            }
+    private void addToFavorites(Movie movie) {
+        if (dbHelper != null && currentUserId != null) {
+            // La comprobación y la inserción se hacen en el hilo de la base de datos
+            AsyncDatabase.getInstance(this).addMovieToFavorites(currentUserId, movie)
+                    .observe(this, added -> {
+                        if (Boolean.TRUE.equals(added)) {
+                            viewModel.markFavorite(movie.getMovie_id());
+                            Toast.makeText(this, "Agregada a favoritos: " + movie.getTitle(), Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(this, movie.getTitle() + " ya está en favoritos", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+        } else {
+            Log.e(TAG, "SQLiteHelper no inicializado o userId es null.");
         }
-        return inSampleSize;
     }
-}
\ No newline at end of file
+}
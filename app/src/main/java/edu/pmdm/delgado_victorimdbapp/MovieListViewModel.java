@@ -0,0 +1,180 @@
+package edu.pmdm.delgado_victorimdbapp;
+
+import android.app.Application;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import api.SearchResultStore;
+import database.AsyncDatabase;
+import database.InvalidationTracker;
+import database.Movie;
+import database.SQLiteHelper;
+
+/**
+ * ViewModel de la lista de resultados de búsqueda. Lee los resultados del almacén
+ * compartido {@link SearchResultStore} y pide las páginas siguientes a medida que
+ * el usuario se desplaza. Al girar el dispositivo no se repite ninguna descarga.
+ */
+public class MovieListViewModel extends AndroidViewModel {
+
+    private static final String TAG = "MovieListViewModel";
+
+    private final MutableLiveData<List<Movie>> movies = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> loadFailed = new MutableLiveData<>();
+    private final MutableLiveData<Set<String>> favoriteIds = new MutableLiveData<>();
+    // Vuelve a consultar las marcas de favorito cuando cambian los favoritos del usuario
+    // (el tracker lo guarda con una referencia débil, así que se conserva aquí)
+    private final InvalidationTracker.Observer favoritesObserver = (table, userId) -> {
+        List<Movie> current = movies.getValue();
+        if (current != null) postFavoriteIds(current);
+    };
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Cargas en curso
+    private final SearchResultStore store = SearchResultStore.getInstance();
+    private SearchResultStore.ResultSet resultSet;
+    private volatile boolean loadingPage = false;
+
+    public MovieListViewModel(@NonNull Application application) {
+        super(application);
+        FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (firebaseUser != null) {
+            SQLiteHelper.getInstance(application).getInvalidationTracker().addObserver(
+                    InvalidationTracker.TABLE_FAVORITES, firebaseUser.getUid(), favoritesObserver);
+        }
+    }
+
+    /**
+     * Películas a mostrar.
+     */
+    public LiveData<List<Movie>> getMovies() {
+        return movies;
+    }
+
+    /**
+     * Indica que no se pudo obtener ningún resultado, pendiente de mostrar (null cuando ya
+     * se ha mostrado).
+     */
+    public LiveData<Boolean> getLoadFailed() {
+        return loadFailed;
+    }
+
+    /**
+     * Marca el fallo de carga como mostrado, para no repetirlo tras un giro.
+     */
+    public void onLoadFailedShown() {
+        loadFailed.setValue(null);
+    }
+
+    /**
+     * IDs de las películas cargadas que son favoritas del usuario actual.
+     */
+    public LiveData<Set<String>> getFavoriteIds() {
+        return favoriteIds;
+    }
+
+    /**
+     * Carga el conjunto de resultados si aún no se ha hecho. Si ya no está en memoria
+     * (el proceso se ha reiniciado) se repite la búsqueda con el género y el año.
+     *
+     * @param handle  Handle del conjunto de resultados.
+     * @param genreId ID del género buscado.
+     * @param year    Año buscado.
+     */
+    public void loadIfNeeded(String handle, int genreId, int year) {
+        if (resultSet != null || loadingPage) return;
+        SearchResultStore.ResultSet stored = handle != null ? store.getResultSet(handle) : null;
+        if (stored != null) {
+            resultSet = stored;
+            List<Movie> storedMovies = stored.getMovies();
+            movies.setValue(storedMovies);
+            executor.execute(() -> postFavoriteIds(storedMovies));
+            return;
+        }
+        loadingPage = true;
+        executor.execute(() -> {
+            try {
+                resultSet = store.loadFirstPage(genreId, year);
+                List<Movie> loaded = resultSet.getMovies();
+                movies.postValue(loaded);
+                postFavoriteIds(loaded);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al repetir la búsqueda", e);
+                loadFailed.postValue(true);
+            } finally {
+                loadingPage = false;
+            }
+        });
+    }
+
+    /**
+     * Carga la siguiente página de resultados (si existe y no se está cargando ya otra).
+     */
+    public void loadNextPage() {
+        SearchResultStore.ResultSet current = resultSet;
+        if (loadingPage || current == null || !current.hasMorePages()) return;
+        loadingPage = true;
+        executor.execute(() -> {
+            try {
+                if (store.loadNextPage(current)) {
+                    List<Movie> loaded = current.getMovies();
+                    movies.postValue(loaded);
+                    postFavoriteIds(loaded);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error al cargar la siguiente página de resultados", e);
+            } finally {
+                loadingPage = false;
+            }
+        });
+    }
+
+    /**
+     * Marca una película como favorita tras añadirla desde la propia lista.
+     *
+     * @param movieId ID de la película.
+     */
+    public void markFavorite(String movieId) {
+        Set<String> current = favoriteIds.getValue();
+        Set<String> updated = current != null ? new HashSet<>(current) : new HashSet<>();
+        if (updated.add(movieId)) {
+            favoriteIds.setValue(updated);
+        }
+    }
+
+    /**
+     * Consulta de una vez qué películas son favoritas del usuario actual y lo publica.
+     * La consulta se hace en el grupo de lectores de la base de datos.
+     */
+    private void postFavoriteIds(List<Movie> loaded) {
+        FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (firebaseUser == null) return;
+        String userId = firebaseUser.getUid();
+        List<String> ids = new ArrayList<>();
+        for (Movie movie : loaded) {
+            ids.add(movie.getMovie_id());
+        }
+        SQLiteHelper dbHelper = SQLiteHelper.getInstance(getApplication());
+        AsyncDatabase.getInstance(getApplication()).executeRead(() ->
+                favoriteIds.postValue(dbHelper.getFavoriteMovieIds(userId, ids)));
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        executor.shutdownNow();
+        SQLiteHelper.getInstance(getApplication()).getInvalidationTracker().removeObserver(favoritesObserver);
+    }
+}
@@ -0,0 +1,256 @@
+package edu.pmdm.delgado_victorimdbapp.ui;
+
+import android.annotation.SuppressLint;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import api.DetailsPrefetcher;
+import database.Movie;
+import edu.pmdm.delgado_victorimdbapp.MovieDetailsActivity;
+import edu.pmdm.delgado_victorimdbapp.R;
+import utils.PosterCache;
+
+/**
+ * Adaptador compartido por los grids de pósters (Top 10, Favoritos y resultados de búsqueda).
+ * <p>
+ * Las casillas se reutilizan al desplazarse y cada lista nueva se compara con la anterior
+ * en segundo plano ({@link AsyncListDiffer}), de modo que añadir o quitar una película solo
+ * actualiza su casilla. Los pósters se decodifican al tamaño de la casilla con un número
+ * limitado de hilos, por lo que la memoria depende de lo visible y no del tamaño de la lista.
+ * <p>
+ * Al pulsar una casilla se adelanta la descarga de sus detalles y al hacer clic se abren;
+ * la pulsación larga la decide cada pantalla.
+ */
+public class MoviePosterAdapter extends RecyclerView.Adapter<MoviePosterAdapter.PosterViewHolder> {
+
+    private static final int MAX_CONCURRENT_IMAGE_LOADS = 4; // Imágenes que se cargan a la vez como máximo
+    private static final Object PAYLOAD_FAVORITE = new Object(); // Cambio que solo afecta a la marca de favorito
+
+    // Hilos de carga de imágenes compartidos por todos los grids
+    private static final ExecutorService imageExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_IMAGE_LOADS);
+
+    /**
+     * Acción a realizar al mantener pulsada una película.
+     */
+    public interface OnMovieLongClickListener {
+        void onMovieLongClick(Movie movie);
+    }
+
+    private static final DiffUtil.ItemCallback<Movie> DIFF_CALLBACK = new DiffUtil.ItemCallback<Movie>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Movie oldItem, @NonNull Movie newItem) {
+            return oldItem.getMovie_id().equals(newItem.getMovie_id());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Movie oldItem, @NonNull Movie newItem) {
+            return equalsOrNull(oldItem.getPoster(), newItem.getPoster())
+                    && equalsOrNull(oldItem.getTitle(), newItem.getTitle());
+        }
+    };
+
+    private final AsyncListDiffer<Movie> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final int tileWidth;   // Ancho de la casilla en píxeles (o MATCH_PARENT)
+    private final int tileHeight;  // Alto de la casilla en píxeles
+    private final int decodeWidth; // Ancho al que se decodifican los pósters
+    private final int horizontalMargin;
+    private final int verticalMargin;
+    private final OnMovieLongClickListener longClickListener;
+    private boolean prefetchOnBind = false; // Descargar por adelantado los detalles de cada casilla enlazada
+    private Set<String> favoriteIds;        // IDs marcados como favoritos (null: no se muestran marcas)
+
+    /**
+     * Constructor de la clase.
+     *
+     * @param tileWidth         Ancho de cada casilla en píxeles, o MATCH_PARENT para ocupar la columna.
+     * @param tileHeight        Alto de cada casilla en píxeles.
+     * @param horizontalMargin  Margen izquierdo y derecho de la casilla.
+     * @param verticalMargin    Margen superior e inferior de la casilla.
+     * @param longClickListener Acción de la pulsación larga (añadir o eliminar de favoritos).
+     */
+    public MoviePosterAdapter(int tileWidth, int tileHeight, int horizontalMargin, int verticalMargin,
+                              OnMovieLongClickListener longClickListener) {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.decodeWidth = tileWidth > 0 ? tileWidth : tileHeight * 2 / 3; // Proporción de un póster
+        this.horizontalMargin = horizontalMargin;
+        this.verticalMargin = verticalMargin;
+        this.longClickListener = longClickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Indica si al enlazar cada casilla (es decir, al hacerse visible) se descargan por
+     * adelantado los detalles de su película.
+     *
+     * @param prefetchOnBind True para descargarlos.
+     */
+    public void setPrefetchOnBind(boolean prefetchOnBind) {
+        this.prefetchOnBind = prefetchOnBind;
+    }
+
+    /**
+     * Marca como favoritas las casillas de las películas indicadas (el resto se desmarcan).
+     * Solo se actualiza la marca de cada casilla, sin volver a cargar los pósters.
+     *
+     * @param favoriteIds IDs de las películas favoritas (obtenidos de una sola consulta).
+     */
+    public void setFavoriteIds(Set<String> favoriteIds) {
+        this.favoriteIds = new HashSet<>(favoriteIds);
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_FAVORITE);
+    }
+
+    /**
+     * Sustituye la lista mostrada. Las diferencias se calculan en segundo plano y solo
+     * se actualizan las casillas que han cambiado.
+     *
+     * @param movies Nueva lista de películas (no debe modificarse después).
+     */
+    public void submitList(List<Movie> movies) {
+        differ.submitList(movies);
+    }
+
+    /**
+     * Lista mostrada actualmente (inmutable).
+     */
+    public List<Movie> getCurrentList() {
+        return differ.getCurrentList();
+    }
+
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return Movie.stableIdOf(differ.getCurrentList().get(position).getMovie_id());
+    }
+
+    @NonNull
+    @Override
+    public PosterViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_movie_poster, parent, false);
+        ImageView imageView = itemView.findViewById(R.id.posterImageView);
+        ImageView favoriteBadge = itemView.findViewById(R.id.favoriteBadge);
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) imageView.getLayoutParams();
+        params.width = tileWidth;
+        params.height = tileHeight;
+        params.setMargins(horizontalMargin, verticalMargin, horizontalMargin, verticalMargin);
+        imageView.setLayoutParams(params);
+        return new PosterViewHolder(itemView, imageView, favoriteBadge);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PosterViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_FAVORITE)) {
+            bindFavoriteBadge(holder, differ.getCurrentList().get(position)); // Solo cambia la marca
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public void onBindViewHolder(@NonNull PosterViewHolder holder, int position) {
+        Movie movie = differ.getCurrentList().get(position);
+        bindFavoriteBadge(holder, movie);
+        ImageView imageView = holder.posterImageView;
+        String imageUrl = movie.getPoster();
+
+        imageView.setImageDrawable(null);
+        imageView.setTag(imageUrl);
+        if (imageUrl != null && !imageUrl.isEmpty()) {
+            // Carga la imagen (desde la caché en disco si ya se descargó) con un número limitado de hilos
+            imageExecutor.execute(() -> {
+                // Si la casilla se ha reciclado antes de empezar, no se carga nada
+                if (!imageUrl.equals(imageView.getTag())) return;
+                Bitmap bitmap = PosterCache.getInstance(imageView.getContext())
+                        .loadBitmap(imageUrl, decodeWidth, tileHeight);
+                if (bitmap != null) {
+                    imageView.post(() -> {
+                        // Solo si la casilla no se ha vuelto a enlazar con otra película
+                        if (imageUrl.equals(imageView.getTag())) imageView.setImageBitmap(bitmap);
+                    });
+                }
+            });
+        }
+
+        if (prefetchOnBind) {
+            DetailsPrefetcher.getInstance(imageView.getContext()).prefetch(movie.getMovie_id(), imageUrl);
+        }
+
+        // La pulsación larga la decide cada pantalla (añadir o eliminar de favoritos)
+        imageView.setOnLongClickListener(v -> {
+            longClickListener.onMovieLongClick(movie);
+            return true;
+        });
+
+        // Al pulsar (antes de soltar) se adelanta la descarga de los detalles de esta película
+        imageView.setOnTouchListener((v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                DetailsPrefetcher.getInstance(v.getContext()).prefetchNow(movie.getMovie_id(), imageUrl);
+            }
+            return false;
+        });
+
+        // Al hacer clic se abren los detalles de la película
+        imageView.setOnClickListener(v -> {
+            Intent intent = new Intent(v.getContext(), MovieDetailsActivity.class);
+            intent.putExtra("MOVIE_ID", movie.getMovie_id());
+            intent.putExtra("IMAGE_URL", imageUrl);
+            intent.putExtra("TITLE", movie.getTitle());
+            v.getContext().startActivity(intent);
+        });
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PosterViewHolder holder) {
+        // Liberar el bitmap y descartar la carga pendiente de la casilla reciclada
+        holder.posterImageView.setTag(null);
+        holder.posterImageView.setImageDrawable(null);
+    }
+
+    /**
+     * Muestra u oculta la marca de favorito de la casilla.
+     */
+    private void bindFavoriteBadge(PosterViewHolder holder, Movie movie) {
+        boolean favorite = favoriteIds != null && favoriteIds.contains(movie.getMovie_id());
+        holder.favoriteBadge.setVisibility(favorite ? View.VISIBLE : View.GONE);
+    }
+
+    private static boolean equalsOrNull(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Casilla del grid: un póster y su marca de favorito dentro de un FrameLayout.
+     */
+    public static class PosterViewHolder extends RecyclerView.ViewHolder {
+        final ImageView posterImageView;
+        final ImageView favoriteBadge;
+
+        PosterViewHolder(@NonNull View itemView, ImageView posterImageView, ImageView favoriteBadge) {
+            super(itemView);
+            this.posterImageView = posterImageView;
+            this.favoriteBadge = favoriteBadge;
+        }
+    }
+}
@@ -1,23 +1,21 @@
 package edu.pmdm.delgado_victorimdbapp.ui.gallery;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
-import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.Button;
-import android.widget.GridLayout;
-import android.widget.ImageView;
+import android.widget.EditText;
 import android.widget.ScrollView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -26,6 +24,9 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -33,29 +34,31 @@ import com.google.firebase.auth.FirebaseUser;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.List;
-import java.util.Objects;
 
-import api.IMDBApiService;
-import api.TMDBApiService;
+import api.DetailsPrefetcher;
+import api.MovieDetailsRepository;
+import database.AsyncDatabase;
 import database.FavoritesSync;
 import database.Movie;
+import database.MovieDetails;
 import database.SQLiteHelper;
-import edu.pmdm.delgado_victorimdbapp.MovieDetailsActivity;
 import edu.pmdm.delgado_victorimdbapp.R;
+import edu.pmdm.delgado_victorimdbapp.ui.MoviePosterAdapter;
 
 /**
  * Fragmento para mostrar y gestionar las películas favoritas.
- * Permite compartir datos en formato JSON y mostrar detalles de las películas.
+ * Permite buscar entre ellas, ordenarlas, compartir datos en formato JSON y mostrar detalles de las películas.
  */
 public class FavoritesFragment extends Fragment {
 
     private static final String TAG = "FavoritesFragment"; // Etiqueta para logs de depuración
+    private static final int PREFETCH_VISIBLE = 3; // Favoritos (los primeros, visibles al abrir) que se descargan por adelantado
+    private static final int LOAD_MORE_THRESHOLD = 5; // Casillas restantes antes de pedir la siguiente página
 
-    private GridLayout gridLayout;       // Contenedor para mostrar las imágenes de las películas
+    private MoviePosterAdapter adapter;  // Adaptador de la lista de pósters
+    private EditText searchInput;        // Texto de búsqueda entre los favoritos
+    private FavoritesViewModel viewModel; // Favoritos cargados (sobreviven a los giros)
     private SQLiteHelper dbHelper;       // Helper para la gestión de la base de datos
     private BluetoothAdapter bluetoothAdapter; // Adaptador Bluetooth para compartir datos
 
@@ -79,8 +82,52 @@ public class FavoritesFragment extends Fragment {
         // Infla el layout del fragmento
         View root = inflater.inflate(R.layout.fragment_gallery, container, false);
 
-        gridLayout = root.findViewById(R.id.gridLayout);
-        gridLayout.setColumnCount(1);  // Configura una sola columna
+        RecyclerView recyclerView = root.findViewById(R.id.recyclerView);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext()); // Una sola columna
+        recyclerView.setLayoutManager(layoutManager);
+        adapter = new MoviePosterAdapter(500, 750, 0, 16, this::removeFromFavorites);
+        recyclerView.setAdapter(adapter);
+
+        // Al acercarse al final de la lista se lee la siguiente página de favoritos
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+                    viewModel.loadNextPage();
+                }
+            }
+        });
+        viewModel = new ViewModelProvider(this).get(FavoritesViewModel.class);
+
+        // Cada cambio del texto vuelve a buscar entre los favoritos (vacío: se muestran todos)
+        searchInput = root.findViewById(R.id.searchFavorites);
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setQuery(s.toString());
+            }
+        });
+
+        // Orden de la lista: posición 0, más recientes; posición 1, título (A-Z)
+        Spinner sortSpinner = root.findViewById(R.id.sortFavorites);
+        sortSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                viewModel.setSortByTitle(position == 1);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
 
         Button shareButton = root.findViewById(R.id.shareButton);
         shareButton.setOnClickListener(v -> handleShareButtonClick());
@@ -95,28 +142,15 @@ public class FavoritesFragment extends Fragment {
         if (firebaseUser != null) {
             currentUserId = firebaseUser.getUid();
             favoritesSync = new FavoritesSync(requireContext(), currentUserId);
-            // Registra el listener para que cada modificación local se sincronice en la nube
-            SQLiteHelper.setOnFavoritesChangedListener(new SQLiteHelper.OnFavoritesChangedListener() {
-                @Override
-                public void onFavoriteAdded(Movie movie) {
-                    // Aunque en FavoritesFragment la acción principal es eliminar, se deja para completitud
-                    favoritesSync.addMovieToCloud(movie);
-                    Log.d(TAG, "Sincronizando adición en la nube: " + movie.getMovie_id());
-                }
-
-                @Override
-                public void onFavoriteRemoved(String movieId) {
-                    favoritesSync.removeMovieFromCloud(movieId);
-                    Log.d(TAG, "Sincronizando eliminación en la nube: " + movieId);
-                }
-            });
-            // Sincroniza los datos al iniciar el fragmento
-            favoritesSync.syncAtStartup();
+            // Sincroniza los datos al iniciar el fragmento (no tras un giro)
+            if (savedInstanceState == null) {
+                favoritesSync.syncAtStartup();
+            }
         } else {
             Log.e(TAG, "Usuario no autenticado. No se pudo inicializar la sincronización.");
         }
 
-        // Carga las películas favoritas en el GridLayout
+        // Carga las películas favoritas en la lista
         loadFavoriteMovies();
 
         return root;
@@ -126,6 +160,8 @@ public class FavoritesFragment extends Fragment {
     public void onDestroyView() {
         super.onDestroyView();
         dbHelper = null;
+        adapter = null;
+        searchInput = null;
     }
 
     /**
@@ -191,53 +227,21 @@ public class FavoritesFragment extends Fragment {
 
     /**
      * Construye un JSONArray con los datos de las películas favoritas.
+     * Los detalles se leen desde disco cuando están guardados y solo se piden a la API si faltan.
      */
     private JSONArray buildMoviesJson(List<Movie> favoriteMovies) {
-        IMDBApiService imdbApiService = new IMDBApiService();
-        TMDBApiService tmdbApiService = new TMDBApiService();
+        MovieDetailsRepository detailsRepository = new MovieDetailsRepository(requireContext());
         JSONArray moviesJsonArray = new JSONArray();
         for (Movie movie : favoriteMovies) {
             try {
+                MovieDetails details = detailsRepository.getMovieDetails(movie.getMovie_id());
                 JSONObject movieJson = new JSONObject();
-                if (movie.getMovie_id().startsWith("tt")) {
-                    String jsonResponse = imdbApiService.getTitleDetails(movie.getMovie_id());
-                    JSONObject movieDetails = new JSONObject(jsonResponse)
-                            .getJSONObject("data")
-                            .getJSONObject("title");
-                    movieJson.put("id", movie.getMovie_id());
-                    movieJson.put("title",
-                            movieDetails.optJSONObject("titleText") != null
-                                    ? Objects.requireNonNull(movieDetails.optJSONObject("titleText")).optString("text", "N/A")
-                                    : "N/A"
-                    );
-                    JSONObject plotObject = movieDetails.optJSONObject("plot");
-                    movieJson.put("overview", (plotObject != null
-                            && plotObject.optJSONObject("plotText") != null)
-                            ? Objects.requireNonNull(plotObject.optJSONObject("plotText")).optString("plainText", "N/A")
-                            : "N/A"
-                    );
-                    JSONObject primaryImageObject = movieDetails.optJSONObject("primaryImage");
-                    movieJson.put("posterURL", primaryImageObject != null
-                            ? primaryImageObject.optString("url", "N/A")
-                            : "N/A"
-                    );
-                    JSONObject ratingsSummaryObject = movieDetails.optJSONObject("ratingsSummary");
-                    movieJson.put("rating", ratingsSummaryObject != null
-                            ? ratingsSummaryObject.optDouble("aggregateRating", 0.0)
-                            : 0.0
-                    );
-                    JSONObject releaseDateObject = movieDetails.optJSONObject("releaseDate");
-                    movieJson.put("releaseDate", formatReleaseDate(releaseDateObject));
-                } else {
-                    String response = tmdbApiService.getMovieDetailsById(movie.getMovie_id());
-                    JSONObject jsonObject = new JSONObject(response);
-                    movieJson.put("id", movie.getMovie_id());
-                    movieJson.put("title", jsonObject.getString("title"));
-                    movieJson.put("overview", jsonObject.getString("overview"));
-                    movieJson.put("posterURL", "https://image.tmdb.org/t/p/w500" + jsonObject.getString("poster_path"));
-                    movieJson.put("rating", jsonObject.getDouble("vote_average"));
-                    movieJson.put("releaseDate", jsonObject.getString("release_date"));
-                }
+                movieJson.put("id", movie.getMovie_id());
+                movieJson.put("title", orNotAvailable(details.getTitle()));
+                movieJson.put("overview", orNotAvailable(details.getOverview()));
+                movieJson.put("posterURL", orNotAvailable(details.getPoster()));
+                movieJson.put("rating", details.getRating());
+                movieJson.put("releaseDate", orNotAvailable(details.getReleaseDate()));
                 moviesJsonArray.put(movieJson);
             } catch (Exception e) {
                 Log.e(TAG, "Error al procesar detalles de la película: " + movie.getMovie_id(), e);
@@ -247,15 +251,10 @@ public class FavoritesFragment extends Fragment {
     }
 
     /**
-     * Formatea una fecha en formato JSON a un String legible.
+     * Devuelve el valor recibido o "N/A" si no está disponible.
      */
-    @SuppressLint("DefaultLocale")
-    private String formatReleaseDate(JSONObject releaseDate) {
-        if (releaseDate == null) return "N/A";
-        int year = releaseDate.optInt("year", 0);
-        int month = releaseDate.optInt("month", 0);
-        int day = releaseDate.optInt("day", 0);
-        return year == 0 ? "N/A" : String.format("%d-%02d-%02d", year, month, day);
+    private String orNotAvailable(String value) {
+        return value == null || value.isEmpty() ? "N/A" : value;
     }
 
     /**
@@ -276,7 +275,8 @@ public class FavoritesFragment extends Fragment {
     }
 
     /**
-     * Carga las películas favoritas del usuario actual y las muestra en el GridLayout.
+     * Carga las películas favoritas del usuario actual y las muestra en la lista.
+     * Tras un giro se reutiliza la lista ya cargada por el ViewModel.
      */
     private void loadFavoriteMovies() {
         if (dbHelper == null) {
@@ -287,130 +287,40 @@ public class FavoritesFragment extends Fragment {
             Toast.makeText(getContext(), "No se ha identificado al usuario", Toast.LENGTH_SHORT).show();
             return;
         }
-        List<Movie> favoriteMovies = dbHelper.getFavoriteMovies(currentUserId);
-        requireActivity().runOnUiThread(() -> {
-            gridLayout.removeAllViews();
-            if (favoriteMovies.isEmpty()) {
+        viewModel.getFavorites().observe(getViewLifecycleOwner(), favoriteMovies -> {
+            if (favoriteMovies.isEmpty() && searchInput.getText().toString().trim().isEmpty()) {
                 Toast.makeText(getContext(), "No tienes películas favoritas aún", Toast.LENGTH_SHORT).show();
-                return;
             }
-            for (Movie movie : favoriteMovies) {
-                if (movie.getPoster() != null && !movie.getPoster().isEmpty()) {
-                    addImageToGrid(movie.getPoster(), movie.getMovie_id(), movie.getTitle());
+            boolean firstLoad = adapter.getItemCount() == 0;
+            adapter.submitList(favoriteMovies);
+
+            // Los primeros favoritos son los visibles al abrir la pantalla
+            if (firstLoad) {
+                DetailsPrefetcher prefetcher = DetailsPrefetcher.getInstance(requireContext());
+                for (int i = 0; i < favoriteMovies.size() && i < PREFETCH_VISIBLE; i++) {
+                    prefetcher.prefetch(favoriteMovies.get(i).getMovie_id(), favoriteMovies.get(i).getPoster());
                 }
             }
         });
+        viewModel.loadIfNeeded(currentUserId);
     }
 
     /**
-     * Agrega una imagen al GridLayout representando una película favorita.
+     * Acción de la pulsación larga: elimina la película de favoritos (el cambio se replica en
+     * la nube desde AppLifecycleManager) y quita solo su casilla de la lista.
      *
-     * @param imageUrl URL de la imagen.
-     * @param movieId  ID de la película (ej. "tt1234567").
-     * @param title    Título de la película.
+     * @param movie Película pulsada.
      */
-    private void addImageToGrid(String imageUrl, String movieId, String title) {
-        ImageView imageView = new ImageView(getContext());
-        GridLayout.LayoutParams params = new GridLayout.LayoutParams();
-        params.width = 500;
-        params.height = 750;
-        params.setMargins(0, 16, 0, 16);
-        params.setGravity(Gravity.CENTER);
-        imageView.setLayoutParams(params);
-        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-
-        // Descarga la imagen en un hilo secundario
-        new Thread(() -> {
-            Bitmap bitmap = getBitmapFromURL(imageUrl);
-            if (bitmap != null) {
-                requireActivity().runOnUiThread(() -> imageView.setImageBitmap(bitmap));
-            }
-        }).start();
-
-        // Al mantener presionada se elimina de favoritos (lo que disparará el listener y sincronizará la nube)
-        imageView.setOnLongClickListener(v -> {
-            if (dbHelper != null && currentUserId != null) {
-                int rowsDeleted = dbHelper.removeMovieFromFavorites(currentUserId, movieId);
-                if (rowsDeleted > 0) {
-                    Toast.makeText(getContext(), title + " eliminado de favoritos", Toast.LENGTH_SHORT).show();
-                    requireActivity().runOnUiThread(this::loadFavoriteMovies);
-                } else {
-                    Toast.makeText(getContext(), "Error al eliminar " + title, Toast.LENGTH_SHORT).show();
-                }
-            }
-            return true;
-        });
-
-        // Al hacer clic se abren los detalles de la película
-        imageView.setOnClickListener(v -> {
-            Intent intent = new Intent(getActivity(), MovieDetailsActivity.class);
-            intent.putExtra("MOVIE_ID", movieId);
-            intent.putExtra("IMAGE_URL", imageUrl);
-            intent.putExtra("TITLE", title);
-            startActivity(intent);
-        });
-
-        gridLayout.addView(imageView);
-    }
-
-    /**
-     * Descarga una imagen desde una URL y devuelve un Bitmap.
-     */
-    private Bitmap getBitmapFromURL(String imageUrl) {
-        if (imageUrl == null || imageUrl.isEmpty()) {
-            Log.e(TAG, "URL de imagen vacía o nula");
-            return null;
-        }
-        InputStream inputStream = null;
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            inputStream = connection.getInputStream();
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            connection.disconnect();
-            int reqWidth = 1024;
-            int reqHeight = 1024;
-            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-            connection = (HttpURLConnection) new URL(imageUrl).openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            inputStream = connection.getInputStream();
-            options.inJustDecodeBounds = false;
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-            Bitmap scaledBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            connection.disconnect();
-            return scaledBitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Error al descargar/decodificar la imagen: " + imageUrl, e);
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (Exception ignored) {}
-            }
-            return null;
-        }
-    }
-
-    /**
-     * Calcula un inSampleSize adecuado para decodificar la imagen.
-     */
-    private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-        if (height > reqHeight || width > reqWidth) {
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
-            }
-        }
-        return inSampleSize;
+    private void removeFromFavorites(Movie movie) {
+        if (dbHelper == null || currentUserId == null) return;
+        AsyncDatabase.getInstance(requireContext()).removeMovieFromFavorites(currentUserId, movie.getMovie_id())
+                .observe(getViewLifecycleOwner(), rowsDeleted -> {
+                    if (rowsDeleted != null && rowsDeleted > 0) {
+                        Toast.makeText(getContext(), movie.getTitle() + " eliminado de favoritos", Toast.LENGTH_SHORT).show();
+                        viewModel.onFavoriteRemoved(movie);
+                    } else {
+                        Toast.makeText(getContext(), "Error al eliminar " + movie.getTitle(), Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,225 @@
+package edu.pmdm.delgado_victorimdbapp.ui.gallery;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import database.AsyncDatabase;
+import database.FavoritesPage;
+import database.InvalidationTracker;
+import database.Movie;
+import database.SQLiteHelper;
+
+/**
+ * ViewModel de Favoritos. Conserva la lista de favoritos mostrada mientras dure la
+ * pantalla, de modo que al girar el dispositivo no se vuelve a leer la base de datos
+ * ni a descargar nada.
+ * <p>
+ * Los favoritos se leen por páginas (los más recientes primero) a medida que el usuario
+ * se desplaza, en lugar de cargarlos todos de una vez. Cuando cambian los favoritos del
+ * usuario (desde esta u otra pantalla, o al sincronizar con la nube) se vuelven a leer
+ * las páginas ya mostradas. Las páginas se ordenan por fecha (más recientes primero) o
+ * por título.
+ * <p>
+ * Con un texto de búsqueda se muestran, en lugar de las páginas, los favoritos cuyo título
+ * o sinopsis coinciden (índice de búsqueda local, por relevancia) seguidos de los que
+ * empiezan por ese texto, que cubren también los que aún no están en el índice.
+ */
+public class FavoritesViewModel extends AndroidViewModel {
+
+    private static final int PAGE_SIZE = 30; // Favoritos por página
+    private static final int SEARCH_LIMIT = 50; // Resultados máximos de una búsqueda
+
+    private final MutableLiveData<List<Movie>> favorites = new MutableLiveData<>();
+    private final List<Movie> loadedMovies = new ArrayList<>(); // Favoritos mostrados (protegido por 'this')
+    private int loadedRows = 0; // Filas leídas hasta ahora, con o sin póster (protegido por 'this')
+    private int generation = 0; // Se incrementa al recargar: descarta las páginas pedidas antes (protegido por 'this')
+    private String loadedUserId; // Usuario cuyos favoritos se han cargado
+    private FavoritesPage.Key nextKey; // Clave de la siguiente página
+    private volatile boolean hasNextPage = false;
+    private volatile boolean loadingPage = false;
+    private volatile String query = ""; // Texto de búsqueda ("" para mostrar todos)
+    private volatile boolean sortByTitle = false; // Orden de las páginas: título (A-Z) o más recientes
+
+    // Recarga la lista cuando cambian los favoritos del usuario (el tracker lo guarda con una
+    // referencia débil, así que se conserva aquí)
+    private final InvalidationTracker.Observer favoritesObserver = (table, userId) -> reload();
+
+    public FavoritesViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    /**
+     * Favoritos del usuario (solo los que tienen póster).
+     */
+    public LiveData<List<Movie>> getFavorites() {
+        return favorites;
+    }
+
+    /**
+     * Carga la primera página de favoritos del usuario si aún no se ha cargado.
+     *
+     * @param userId ID del usuario actual.
+     */
+    public void loadIfNeeded(String userId) {
+        if (userId.equals(loadedUserId)) return;
+        loadedUserId = userId;
+        InvalidationTracker tracker = SQLiteHelper.getInstance(getApplication()).getInvalidationTracker();
+        tracker.removeObserver(favoritesObserver);
+        tracker.addObserver(InvalidationTracker.TABLE_FAVORITES, userId, favoritesObserver);
+        loadFirstRows(userId, PAGE_SIZE);
+    }
+
+    /**
+     * Cambia el texto de búsqueda y vuelve a leer la lista desde el principio.
+     *
+     * @param text Texto introducido por el usuario ("" o null para mostrar todos).
+     */
+    public void setQuery(String text) {
+        String newQuery = text != null ? text.trim() : "";
+        if (newQuery.equals(query)) return;
+        query = newQuery;
+        if (loadedUserId != null) loadFirstRows(loadedUserId, PAGE_SIZE);
+    }
+
+    /**
+     * Cambia el orden de la lista y vuelve a leerla desde el principio.
+     *
+     * @param byTitle true para ordenar por título (A-Z), false para mostrar primero los más recientes.
+     */
+    public void setSortByTitle(boolean byTitle) {
+        if (byTitle == sortByTitle) return;
+        sortByTitle = byTitle;
+        if (loadedUserId != null) loadFirstRows(loadedUserId, PAGE_SIZE);
+    }
+
+    /**
+     * Carga la siguiente página de favoritos (si existe y no se está cargando ya otra).
+     */
+    public void loadNextPage() {
+        if (loadingPage || !hasNextPage || loadedUserId == null) return;
+        int pageGeneration;
+        synchronized (this) {
+            pageGeneration = generation;
+        }
+        loadPage(loadedUserId, nextKey, PAGE_SIZE, pageGeneration);
+    }
+
+    /**
+     * Vuelve a leer desde el principio tantas filas como se habían cargado, de modo que la
+     * lista refleja los cambios sin perder la posición del usuario.
+     */
+    private void reload() {
+        String userId = loadedUserId;
+        if (userId == null) return;
+        int rows;
+        synchronized (this) {
+            rows = Math.max(PAGE_SIZE, loadedRows);
+        }
+        loadFirstRows(userId, rows);
+    }
+
+    /**
+     * Vacía la lista y lee las primeras filas; las páginas pedidas antes se descartan.
+     */
+    private void loadFirstRows(String userId, int rows) {
+        int pageGeneration;
+        synchronized (this) {
+            pageGeneration = ++generation;
+        }
+        loadPage(userId, null, rows, pageGeneration);
+    }
+
+    /**
+     * Lee una página en el grupo de lectores de la base de datos y la añade a la lista
+     * (o la reemplaza, si es la primera).
+     */
+    private void loadPage(String userId, FavoritesPage.Key after, int limit, int pageGeneration) {
+        loadingPage = true;
+        String pageQuery = query;
+        boolean pageByTitle = sortByTitle;
+        SQLiteHelper dbHelper = SQLiteHelper.getInstance(getApplication());
+        AsyncDatabase.getInstance(getApplication()).executeRead(() -> {
+            List<Movie> pageMovies;
+            FavoritesPage.Key pageNextKey = null;
+            try {
+                if (pageQuery.isEmpty()) {
+                    FavoritesPage page = pageByTitle
+                            ? dbHelper.getFavoritesByTitle(userId, null, after, limit)
+                            : dbHelper.getFavoritesNewestFirst(userId, after, limit);
+                    pageMovies = page.getMovies();
+                    pageNextKey = page.getNextKey();
+                } else {
+                    pageMovies = search(dbHelper, userId, pageQuery); // Sin páginas siguientes
+                }
+            } catch (RuntimeException e) {
+                loadingPage = false;
+                throw e;
+            }
+            List<Movie> snapshot;
+            synchronized (this) {
+                if (pageGeneration != generation) return; // Ya se ha pedido una recarga
+                if (after == null) {
+                    loadedMovies.clear();
+                    loadedRows = 0;
+                }
+                for (Movie movie : pageMovies) {
+                    if (movie.getPoster() != null && !movie.getPoster().isEmpty()) {
+                        loadedMovies.add(movie);
+                    }
+                }
+                loadedRows += pageMovies.size();
+                snapshot = new ArrayList<>(loadedMovies);
+                nextKey = pageNextKey;
+                hasNextPage = pageNextKey != null;
+                loadingPage = false;
+            }
+            favorites.postValue(snapshot);
+        });
+    }
+
+    /**
+     * Busca entre los favoritos: primero los que coinciden en el índice de búsqueda (título y
+     * sinopsis, por relevancia), que solo contiene las películas cuyos detalles se han
+     * descargado, y después los que empiezan por el texto buscado.
+     */
+    private static List<Movie> search(SQLiteHelper dbHelper, String userId, String text) {
+        Map<String, Movie> results = new LinkedHashMap<>(); // Por ID, sin repetir
+        for (Movie movie : dbHelper.searchFavoriteMovies(userId, text, SEARCH_LIMIT)) {
+            results.put(movie.getMovie_id(), movie);
+        }
+        for (Movie movie : dbHelper.getFavoritesByTitle(userId, text, null, SEARCH_LIMIT).getMovies()) {
+            if (results.size() >= SEARCH_LIMIT) break;
+            if (!results.containsKey(movie.getMovie_id())) results.put(movie.getMovie_id(), movie);
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Quita una película de la lista mostrada (tras eliminarla de la base de datos).
+     *
+     * @param movie Película eliminada.
+     */
+    public void onFavoriteRemoved(Movie movie) {
+        List<Movie> remaining;
+        synchronized (this) {
+            loadedMovies.remove(movie);
+            remaining = new ArrayList<>(loadedMovies);
+        }
+        favorites.setValue(remaining);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        SQLiteHelper.getInstance(getApplication()).getInvalidationTracker().removeObserver(favoritesObserver);
+    }
+}
@@ -0,0 +1,187 @@
+package edu.pmdm.delgado_victorimdbapp.ui.home;
+
+import android.app.Application;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import api.DetailsPrefetcher;
+import api.IMDBApiService;
+import api.TopMeterPage;
+import database.AsyncDatabase;
+import database.InvalidationTracker;
+import database.Movie;
+import database.SQLiteHelper;
+import utils.TopMeterSnapshot;
+
+/**
+ * ViewModel del Top 10. Conserva el ranking cargado y el estado de la paginación
+ * mientras dure la pantalla, de modo que al girar el dispositivo no se repite
+ * ninguna llamada a la API.
+ */
+public class Top10ViewModel extends AndroidViewModel {
+
+    private static final String TAG = "Top10ViewModel";
+    private static final int PREFETCH_TOP_RANKED = 4; // Primeras posiciones cuyos detalles se descargan por adelantado
+
+    private final MutableLiveData<List<Movie>> movies = new MutableLiveData<>();
+    private final MutableLiveData<Set<String>> favoriteIds = new MutableLiveData<>();
+    // Vuelve a consultar las marcas de favorito cuando cambian los favoritos del usuario
+    // (el tracker lo guarda con una referencia débil, así que se conserva aquí)
+    private final InvalidationTracker.Observer favoritesObserver = (table, userId) -> {
+        List<Movie> current = movies.getValue();
+        if (current != null) postFavoriteIds(current);
+    };
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Cargas en curso
+    private final IMDBApiService imdbApiService = new IMDBApiService();
+    private final TopMeterSnapshot snapshot;
+
+    // Estado de la paginación del ranking (se modifica solo desde el executor)
+    private final List<Movie> loadedMovies = new ArrayList<>();
+    private String nextCursor;                  // Cursor de la siguiente página ("endCursor")
+    private volatile boolean hasNextPage = false;
+    private volatile boolean loadingPage = false;
+    private boolean started = false;            // Indica si ya se pidió la primera página
+
+    public Top10ViewModel(@NonNull Application application) {
+        super(application);
+        snapshot = new TopMeterSnapshot(application);
+        FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (firebaseUser != null) {
+            SQLiteHelper.getInstance(application).getInvalidationTracker().addObserver(
+                    InvalidationTracker.TABLE_FAVORITES, firebaseUser.getUid(), favoritesObserver);
+        }
+    }
+
+    /**
+     * Ranking cargado hasta el momento, en orden.
+     */
+    public LiveData<List<Movie>> getMovies() {
+        return movies;
+    }
+
+    /**
+     * IDs de las películas cargadas que son favoritas del usuario actual.
+     */
+    public LiveData<Set<String>> getFavoriteIds() {
+        return favoriteIds;
+    }
+
+    /**
+     * Carga la primera página del ranking si aún no se ha hecho.
+     * Primero se publica la última copia guardada del ranking y después el ranking
+     * actualizado desde la API de IMDb.
+     */
+    public void loadIfNeeded() {
+        if (started) return;
+        started = true;
+
+        List<Movie> cachedMovies = snapshot.load();
+        if (!cachedMovies.isEmpty()) {
+            movies.setValue(cachedMovies);
+            executor.execute(() -> postFavoriteIds(cachedMovies));
+        }
+
+        loadingPage = true;
+        executor.execute(() -> {
+            try {
+                // Obtén los títulos más populares (primera página)
+                TopMeterPage page = TopMeterPage.parse(
+                        imdbApiService.getTopMeterTitles(IMDBApiService.TOP_METER_PAGE_SIZE, null));
+                List<Movie> firstPage = page.getMovies();
+                if (firstPage.isEmpty()) return;
+                snapshot.save(firstPage);
+
+                loadedMovies.clear();
+                loadedMovies.addAll(firstPage);
+                nextCursor = page.getEndCursor();
+                hasNextPage = page.hasNextPage();
+                movies.postValue(new ArrayList<>(loadedMovies));
+                postFavoriteIds(loadedMovies);
+
+                // Descarga por adelantado los detalles de las primeras posiciones del ranking
+                DetailsPrefetcher prefetcher = DetailsPrefetcher.getInstance(getApplication());
+                for (int i = 0; i < firstPage.size() && i < PREFETCH_TOP_RANKED; i++) {
+                    prefetcher.prefetch(firstPage.get(i).getMovie_id(), firstPage.get(i).getPoster());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error al cargar el ranking", e);
+            } finally {
+                loadingPage = false;
+            }
+        });
+    }
+
+    /**
+     * Carga la siguiente página del ranking (si existe y no se está cargando ya otra).
+     */
+    public void loadNextPage() {
+        if (loadingPage || !hasNextPage) return;
+        loadingPage = true;
+        executor.execute(() -> {
+            try {
+                TopMeterPage page = TopMeterPage.parse(
+                        imdbApiService.getTopMeterTitles(IMDBApiService.TOP_METER_PAGE_SIZE, nextCursor));
+                loadedMovies.addAll(page.getMovies());
+                nextCursor = page.getEndCursor();
+                hasNextPage = page.hasNextPage();
+                movies.postValue(new ArrayList<>(loadedMovies));
+                postFavoriteIds(loadedMovies);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al cargar la siguiente página del ranking", e);
+            } finally {
+                loadingPage = false;
+            }
+        });
+    }
+
+    /**
+     * Marca una película como favorita tras añadirla desde la propia lista.
+     *
+     * @param movieId ID de la película.
+     */
+    public void markFavorite(String movieId) {
+        Set<String> current = favoriteIds.getValue();
+        Set<String> updated = current != null ? new HashSet<>(current) : new HashSet<>();
+        if (updated.add(movieId)) {
+            favoriteIds.setValue(updated);
+        }
+    }
+
+    /**
+     * Consulta de una vez qué películas son favoritas del usuario actual y lo publica.
+     * La consulta se hace en el grupo de lectores de la base de datos.
+     */
+    private void postFavoriteIds(List<Movie> loaded) {
+        FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (firebaseUser == null) return;
+        String userId = firebaseUser.getUid();
+        List<String> ids = new ArrayList<>();
+        for (Movie movie : loaded) {
+            ids.add(movie.getMovie_id());
+        }
+        SQLiteHelper dbHelper = SQLiteHelper.getInstance(getApplication());
+        AsyncDatabase.getInstance(getApplication()).executeRead(() ->
+                favoriteIds.postValue(dbHelper.getFavoriteMovieIds(userId, ids)));
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        executor.shutdownNow(); // Cancela las cargas en curso al cerrar definitivamente la pantalla
+        SQLiteHelper.getInstance(getApplication()).getInvalidationTracker().removeObserver(favoritesObserver);
+    }
+}
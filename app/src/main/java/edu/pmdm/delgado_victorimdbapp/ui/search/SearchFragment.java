@@ -2,7 +2,6 @@ package edu.pmdm.delgado_victorimdbapp.ui.search;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,16 +14,13 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
+import androidx.lifecycle.ViewModelProvider;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import api.TMDBApiService;
+import api.SearchResultStore;
 import edu.pmdm.delgado_victorimdbapp.MovieListActivity;
 import edu.pmdm.delgado_victorimdbapp.R;
 
@@ -34,12 +30,11 @@ import edu.pmdm.delgado_victorimdbapp.R;
  */
 public class SearchFragment extends Fragment {
 
-    private static final String TAG = "SearchFragment"; // Etiqueta para logs de depuración
-
     private Spinner spinnerGenres; // Desplegable para seleccionar género
     private EditText editTextYear; // Campo para ingresar el año
 
     private final Map<String, Integer> genresMap = new HashMap<>(); // Mapa para almacenar géneros y sus IDs
+    private SearchViewModel viewModel; // Géneros y búsqueda en curso (sobreviven a los giros)
 
     @Nullable
     @Override
@@ -51,8 +46,23 @@ public class SearchFragment extends Fragment {
         editTextYear = root.findViewById(R.id.edit_text_year); // Inicializar el campo de texto para el año
         Button buttonSearch = root.findViewById(R.id.button_search); // Botón para realizar la búsqueda
 
-        // Cargar géneros en el spinner
-        loadGenres();
+        viewModel = new ViewModelProvider(this).get(SearchViewModel.class);
+
+        // Cargar géneros en el spinner (tras un giro se reutilizan los ya descargados)
+        viewModel.getGenres().observe(getViewLifecycleOwner(), this::showGenres);
+        viewModel.loadGenresIfNeeded();
+
+        // Resultados y errores de la búsqueda (se muestran una sola vez)
+        viewModel.getSearchResults().observe(getViewLifecycleOwner(), handle -> {
+            if (handle == null) return;
+            viewModel.onSearchResultsShown();
+            showSearchResults(handle);
+        });
+        viewModel.getErrorMessage().observe(getViewLifecycleOwner(), message -> {
+            if (message == null) return;
+            viewModel.onErrorShown();
+            Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+        });
 
         // Configurar la acción del botón de búsqueda
         buttonSearch.setOnClickListener(v -> {
@@ -79,101 +89,38 @@ public class SearchFragment extends Fragment {
             }
 
             // Realizar la búsqueda
-            performSearch(genreId, year);
+            viewModel.search(genreId, Integer.parseInt(year));
         });
 
         return root;
     }
 
     /**
-     * Carga los géneros de películas desde la API de TMDB y los muestra en el spinner.
+     * Muestra los géneros en el spinner.
      */
-    private void loadGenres() {
-        new Thread(() -> {
-            try {
-                TMDBApiService apiService = new TMDBApiService();
-                String genresJson = apiService.getGenres(); // Obtener géneros desde la API
-
-                JSONObject jsonObject = new JSONObject(genresJson);
-                JSONArray genresArray = jsonObject.getJSONArray("genres");
-
-                List<String> genreNames = new ArrayList<>(); // Lista para los nombres de géneros
-                for (int i = 0; i < genresArray.length(); i++) {
-                    JSONObject genreObject = genresArray.getJSONObject(i);
-                    int id = genreObject.getInt("id");
-                    String name = genreObject.getString("name");
-
-                    genresMap.put(name, id); // Guardar el nombre y el ID en el mapa
-                    genreNames.add(name); // Agregar el nombre a la lista
-                }
-
-                // Actualizar el spinner en el hilo principal
-                requireActivity().runOnUiThread(() -> {
-                    ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
-                            android.R.layout.simple_spinner_item, genreNames);
-                    adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-                    spinnerGenres.setAdapter(adapter);
-                });
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error al cargar los géneros", e);
-                requireActivity().runOnUiThread(() -> Toast.makeText(getContext(), "Error al cargar los géneros", Toast.LENGTH_SHORT).show());
-            }
-        }).start();
+    private void showGenres(Map<String, Integer> genres) {
+        genresMap.clear();
+        genresMap.putAll(genres); // Guardar los nombres y los IDs
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, new ArrayList<>(genres.keySet()));
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerGenres.setAdapter(adapter);
     }
 
     /**
-     * Realiza una búsqueda de películas por género y año utilizando la API de TMDB.
+     * Abre la lista de resultados de la búsqueda. Solo se envía el handle del resultado
+     * (guardado en {@link SearchResultStore}) y los parámetros de la búsqueda, para poder
+     * repetirla si el proceso se ha reiniciado.
      *
-     * @param genreId ID del género seleccionado.
-     * @param year Año en el que se lanzaron las películas.
+     * @param handle Handle del conjunto de resultados.
      */
-    private void performSearch(int genreId, String year) {
-        new Thread(() -> {
-            try {
-                TMDBApiService apiService = new TMDBApiService();
-                String moviesJson = apiService.getMoviesByGenreAndYear(genreId, Integer.parseInt(year)); // Buscar películas
-
-                JSONObject jsonObject = new JSONObject(moviesJson);
-                JSONArray results = jsonObject.getJSONArray("results");
-
-                // Listas para almacenar los resultados
-                ArrayList<String> posterUrls = new ArrayList<>();
-                ArrayList<String> titles = new ArrayList<>();
-                ArrayList<String> tconsts = new ArrayList<>();
-
-                // Procesar los resultados de la búsqueda
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject movie = results.getJSONObject(i);
-
-                    String id = String.valueOf(movie.getInt("id")); // ID de la película
-                    String title = movie.optString("title", "Título no disponible"); // Título
-                    String posterPath = movie.optString("poster_path", ""); // URL del póster
-
-                    if (!posterPath.isEmpty()) {
-                        posterUrls.add("https://image.tmdb.org/t/p/w500" + posterPath);
-                        titles.add(title);
-                        tconsts.add(id);
-                    }
-                }
-
-                // Si no hay resultados, mostrar un mensaje
-                if (posterUrls.isEmpty()) {
-                    requireActivity().runOnUiThread(() -> Toast.makeText(getContext(), "No se encontraron películas", Toast.LENGTH_SHORT).show());
-                    return;
-                }
-
-                // Enviar los resultados a la siguiente actividad
-                Intent intent = new Intent(requireContext(), MovieListActivity.class);
-                intent.putStringArrayListExtra("POSTER_URLS", posterUrls);
-                intent.putStringArrayListExtra("TITLES", titles);
-                intent.putStringArrayListExtra("TCONSTS", tconsts);
-                startActivity(intent);
-
-            } catch (Exception e) {
-                Log.e(TAG, "Error al buscar películas", e);
-                requireActivity().runOnUiThread(() -> Toast.makeText(getContext(), "Error al buscar películas", Toast.LENGTH_SHORT).show());
-            }
-        }).start();
+    private void showSearchResults(String handle) {
+        SearchResultStore.ResultSet resultSet = SearchResultStore.getInstance().getResultSet(handle);
+        if (resultSet == null) return;
+        Intent intent = new Intent(requireContext(), MovieListActivity.class);
+        intent.putExtra(MovieListActivity.EXTRA_RESULT_HANDLE, handle);
+        intent.putExtra(MovieListActivity.EXTRA_GENRE_ID, resultSet.getGenreId());
+        intent.putExtra(MovieListActivity.EXTRA_YEAR, resultSet.getYear());
+        startActivity(intent);
     }
-}
\ No newline at end of file
+}
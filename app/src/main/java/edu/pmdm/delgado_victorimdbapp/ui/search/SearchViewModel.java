@@ -0,0 +1,125 @@
+package edu.pmdm.delgado_victorimdbapp.ui.search;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import api.SearchResultStore;
+import api.TMDBApiService;
+
+/**
+ * ViewModel de la búsqueda. Conserva los géneros descargados y la búsqueda en curso,
+ * de modo que al girar el dispositivo no se vuelven a pedir los géneros y una búsqueda
+ * lanzada antes del giro entrega su resultado a la pantalla nueva.
+ */
+public class SearchViewModel extends ViewModel {
+
+    private static final String TAG = "SearchViewModel";
+
+    private final MutableLiveData<Map<String, Integer>> genres = new MutableLiveData<>();
+    private final MutableLiveData<String> searchResults = new MutableLiveData<>();
+    private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Cargas en curso
+    private final TMDBApiService apiService = new TMDBApiService();
+    private boolean genresRequested = false;
+
+    /**
+     * Géneros disponibles (nombre → ID), en el orden devuelto por TMDB.
+     */
+    public LiveData<Map<String, Integer>> getGenres() {
+        return genres;
+    }
+
+    /**
+     * Handle (en {@link SearchResultStore}) del resultado de la última búsqueda, pendiente de
+     * mostrar (null cuando ya se ha mostrado).
+     */
+    public LiveData<String> getSearchResults() {
+        return searchResults;
+    }
+
+    /**
+     * Último error pendiente de mostrar (null cuando ya se ha mostrado).
+     */
+    public LiveData<String> getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Carga los géneros de películas desde la API de TMDB si aún no se ha hecho.
+     */
+    public void loadGenresIfNeeded() {
+        if (genresRequested) return;
+        genresRequested = true;
+        executor.execute(() -> {
+            try {
+                JSONObject jsonObject = new JSONObject(apiService.getGenres()); // Obtener géneros desde la API
+                JSONArray genresArray = jsonObject.getJSONArray("genres");
+
+                Map<String, Integer> genresMap = new LinkedHashMap<>(); // Nombres de géneros y sus IDs
+                for (int i = 0; i < genresArray.length(); i++) {
+                    JSONObject genreObject = genresArray.getJSONObject(i);
+                    genresMap.put(genreObject.getString("name"), genreObject.getInt("id"));
+                }
+                genres.postValue(genresMap);
+            } catch (Exception e) {
+                Log.e(TAG, "Error al cargar los géneros", e);
+                genresRequested = false; // Se permitirá reintentar
+                errorMessage.postValue("Error al cargar los géneros");
+            }
+        });
+    }
+
+    /**
+     * Realiza una búsqueda de películas por género y año utilizando la API de TMDB.
+     *
+     * @param genreId ID del género seleccionado.
+     * @param year    Año en el que se lanzaron las películas.
+     */
+    public void search(int genreId, int year) {
+        executor.execute(() -> {
+            try {
+                // El resultado se guarda en el almacén compartido: solo se entrega su handle
+                SearchResultStore.ResultSet resultSet = SearchResultStore.getInstance().loadFirstPage(genreId, year);
+                if (resultSet.getMovies().isEmpty()) {
+                    errorMessage.postValue("No se encontraron películas");
+                } else {
+                    searchResults.postValue(SearchResultStore.handleFor(genreId, year));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error al buscar películas", e);
+                errorMessage.postValue("Error al buscar películas");
+            }
+        });
+    }
+
+    /**
+     * Marca el resultado de la búsqueda como mostrado, para no repetirlo tras un giro.
+     */
+    public void onSearchResultsShown() {
+        searchResults.setValue(null);
+    }
+
+    /**
+     * Marca el error como mostrado, para no repetirlo tras un giro.
+     */
+    public void onErrorShown() {
+        errorMessage.setValue(null);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        executor.shutdownNow();
+    }
+}
@@ -16,6 +16,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
+import database.AsyncDatabase;
+import database.FavoritesSync;
 import database.SQLiteHelper;
 import database.User;
 import database.UsersSync;
@@ -33,6 +35,12 @@ public class AppLifecycleManager extends Application implements Application.Acti
         super.onCreate();
         registerActivityLifecycleCallbacks(this);
 
+        // Replicar en la nube los cambios en los favoritos, hechos desde cualquier pantalla
+        SQLiteHelper.getInstance(this).addOnFavoritesChangedListener(FavoritesSync.cloudMirror(this));
+
+        // Programar la actualización periódica de datos en segundo plano
+        BackgroundRefreshWorker.schedule(this);
+
         // Cargar el último usuario registrado en SharedPreferences
         SharedPreferences prefs = getSharedPreferences("AppPrefs", MODE_PRIVATE);
         lastUserId = prefs.getString("LAST_USER_ID", null);
@@ -97,39 +105,35 @@ public class AppLifecycleManager extends Application implements Application.Acti
     public void onActivityDestroyed(@NonNull Activity activity) {}
 
     /**
-     * Registra el login_time del usuario.
+     * Registra el login_time del usuario (en el hilo de la base de datos).
      */
     private void updateLoginTime(String userId) {
         String currentTime = getCurrentTime();
         SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-        User user = dbHelper.getUser(userId);
-
-        if (user == null) {
-            user = new User(userId, "", "", currentTime, "", "", "", "");
-            dbHelper.addUser(user);
-        } else {
-            user.setLoginTime(currentTime);
-            dbHelper.addUser(user);
-        }
+        AsyncDatabase.getInstance(this).execute(() -> {
+            // Solo se escribe la columna login_time; si el usuario no existe, se crea
+            if (!dbHelper.updateLoginTime(userId, currentTime)) {
+                dbHelper.addUser(new User(userId, "", "", currentTime, "", "", "", ""));
+            }
 
-        Log.d(TAG, "Login registrado para usuario: " + userId);
-        new UsersSync(this, userId).syncActivityLog();
+            Log.d(TAG, "Login registrado para usuario: " + userId);
+            new UsersSync(this, userId).syncActivityLog();
+        });
     }
 
     /**
-     * Registra el logout_time del usuario y permite volver a registrar logins.
+     * Registra el logout_time del usuario (en el hilo de la base de datos) y permite
+     * volver a registrar logins.
      */
     private void updateLogoutTime(String userId) {
         String currentTime = getCurrentTime();
         SQLiteHelper dbHelper = SQLiteHelper.getInstance(this);
-        User user = dbHelper.getUser(userId);
-
-        if (user != null) {
-            user.setLogoutTime(currentTime);
-            dbHelper.addUser(user);
-            Log.d(TAG, "Logout registrado para usuario: " + userId);
-            new UsersSync(this, userId).syncActivityLog();
-        }
+        AsyncDatabase.getInstance(this).execute(() -> {
+            if (dbHelper.updateLogoutTime(userId, currentTime)) {
+                Log.d(TAG, "Logout registrado para usuario: " + userId);
+                new UsersSync(this, userId).syncActivityLog();
+            }
+        });
 
         // Habilitar el booleano para permitir registrar logins nuevamente
         isLoginTimeUpdated = false;
@@ -0,0 +1,123 @@
+package utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import api.IMDBApiService;
+import api.MovieDetailsRepository;
+import database.Movie;
+import database.MovieDetails;
+import database.SQLiteHelper;
+
+/**
+ * Tarea periódica en segundo plano (WorkManager) que mantiene los datos locales al día
+ * para que las pantallas se sirvan casi siempre desde disco:
+ * <ul>
+ *     <li>Actualiza la copia local del ranking "top meter" y descarga sus pósters.</li>
+ *     <li>Revalida los detalles guardados de los favoritos del usuario actual.</li>
+ *     <li>Descarga a la caché en disco los pósters de esos favoritos.</li>
+ * </ul>
+ * Solo se ejecuta con red no medida (Wi-Fi) y mientras el dispositivo se está cargando.
+ */
+public class BackgroundRefreshWorker extends Worker {
+
+    private static final String TAG = "BackgroundRefreshWorker";
+    private static final String UNIQUE_WORK_NAME = "background_refresh";
+    private static final long REPEAT_INTERVAL_HOURS = 6; // Frecuencia de la actualización
+
+    public BackgroundRefreshWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Programa la actualización periódica. Si ya estaba programada se mantiene la existente.
+     *
+     * @param context Contexto de la aplicación.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                BackgroundRefreshWorker.class, REPEAT_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+        Log.d(TAG, "Actualización periódica en segundo plano programada.");
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        PosterCache posterCache = PosterCache.getInstance(context);
+        boolean topMeterFailed = false;
+
+        // 1. Ranking "top meter"
+        try {
+            List<Movie> topMovies = IMDBApiService.parseTopMeterTitles(new IMDBApiService().getTopMeterTitles());
+            if (!topMovies.isEmpty()) {
+                new TopMeterSnapshot(context).save(topMovies);
+                for (Movie movie : topMovies) {
+                    if (isStopped()) return Result.success();
+                    posterCache.fetch(movie.getPoster());
+                }
+                Log.d(TAG, "Ranking actualizado en segundo plano: " + topMovies.size() + " títulos.");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error al actualizar el ranking en segundo plano", e);
+            topMeterFailed = true;
+        }
+
+        // 2. Detalles y pósters de los favoritos del usuario actual
+        FirebaseUser firebaseUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (firebaseUser != null) {
+            MovieDetailsRepository detailsRepository = new MovieDetailsRepository(context);
+            List<Movie> favorites = SQLiteHelper.getInstance(context).getFavoriteMovies(firebaseUser.getUid());
+            int itemFailures = 0;
+            for (Movie movie : favorites) {
+                if (isStopped()) return Result.success();
+                try {
+                    MovieDetails details = detailsRepository.getCachedDetails(movie.getMovie_id());
+                    if (!detailsRepository.isFresh(details)) {
+                        details = detailsRepository.refreshMovieDetails(movie.getMovie_id());
+                    }
+                    posterCache.fetch(movie.getPoster());
+                    if (details.getPoster() != null) {
+                        posterCache.fetch(details.getPoster());
+                    }
+                } catch (Exception e) {
+                    // Un favorito que falla (p. ej. retirado de la API) no debe repetir toda la tarea:
+                    // se vuelve a intentar en la siguiente ejecución periódica
+                    Log.w(TAG, "No se pudo revalidar el favorito " + movie.getMovie_id(), e);
+                    itemFailures++;
+                }
+            }
+            Log.d(TAG, "Favoritos revalidados en segundo plano: " + (favorites.size() - itemFailures)
+                    + " de " + favorites.size());
+        }
+
+        // Solo se reintenta antes de tiempo (con la política de reintentos de WorkManager) si falló
+        // el ranking, que es una única petición compartida por todos
+        return topMeterFailed ? Result.retry() : Result.success();
+    }
+}
@@ -0,0 +1,214 @@
+package utils;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Caché en disco de los pósters de películas.
+ * <p>
+ * Cada póster se descarga una sola vez a la carpeta de caché de la aplicación y después
+ * se decodifica desde el archivo local. Así, las descargas anticipadas (prefetch) permiten
+ * que la pantalla de detalles muestre la imagen sin esperar a la red.
+ */
+public class PosterCache {
+
+    private static final String TAG = "PosterCache";
+    private static final String CACHE_DIR = "posters";               // Subcarpeta dentro de getCacheDir()
+    private static final long MAX_CACHE_BYTES = 50L * 1024 * 1024;  // Tamaño máximo de la caché (50 MB)
+    private static final String TMP_SUFFIX = ".tmp";                 // Descargas en curso
+    private static final long STALE_TMP_MS = 10L * 60 * 1000;       // Temporales más antiguos: restos de descargas interrumpidas
+
+    @SuppressLint("StaticFieldLeak")
+    private static PosterCache instance;
+
+    private final File cacheDir;
+
+    /**
+     * Obtiene la instancia única (Singleton) de PosterCache.
+     *
+     * @param context Contexto de la aplicación
+     * @return Instancia de PosterCache
+     */
+    public static synchronized PosterCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new PosterCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PosterCache(Context context) {
+        this.cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "No se pudo crear la carpeta de caché de pósters");
+        }
+    }
+
+    /**
+     * Indica si el póster ya está descargado en disco.
+     *
+     * @param imageUrl URL del póster
+     * @return True si existe en la caché
+     */
+    public boolean isCached(String imageUrl) {
+        return imageUrl != null && fileFor(imageUrl).exists();
+    }
+
+    /**
+     * Descarga el póster a disco si todavía no está en la caché.
+     *
+     * @param imageUrl URL del póster
+     * @return El archivo local o null si la descarga falló
+     */
+    public File fetch(String imageUrl) {
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return null;
+        }
+        File file = fileFor(imageUrl);
+        if (file.exists()) {
+            // Se actualiza la fecha para que el recorte de la caché conserve los más usados
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+
+        // Cada descarga usa su propio temporal: el mismo póster puede pedirse a la vez desde
+        // varios hilos (prefetch y pantalla de detalles) sin que uno trunque el archivo del otro
+        File tmpFile = null;
+        HttpURLConnection connection = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), TMP_SUFFIX, cacheDir);
+            connection = (HttpURLConnection) new URL(imageUrl).openConnection();
+            connection.setDoInput(true);
+            connection.connect();
+            try (InputStream inputStream = connection.getInputStream();
+                 OutputStream outputStream = new FileOutputStream(tmpFile)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                // Otra descarga del mismo póster puede haberlo dejado ya en la caché
+                if (file.exists()) return file;
+                Log.e(TAG, "No se pudo mover el póster descargado a la caché: " + imageUrl);
+                return null;
+            }
+            trimToSize();
+            return file;
+        } catch (Exception e) {
+            Log.e(TAG, "Error al descargar el póster: " + imageUrl, e);
+            if (tmpFile != null) tmpFile.delete();
+            return null;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    /**
+     * Obtiene el póster como Bitmap, escalado para no superar las dimensiones indicadas.
+     * Se lee desde disco y solo se descarga si no está en la caché.
+     *
+     * @param imageUrl  URL del póster
+     * @param reqWidth  Ancho máximo deseado
+     * @param reqHeight Alto máximo deseado
+     * @return El Bitmap decodificado o null si ocurrió un error
+     */
+    public Bitmap loadBitmap(String imageUrl, int reqWidth, int reqHeight) {
+        File file = fetch(imageUrl);
+        if (file == null) {
+            return null;
+        }
+        try {
+            // Primer pase: obtener dimensiones
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+
+            // Segundo pase: decodificar con inSampleSize calculado
+            options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            if (bitmap == null) {
+                // Archivo corrupto: se elimina para que se vuelva a descargar
+                file.delete();
+            }
+            return bitmap;
+        } catch (Exception e) {
+            Log.e(TAG, "Error al decodificar el póster: " + imageUrl, e);
+            return null;
+        }
+    }
+
+    /**
+     * Calcula un inSampleSize adecuado para decodificar la imagen.
+     */
+    public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        final int height = options.outHeight;
+        final int width = options.outWidth;
+        int inSampleSize = 1;
+        if (height > reqHeight || width > reqWidth) {
+            final int halfHeight = height / 2;
+            final int halfWidth = width / 2;
+            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Elimina los pósters usados hace más tiempo cuando la caché supera su tamaño máximo.
+     */
+    private synchronized void trimToSize() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) break;
+            // No se borran los temporales de descargas que siguen en curso
+            if (file.getName().endsWith(TMP_SUFFIX) && now - file.lastModified() < STALE_TMP_MS) continue;
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Devuelve el archivo de la caché correspondiente a una URL (nombre = SHA-1 de la URL).
+     */
+    private File fileFor(String imageUrl) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(imageUrl.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(cacheDir, name.toString());
+        } catch (Exception e) {
+            return new File(cacheDir, Integer.toHexString(imageUrl.hashCode()));
+        }
+    }
+}
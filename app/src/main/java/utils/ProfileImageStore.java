@@ -0,0 +1,245 @@
+package utils;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Almacén en disco de las imágenes de perfil.
+ * <p>
+ * Cada imagen se guarda reducida y con un tamaño máximo en bytes, junto con una miniatura
+ * para la cabecera del menú lateral. La fila del usuario en SQLite solo guarda una
+ * referencia corta ({@link #LOCAL_PREFIX} seguida de la fecha de guardado), de modo que
+ * leer un usuario no arrastra la imagen. A Firestore se sigue subiendo en Base64, pero ya
+ * reducida.
+ */
+public class ProfileImageStore {
+
+    private static final String TAG = "ProfileImageStore";
+    public static final String LOCAL_PREFIX = "local:"; // Prefijo de las referencias guardadas en users.image
+
+    private static final String IMAGE_DIR = "profile_images"; // Subcarpeta dentro de getFilesDir()
+    private static final int MAX_IMAGE_SIZE = 512;              // Lado máximo de la imagen (px)
+    private static final int MAX_IMAGE_BYTES = 96 * 1024;       // Tamaño máximo de la imagen comprimida
+    private static final int THUMBNAIL_SIZE = 128;              // Lado máximo de la miniatura (px)
+    private static final int INITIAL_QUALITY = 90;
+    private static final int MIN_QUALITY = 40;
+
+    @SuppressLint("StaticFieldLeak")
+    private static ProfileImageStore instance;
+
+    private final File imageDir;
+
+    /**
+     * Obtiene la instancia única (Singleton) de ProfileImageStore.
+     *
+     * @param context Contexto de la aplicación
+     * @return Instancia de ProfileImageStore
+     */
+    public static synchronized ProfileImageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ProfileImageStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Descarta la instancia única, para que cada prueba use la carpeta de archivos de su contexto.
+     */
+    @VisibleForTesting
+    public static synchronized void resetInstance() {
+        instance = null;
+    }
+
+    private ProfileImageStore(Context context) {
+        this.imageDir = new File(context.getFilesDir(), IMAGE_DIR);
+        if (!imageDir.exists() && !imageDir.mkdirs()) {
+            Log.e(TAG, "No se pudo crear la carpeta de imágenes de perfil");
+        }
+    }
+
+    /**
+     * Indica si el valor de users.image es una referencia a una imagen de este almacén.
+     */
+    public static boolean isLocalReference(String image) {
+        return image != null && image.startsWith(LOCAL_PREFIX);
+    }
+
+    /**
+     * Indica si el valor de users.image es una imagen en Base64 (formato antiguo y de Firestore)
+     * en lugar de una URL o una referencia local.
+     */
+    public static boolean isEmbeddedImage(String image) {
+        return image != null && !image.isEmpty() && !image.startsWith("http") && !isLocalReference(image);
+    }
+
+    /**
+     * Guarda la imagen de perfil de un usuario (reducida) y su miniatura, reemplazando las anteriores.
+     *
+     * @param userId ID del usuario
+     * @param bitmap Imagen original
+     * @return Referencia para guardar en users.image, o null si no se pudo guardar
+     */
+    public String save(String userId, Bitmap bitmap) {
+        if (userId == null || bitmap == null) return null;
+        Bitmap image = scaleDown(bitmap, MAX_IMAGE_SIZE);
+        Bitmap thumbnail = scaleDown(image, THUMBNAIL_SIZE);
+        boolean saved = write(imageFile(userId), compressToBudget(image))
+                && write(thumbnailFile(userId), compress(thumbnail, INITIAL_QUALITY));
+        return saved ? LOCAL_PREFIX + System.currentTimeMillis() : null;
+    }
+
+    /**
+     * Guarda en el almacén una imagen recibida en Base64. Se puede repetir sin dejar archivos
+     * de más: como en save(), los archivos del usuario se reemplazan.
+     *
+     * @param userId      ID del usuario
+     * @param base64Image Imagen codificada en Base64
+     * @return Referencia para guardar en users.image, o null si la imagen no es válida
+     */
+    public String importBase64(String userId, String base64Image) {
+        try {
+            byte[] bytes = Base64.decode(base64Image, Base64.DEFAULT);
+            // Primer pase: obtener dimensiones, para no decodificar la imagen a tamaño completo
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            options.inSampleSize = PosterCache.calculateInSampleSize(options, MAX_IMAGE_SIZE, MAX_IMAGE_SIZE);
+            options.inJustDecodeBounds = false;
+            Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            return save(userId, bitmap);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Imagen Base64 no válida para el usuario: " + userId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Devuelve la imagen guardada del usuario codificada en Base64, para subirla a Firestore.
+     *
+     * @param userId ID del usuario
+     * @return Imagen en Base64, o null si no hay imagen guardada
+     */
+    public String toBase64(String userId) {
+        byte[] bytes = read(imageFile(userId));
+        return bytes != null ? Base64.encodeToString(bytes, Base64.DEFAULT) : null;
+    }
+
+    /**
+     * Carga la imagen de perfil del usuario (no llamar desde el hilo principal).
+     */
+    public Bitmap loadImage(String userId) {
+        return decode(imageFile(userId));
+    }
+
+    /**
+     * Carga la miniatura de la imagen de perfil del usuario (no llamar desde el hilo principal).
+     */
+    public Bitmap loadThumbnail(String userId) {
+        Bitmap thumbnail = decode(thumbnailFile(userId));
+        return thumbnail != null ? thumbnail : loadImage(userId);
+    }
+
+    /**
+     * Reduce la imagen para que su lado mayor no supere el tamaño indicado.
+     */
+    private static Bitmap scaleDown(Bitmap bitmap, int maxSize) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width <= maxSize && height <= maxSize) return bitmap;
+        float scale = (float) maxSize / Math.max(width, height);
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
+    /**
+     * Comprime la imagen en JPEG bajando la calidad hasta que quepa en MAX_IMAGE_BYTES.
+     */
+    private static byte[] compressToBudget(Bitmap bitmap) {
+        int quality = INITIAL_QUALITY;
+        byte[] bytes = compress(bitmap, quality);
+        while (bytes.length > MAX_IMAGE_BYTES && quality > MIN_QUALITY) {
+            quality -= 10;
+            bytes = compress(bitmap, quality);
+        }
+        return bytes;
+    }
+
+    private static byte[] compress(Bitmap bitmap, int quality) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Escribe el archivo a través de uno temporal, para no dejar nunca una imagen a medias.
+     */
+    private boolean write(File file, byte[] bytes) {
+        if (!imageDir.exists() && !imageDir.mkdirs()) {
+            Log.e(TAG, "No se pudo crear la carpeta de imágenes de perfil");
+            return false;
+        }
+        File tmpFile = new File(imageDir, file.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(tmpFile)) {
+            outputStream.write(bytes);
+        } catch (Exception e) {
+            Log.e(TAG, "Error al guardar la imagen de perfil: " + file.getName(), e);
+            tmpFile.delete();
+            return false;
+        }
+        if (!tmpFile.renameTo(file)) {
+            Log.e(TAG, "No se pudo mover la imagen de perfil: " + file.getName());
+            tmpFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    private static byte[] read(File file) {
+        if (!file.exists()) return null;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } catch (Exception e) {
+            Log.e(TAG, "Error al leer la imagen de perfil: " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static Bitmap decode(File file) {
+        if (!file.exists()) return null;
+        return BitmapFactory.decodeFile(file.getAbsolutePath());
+    }
+
+    private File imageFile(String userId) {
+        return new File(imageDir, fileNameFor(userId) + ".jpg");
+    }
+
+    private File thumbnailFile(String userId) {
+        return new File(imageDir, fileNameFor(userId) + "_thumb.jpg");
+    }
+
+    /**
+     * Nombre de archivo seguro para un ID de usuario (los UID de Firebase son alfanuméricos).
+     */
+    private static String fileNameFor(String userId) {
+        return userId.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+}
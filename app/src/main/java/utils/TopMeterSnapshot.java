@@ -0,0 +1,87 @@
+package utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import database.Movie;
+
+/**
+ * Copia local compacta del último ranking "top meter" descargado correctamente.
+ * <p>
+ * Se guarda en SharedPreferences como un array JSON de ternas [id, póster, título],
+ * de modo que el Top 10 puede pintarse en cuanto se abre la aplicación, sin esperar
+ * a la llamada a RapidAPI.
+ */
+public class TopMeterSnapshot {
+
+    private static final String TAG = "TopMeterSnapshot";
+    private static final String PREFS_NAME = "TopMeterSnapshot";
+    private static final String KEY_MOVIES = "MOVIES";
+    private static final String KEY_SAVED_AT = "SAVED_AT";
+
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor de la clase.
+     *
+     * @param context Contexto de la aplicación.
+     */
+    public TopMeterSnapshot(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Lee el último ranking guardado.
+     *
+     * @return Lista de películas en orden de ranking (vacía si no hay copia).
+     */
+    public List<Movie> load() {
+        List<Movie> movies = new ArrayList<>();
+        String json = prefs.getString(KEY_MOVIES, null);
+        if (json == null) return movies;
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONArray entry = array.getJSONArray(i);
+                movies.add(new Movie(entry.getString(0), entry.getString(1), entry.getString(2)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Copia del ranking corrupta, se descarta", e);
+            movies.clear();
+        }
+        return movies;
+    }
+
+    /**
+     * Guarda el ranking recién descargado, sustituyendo la copia anterior.
+     *
+     * @param movies Lista de películas en orden de ranking.
+     */
+    public void save(List<Movie> movies) {
+        JSONArray array = new JSONArray();
+        for (Movie movie : movies) {
+            JSONArray entry = new JSONArray();
+            entry.put(movie.getMovie_id());
+            entry.put(movie.getPoster());
+            entry.put(movie.getTitle());
+            array.put(entry);
+        }
+        prefs.edit()
+                .putString(KEY_MOVIES, array.toString())
+                .putLong(KEY_SAVED_AT, System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Momento en que se guardó la copia (ms desde epoch), 0 si no existe.
+     */
+    public long getSavedAt() {
+        return prefs.getLong(KEY_SAVED_AT, 0);
+    }
+}
@@ -0,0 +1,145 @@
+package database;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resultados de {@link SQLiteHelperBenchmarkSuite} en JSON, para comparar el rendimiento
+ * de la base de datos entre commits. Cada prueba añade sus mediciones y el informe se
+ * reescribe completo al terminar cada una, así que queda al día aunque alguna falle.
+ */
+final class BenchmarkReport {
+
+    private final File file;
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+    private final Map<String, Result> results = new LinkedHashMap<>(); // Por nombre; se reemplazan al repetir
+    private final Map<String, List<DbMetrics.OperationStats>> dbMetrics = new LinkedHashMap<>(); // Por prueba
+
+    BenchmarkReport(File file) {
+        this.file = file;
+    }
+
+    void putParameter(String name, Object value) {
+        parameters.put(name, value);
+    }
+
+    /**
+     * Añade una medición.
+     *
+     * @param name       Nombre de la medición (por ejemplo, "bulk_insert").
+     * @param operations Operaciones (o filas) procesadas.
+     * @param nanos      Tiempo total.
+     * @param latencies  Latencia de cada operación en nanosegundos (puede ser null).
+     */
+    void add(String name, long operations, long nanos, long[] latencies) {
+        results.put(name, new Result(name, operations, nanos, latencies));
+    }
+
+    /**
+     * Conserva las métricas por operación que recogió SQLiteHelper durante una prueba.
+     */
+    void putDbMetrics(String test, List<DbMetrics.OperationStats> metrics) {
+        dbMetrics.put(test, new ArrayList<>(metrics));
+    }
+
+    /**
+     * Escribe el informe en disco.
+     */
+    void write() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("No se pudo crear la carpeta del informe: " + parent);
+        }
+        StringBuilder json = new StringBuilder("{\n  \"parameters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            json.append(separator).append("    ").append(quote(parameter.getKey())).append(": ")
+                    .append(parameter.getValue() instanceof Number ? parameter.getValue() : quote(String.valueOf(parameter.getValue())));
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"results\": [");
+        separator = "\n";
+        for (Result result : results.values()) {
+            json.append(separator).append("    ").append(result.toJson());
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"db_metrics\": {");
+        separator = "\n";
+        for (Map.Entry<String, List<DbMetrics.OperationStats>> test : dbMetrics.entrySet()) {
+            json.append(separator).append("    ").append(quote(test.getKey())).append(": [");
+            String statsSeparator = "\n";
+            for (DbMetrics.OperationStats stats : test.getValue()) {
+                json.append(statsSeparator).append(String.format(Locale.ROOT,
+                        "      {\"operation\": %s, \"count\": %d, \"avg_ms\": %.4f, \"max_ms\": %.4f, \"rows\": %d, "
+                                + "\"slow\": %d, \"main_thread\": %d, \"histogram\": %s}",
+                        quote(stats.getOperation()), stats.getCount(), stats.getAverageMillis(), stats.getMaxMillis(),
+                        stats.getRows(), stats.getSlowCount(), stats.getMainThreadCount(),
+                        Arrays.toString(stats.getHistogram())));
+                statsSeparator = ",\n";
+            }
+            json.append("\n    ]");
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Una medición: rendimiento total y, si se midió cada operación, percentiles de latencia.
+     */
+    static final class Result {
+        final String name;
+        final long operations;
+        final long nanos;
+        final long[] sortedLatencies;
+
+        Result(String name, long operations, long nanos, long[] latencies) {
+            this.name = name;
+            this.operations = operations;
+            this.nanos = nanos;
+            this.sortedLatencies = latencies != null ? latencies.clone() : null;
+            if (sortedLatencies != null) Arrays.sort(sortedLatencies);
+        }
+
+        double opsPerSecond() {
+            return nanos == 0 ? 0.0 : operations / (nanos / 1e9);
+        }
+
+        /**
+         * Percentil de latencia en milisegundos (NaN si no se midió cada operación).
+         */
+        double percentileMillis(double percentile) {
+            if (sortedLatencies == null || sortedLatencies.length == 0) return Double.NaN;
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1e6;
+        }
+
+        String toJson() {
+            StringBuilder json = new StringBuilder(String.format(Locale.ROOT,
+                    "{\"name\": %s, \"operations\": %d, \"seconds\": %.6f, \"ops_per_second\": %.1f",
+                    quote(name), operations, nanos / 1e9, opsPerSecond()));
+            if (sortedLatencies != null && sortedLatencies.length > 0) {
+                json.append(String.format(Locale.ROOT, ", \"p50_ms\": %.4f, \"p95_ms\": %.4f, \"p99_ms\": %.4f, \"max_ms\": %.4f",
+                        percentileMillis(50), percentileMillis(95), percentileMillis(99),
+                        sortedLatencies[sortedLatencies.length - 1] / 1e6));
+            }
+            return json.append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pruebas de rendimiento y carga de {@link SQLiteHelper} con miles de favoritos repartidos
+ * entre varios usuarios: inserciones sueltas y en bloque, consultas, paginación, lecturas
+ * y escrituras simultáneas y migración desde la primera versión del esquema.
+ * <p>
+ * Usa el SQLite nativo de Robolectric, así que se ejecuta en cualquier máquina con
+ * {@code ./gradlew :app:testDebugUnitTest --tests database.SQLiteHelperBenchmarkSuite -PdbBenchmark.enabled=true};
+ * sin esa propiedad sus pruebas se omiten, para no alargar las pruebas habituales.
+ * El tamaño se ajusta con {@code -PdbBenchmark.favorites=100000} (total de favoritos) y
+ * {@code -PdbBenchmark.users=8}. Los resultados se guardan en JSON en
+ * {@code app/build/reports/db-benchmark/report.json} (o en {@code -PdbBenchmark.report}),
+ * para comparar el rendimiento entre commits ({@code -PdbBenchmark.commit} lo anota).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperBenchmarkSuite {
+
+    private static final int FAVORITES = Integer.getInteger("dbBenchmark.favorites", 10_000);
+    private static final int USERS = Integer.getInteger("dbBenchmark.users", 4);
+    private static final int FAVORITES_PER_USER = FAVORITES / USERS;
+    private static final int BULK_CHUNK = 500;       // Favoritos por llamada a mergeFavoriteChanges
+    private static final int PAGE_SIZE = 30;         // Como FavoritesViewModel
+    private static final int LOOKUPS = 20_000;
+    private static final int LOOKUP_BATCH = 50;      // Casillas de una página de resultados
+    private static final int USER_LOOKUPS = 2_000;
+    private static final int READER_THREADS = 3;
+    private static final int CONCURRENT_WRITES = 2_000;
+
+    private static BenchmarkReport report;
+
+    @Rule
+    public final TestName testName = new TestName();
+
+    private Context context;
+    private SQLiteHelper dbHelper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        // Solo se ejecuta cuando se pide: no forma parte de las pruebas habituales
+        assumeTrue("Activar con -PdbBenchmark.enabled=true", Boolean.getBoolean("dbBenchmark.enabled"));
+        context = ApplicationProvider.getApplicationContext();
+        executor = Executors.newFixedThreadPool(READER_THREADS + 1);
+        if (report == null) {
+            report = new BenchmarkReport(new File(System.getProperty("dbBenchmark.report",
+                    "build/reports/db-benchmark/report.json")));
+            report.putParameter("commit", System.getProperty("dbBenchmark.commit", "unknown"));
+            report.putParameter("favorites", FAVORITES);
+            report.putParameter("users", USERS);
+            report.putParameter("bulk_chunk", BULK_CHUNK);
+            report.putParameter("page_size", PAGE_SIZE);
+            report.putParameter("reader_threads", READER_THREADS);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor == null) return; // Omitida
+        executor.shutdownNow();
+        if (dbHelper != null) {
+            report.putDbMetrics(testName.getMethodName(), dbHelper.getMetrics().snapshot());
+        }
+        SQLiteHelper.resetInstance();
+        report.write();
+    }
+
+    @Test
+    public void singleInsertsAndRemovals() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            addUsers();
+            long[] latencies = new long[FAVORITES];
+            long start = System.nanoTime();
+            for (int i = 0; i < FAVORITES; i++) {
+                int user = i % USERS;
+                int index = i / USERS;
+                long opStart = System.nanoTime();
+                dbHelper.addMovieToFavorites(userId(user), movieId(user, index), poster(index), title(index));
+                latencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("insert", FAVORITES, System.nanoTime() - start, latencies);
+            assertEquals(FAVORITES_PER_USER, countFavorites(userId(0)));
+
+            int removals = Math.min(FAVORITES_PER_USER, 2_000);
+            latencies = new long[removals];
+            start = System.nanoTime();
+            for (int i = 0; i < removals; i++) {
+                long opStart = System.nanoTime();
+                assertEquals(1, dbHelper.removeMovieFromFavorites(userId(0), movieId(0, i)));
+                latencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("remove", removals, System.nanoTime() - start, latencies);
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkInsert() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            addUsers();
+            long start = System.nanoTime();
+            long[] latencies = seedFavorites();
+            report.add("bulk_insert", FAVORITES_PER_USER * (long) USERS, System.nanoTime() - start, latencies);
+            for (int user = 0; user < USERS; user++) {
+                assertEquals(FAVORITES_PER_USER, countFavorites(userId(user)));
+            }
+
+            // Restaurar de nuevo la misma lista: todas las filas ya existen
+            start = System.nanoTime();
+            int inserted = dbHelper.mergeFavoriteChanges(userId(0), favoritesOf(0, 0, FAVORITES_PER_USER));
+            report.add("bulk_upsert_existing", FAVORITES_PER_USER, System.nanoTime() - start, null);
+            assertEquals(0, inserted);
+            return null;
+        });
+    }
+
+    @Test
+    public void lookups() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            addUsers();
+            seedFavorites();
+
+            // Primera consulta de cada usuario: carga sus favoritos en memoria
+            long[] latencies = new long[USERS];
+            long start = System.nanoTime();
+            for (int user = 0; user < USERS; user++) {
+                long opStart = System.nanoTime();
+                assertTrue(dbHelper.isMovieFavorite(userId(user), movieId(user, 0)));
+                latencies[user] = System.nanoTime() - opStart;
+            }
+            report.add("favorites_index_load", USERS, System.nanoTime() - start, latencies);
+
+            // Mitad favoritos y mitad no, en orden aleatorio
+            Random random = new Random(42);
+            latencies = new long[LOOKUPS];
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                int user = random.nextInt(USERS);
+                int index = random.nextInt(FAVORITES_PER_USER * 2);
+                long opStart = System.nanoTime();
+                assertEquals(index < FAVORITES_PER_USER, dbHelper.isMovieFavorite(userId(user), movieId(user, index)));
+                latencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("is_movie_favorite", LOOKUPS, System.nanoTime() - start, latencies);
+
+            int batches = LOOKUPS / LOOKUP_BATCH;
+            latencies = new long[batches];
+            start = System.nanoTime();
+            for (int batch = 0; batch < batches; batch++) {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < LOOKUP_BATCH; i++) {
+                    ids.add(movieId(0, random.nextInt(FAVORITES_PER_USER * 2)));
+                }
+                long opStart = System.nanoTime();
+                assertNotNull(dbHelper.getFavoriteMovieIds(userId(0), ids));
+                latencies[batch] = System.nanoTime() - opStart;
+            }
+            report.add("get_favorite_movie_ids_x" + LOOKUP_BATCH, batches, System.nanoTime() - start, latencies);
+
+            // Consultas que siempre llegan a SQLite
+            latencies = new long[USER_LOOKUPS];
+            start = System.nanoTime();
+            for (int i = 0; i < USER_LOOKUPS; i++) {
+                long opStart = System.nanoTime();
+                assertFalse(dbHelper.doesUserExist("missing-" + i));
+                latencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("does_user_exist_miss", USER_LOOKUPS, System.nanoTime() - start, latencies);
+
+            latencies = new long[USER_LOOKUPS];
+            start = System.nanoTime();
+            for (int i = 0; i < USER_LOOKUPS; i++) {
+                long opStart = System.nanoTime();
+                assertNotNull(dbHelper.getUserHeader(userId(i % USERS)));
+                latencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("get_user_header", USER_LOOKUPS, System.nanoTime() - start, latencies);
+            return null;
+        });
+    }
+
+    @Test
+    public void paging() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            addUsers();
+            seedFavorites();
+
+            List<Long> latencies = new ArrayList<>();
+            int rows = 0;
+            long start = System.nanoTime();
+            FavoritesPage.Key after = null;
+            do {
+                long opStart = System.nanoTime();
+                FavoritesPage page = dbHelper.getFavoritesNewestFirst(userId(0), after, PAGE_SIZE);
+                latencies.add(System.nanoTime() - opStart);
+                rows += page.getMovies().size();
+                after = page.getNextKey();
+            } while (after != null);
+            report.add("page_newest_first", latencies.size(), System.nanoTime() - start, toArray(latencies));
+            assertEquals(FAVORITES_PER_USER, rows);
+
+            latencies.clear();
+            rows = 0;
+            start = System.nanoTime();
+            after = null;
+            do {
+                long opStart = System.nanoTime();
+                FavoritesPage page = dbHelper.getFavoritesByTitle(userId(0), null, after, PAGE_SIZE);
+                latencies.add(System.nanoTime() - opStart);
+                rows += page.getMovies().size();
+                after = page.getNextKey();
+            } while (after != null);
+            report.add("page_by_title", latencies.size(), System.nanoTime() - start, toArray(latencies));
+            assertEquals(FAVORITES_PER_USER, rows);
+
+            // Primera página filtrada por prefijo, como al escribir en el buscador
+            long[] prefixLatencies = new long[100];
+            start = System.nanoTime();
+            for (int i = 0; i < prefixLatencies.length; i++) {
+                long opStart = System.nanoTime();
+                dbHelper.getFavoritesByTitle(userId(i % USERS), "Movie " + (i % 10), null, PAGE_SIZE);
+                prefixLatencies[i] = System.nanoTime() - opStart;
+            }
+            report.add("page_by_title_prefix", prefixLatencies.length, System.nanoTime() - start, prefixLatencies);
+
+            int rounds = 20;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                assertEquals(FAVORITES_PER_USER, dbHelper.getFavoriteMovies(userId(i % USERS)).size());
+            }
+            report.add("get_favorite_movies_full", rounds, System.nanoTime() - start, null);
+            return null;
+        });
+    }
+
+    @Test
+    public void concurrentReadsAndWrites() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            addUsers();
+            seedFavorites();
+            return null;
+        });
+
+        // Un hilo escribe en los favoritos del usuario 0 mientras otros paginan los del usuario 1
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<long[]>> readers = new ArrayList<>();
+        for (int thread = 0; thread < READER_THREADS; thread++) {
+            readers.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                FavoritesPage.Key after = null;
+                while (writing.get()) {
+                    long opStart = System.nanoTime();
+                    FavoritesPage page = dbHelper.getFavoritesNewestFirst(userId(1), after, PAGE_SIZE);
+                    latencies.add(System.nanoTime() - opStart);
+                    after = page.getNextKey(); // Al llegar al final se vuelve a empezar
+                }
+                return toArray(latencies);
+            }));
+        }
+        long start = System.nanoTime();
+        long[] writeLatencies = executor.submit(() -> {
+            try {
+                long[] latencies = new long[CONCURRENT_WRITES];
+                for (int i = 0; i < CONCURRENT_WRITES; i++) {
+                    String movieId = movieId(0, FAVORITES_PER_USER + i / 2);
+                    long opStart = System.nanoTime();
+                    if (i % 2 == 0) {
+                        dbHelper.addMovieToFavorites(userId(0), movieId, poster(i), title(i));
+                    } else {
+                        dbHelper.removeMovieFromFavorites(userId(0), movieId);
+                    }
+                    latencies[i] = System.nanoTime() - opStart;
+                }
+                return latencies;
+            } finally {
+                writing.set(false);
+            }
+        }).get(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+
+        List<Long> readLatencies = new ArrayList<>();
+        for (Future<long[]> reader : readers) {
+            for (long latency : reader.get(1, TimeUnit.MINUTES)) {
+                readLatencies.add(latency);
+            }
+        }
+        report.add("concurrent_writes", CONCURRENT_WRITES, elapsed, writeLatencies);
+        report.add("concurrent_page_reads", readLatencies.size(), elapsed, toArray(readLatencies));
+        onBackground(() -> {
+            assertEquals(FAVORITES_PER_USER, countFavorites(userId(0)));
+            return null;
+        });
+    }
+
+    @Test
+    public void migrationFromFirstVersion() throws Exception {
+        File path = context.getDatabasePath(SchemaFixtures.DATABASE_NAME);
+        SchemaFixtures.createDatabase(path, SchemaFixtures.OLDEST_VERSION);
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.beginTransaction();
+            for (int user = 0; user < USERS; user++) {
+                ContentValues userValues = new ContentValues();
+                userValues.put("user_id", userId(user));
+                userValues.put("name", "Bench " + user);
+                db.insertOrThrow("users", null, userValues);
+                for (int i = 0; i < FAVORITES_PER_USER; i++) {
+                    ContentValues values = new ContentValues();
+                    values.put("user_id", userId(user));
+                    values.put("movie_id", movieId(user, i));
+                    values.put("poster", poster(i));
+                    values.put("title", i % 10 == 0 ? null : title(i)); // Algunos sin título, como en v1
+                    db.insertOrThrow("favorites", null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            db.close();
+        }
+
+        dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            long start = System.nanoTime();
+            SQLiteDatabase migrated = dbHelper.getWritableDatabase(); // Ejecuta todas las migraciones
+            long elapsed = System.nanoTime() - start;
+            report.add("migration_v1_to_current_rows", FAVORITES_PER_USER * (long) USERS, elapsed, null);
+            assertTrue(migrated.getVersion() > SchemaFixtures.OLDEST_VERSION);
+            assertEquals(FAVORITES_PER_USER, countFavorites(userId(0)));
+            assertEquals(PAGE_SIZE, dbHelper.getFavoritesByTitle(userId(0), null, null, PAGE_SIZE).getMovies().size());
+            return null;
+        });
+    }
+
+    private void addUsers() {
+        for (int user = 0; user < USERS; user++) {
+            assertTrue(dbHelper.addUser(new User(userId(user), "Bench " + user, userId(user) + "@example.com",
+                    null, null, "", "", "")));
+        }
+    }
+
+    /**
+     * Inserta los favoritos de todos los usuarios en bloques, como al restaurar desde la nube.
+     *
+     * @return Latencia de cada bloque.
+     */
+    private long[] seedFavorites() {
+        int chunksPerUser = (FAVORITES_PER_USER + BULK_CHUNK - 1) / BULK_CHUNK;
+        long[] latencies = new long[chunksPerUser * USERS];
+        int chunk = 0;
+        for (int user = 0; user < USERS; user++) {
+            for (int from = 0; from < FAVORITES_PER_USER; from += BULK_CHUNK) {
+                List<FavoriteChange> changes = favoritesOf(user, from, Math.min(from + BULK_CHUNK, FAVORITES_PER_USER));
+                long opStart = System.nanoTime();
+                assertEquals(changes.size(), dbHelper.mergeFavoriteChanges(userId(user), changes));
+                latencies[chunk++] = System.nanoTime() - opStart;
+            }
+        }
+        return latencies;
+    }
+
+    private static List<FavoriteChange> favoritesOf(int user, int from, int to) {
+        List<FavoriteChange> changes = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            long time = i + 1L; // Un favorito por milisegundo, en orden
+            changes.add(new FavoriteChange(movieId(user, i), poster(i), title(i), time, time, false));
+        }
+        return changes;
+    }
+
+    private int countFavorites(String userId) {
+        try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM favorites WHERE user_id = ? AND deleted = 0", new String[]{userId})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static String userId(int user) {
+        return "bench-user-" + user;
+    }
+
+    private static String movieId(int user, int index) {
+        return String.format(Locale.ROOT, "tt%d%07d", user + 1, index);
+    }
+
+    private static String poster(int index) {
+        return "https://example.com/" + index + ".jpg";
+    }
+
+    /**
+     * Títulos en un orden distinto al de inserción, para que ordenar por título no sea trivial.
+     */
+    private static String title(int index) {
+        return "Movie " + ((index * 7919L) % 100_003);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(10, TimeUnit.MINUTES);
+    }
+}
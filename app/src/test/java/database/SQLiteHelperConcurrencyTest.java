@@ -0,0 +1,130 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de carga de {@link SQLiteHelper} en modo WAL: mientras una sincronización escribe
+ * miles de favoritos, varios hilos leen los favoritos de otro usuario sin quedarse bloqueados.
+ * <p>
+ * Todas las operaciones se hacen fuera del hilo de la prueba, que en Robolectric es el
+ * hilo principal (SQLiteHelper no permite acceder a disco desde él). Se usa una
+ * Application vacía para no programar trabajos ni sincronizaciones al arrancar.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperConcurrencyTest {
+
+    private static final String WRITER_USER = "writer-user"; // Usuario cuyos favoritos se sincronizan
+    private static final String READER_USER = "reader-user"; // Usuario cuyos favoritos muestra la UI
+    private static final int SYNC_FAVORITES = 2000;
+    private static final int READER_FAVORITES = 200;
+    private static final int READER_THREADS = 3;
+
+    private SQLiteHelper dbHelper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(ApplicationProvider.getApplicationContext());
+        executor = Executors.newFixedThreadPool(READER_THREADS + 1);
+        onBackground(() -> {
+            dbHelper.addUser(new User(WRITER_USER, "Writer", "writer@example.com", null, null, "", "", ""));
+            dbHelper.addUser(new User(READER_USER, "Reader", "reader@example.com", null, null, "", "", ""));
+            for (int i = 0; i < READER_FAVORITES; i++) {
+                dbHelper.addMovieToFavorites(READER_USER, "tt" + (1000000 + i), "https://example.com/" + i + ".jpg", "Reader " + i);
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SQLiteHelper.resetInstance();
+    }
+
+    @Test
+    public void usesWriteAheadLogging() throws Exception {
+        String journalMode = onBackground(() -> {
+            try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery("PRAGMA journal_mode", null)) {
+                cursor.moveToFirst();
+                return cursor.getString(0);
+            }
+        });
+        assertEquals("wal", journalMode.toLowerCase(Locale.ROOT));
+    }
+
+    @Test
+    public void readsProgressWhileBulkSyncWrites() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch readersStarted = new CountDownLatch(READER_THREADS);
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < READER_THREADS; r++) {
+            readers.add(executor.submit(() -> {
+                readersStarted.countDown();
+                while (writing.get()) {
+                    assertEquals(READER_FAVORITES, dbHelper.getFavoriteMovies(READER_USER).size());
+                    reads.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        assertTrue(readersStarted.await(1, TimeUnit.MINUTES));
+
+        // Sincronización: una inserción por favorito, como hace FavoritesSync
+        long start = System.nanoTime();
+        Future<?> writer = executor.submit(() -> {
+            try {
+                for (int i = 0; i < SYNC_FAVORITES; i++) {
+                    dbHelper.addMovieToFavorites(WRITER_USER, "tt" + (2000000 + i), "https://example.com/w" + i + ".jpg", "Sync " + i);
+                }
+            } finally {
+                writing.set(false);
+            }
+            return null;
+        });
+        writer.get(5, TimeUnit.MINUTES);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        for (Future<?> reader : readers) {
+            reader.get(1, TimeUnit.MINUTES); // Propaga cualquier fallo de los lectores
+        }
+
+        assertTrue("Los lectores no pudieron leer durante la sincronización", reads.get() > 0);
+        assertEquals(SYNC_FAVORITES, (int) onBackground(() -> dbHelper.getFavoriteMovies(WRITER_USER).size()));
+        System.out.printf(Locale.ROOT, "WAL: %d escrituras en %d ms; %d lecturas concurrentes (%.1f lecturas/s)%n",
+                SYNC_FAVORITES, elapsedMs, reads.get(), reads.get() * 1000.0 / Math.max(1, elapsedMs));
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,244 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pruebas de la parte local de la sincronización incremental de favoritos: marcas de
+ * borrado, aplicación de los cambios de la nube (gana la versión más reciente), cambios
+ * pendientes de subir, marca de agua de descarga y purga de las marcas de borrado ya subidas.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperFavoritesMergeTest {
+
+    private static final String USER_ID = "merge-user";
+
+    private SQLiteHelper dbHelper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(ApplicationProvider.getApplicationContext());
+        executor = Executors.newSingleThreadExecutor();
+        onBackground(() -> dbHelper.addUser(new User(USER_ID, "Merge", "merge@example.com", null, null, "", "", "")));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SQLiteHelper.resetInstance();
+    }
+
+    @Test
+    public void removingLeavesATombstoneThatCanBeRevived() throws Exception {
+        onBackground(() -> {
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000001", null, "One");
+            assertEquals(1, dbHelper.removeMovieFromFavorites(USER_ID, "tt0000001"));
+
+            assertFalse(dbHelper.isMovieFavorite(USER_ID, "tt0000001"));
+            assertTrue(dbHelper.getFavoriteMovies(USER_ID).isEmpty());
+            FavoriteChange tombstone = dbHelper.getFavoriteChange(USER_ID, "tt0000001");
+            assertNotNull(tombstone);
+            assertTrue(tombstone.isDeleted());
+            // Eliminarlo otra vez no cambia nada
+            assertEquals(0, dbHelper.removeMovieFromFavorites(USER_ID, "tt0000001"));
+
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000001", null, "One");
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000001"));
+            FavoriteChange revived = dbHelper.getFavoriteChange(USER_ID, "tt0000001");
+            assertFalse(revived.isDeleted());
+            assertTrue(revived.getUpdatedAt() >= tombstone.getUpdatedAt());
+            return null;
+        });
+    }
+
+    @Test
+    public void mergeKeepsTheMostRecentVersion() throws Exception {
+        onBackground(() -> {
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000001", null, "Local");
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000002", null, "Local");
+            long localUpdatedAt = dbHelper.getFavoriteChange(USER_ID, "tt0000001").getUpdatedAt();
+
+            List<FavoriteChange> cloud = Arrays.asList(
+                    // Más reciente en la nube: se elimina en local
+                    new FavoriteChange("tt0000001", null, "Cloud", 1, localUpdatedAt + 1000, true),
+                    // Más antiguo en la nube: se ignora
+                    new FavoriteChange("tt0000002", null, "Cloud", 1, 1, true),
+                    // Solo en la nube: se inserta, también si es una marca de borrado
+                    new FavoriteChange("tt0000003", "https://example.com/3.jpg", "Cloud", 5, 5, false),
+                    new FavoriteChange("tt0000004", null, "Cloud", 6, 6, true));
+            assertEquals(3, dbHelper.mergeFavoriteChanges(USER_ID, cloud));
+
+            assertFalse(dbHelper.isMovieFavorite(USER_ID, "tt0000001"));
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000002"));
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000003"));
+            assertFalse(dbHelper.isMovieFavorite(USER_ID, "tt0000004"));
+            assertEquals("Local", dbHelper.getFavoriteChange(USER_ID, "tt0000002").getTitle());
+            assertTrue(dbHelper.getFavoriteChange(USER_ID, "tt0000004").isDeleted());
+
+            // Aplicar los mismos cambios otra vez no cambia nada
+            assertEquals(0, dbHelper.mergeFavoriteChanges(USER_ID, cloud));
+            return null;
+        });
+    }
+
+    @Test
+    public void lateChangeWithOlderTimestampIsStillApplied() throws Exception {
+        onBackground(() -> {
+            dbHelper.mergeFavoriteChanges(USER_ID, Arrays.asList(
+                    new FavoriteChange("tt0000001", null, "Old", 5, 5, false)));
+            // La descarga ya va por delante (hora del servidor) de la fecha del cambio
+            dbHelper.advanceCloudWatermark(USER_ID, 1_000_000);
+
+            // Un dispositivo que estuvo sin conexión sube tarde cambios hechos antes
+            List<FavoriteChange> late = Arrays.asList(
+                    new FavoriteChange("tt0000001", null, "Offline", 5, 10, true),
+                    new FavoriteChange("tt0000002", null, "Offline", 8, 8, false));
+            assertEquals(2, dbHelper.mergeFavoriteChanges(USER_ID, late));
+
+            assertFalse(dbHelper.isMovieFavorite(USER_ID, "tt0000001"));
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000002"));
+            assertEquals(1_000_000, dbHelper.getCloudWatermark(USER_ID));
+            return null;
+        });
+    }
+
+    @Test
+    public void onlyLocalChangesArePendingUntilUploaded() throws Exception {
+        onBackground(() -> {
+            // Lo descargado de la nube ya está allí, aunque venga con el reloj de otro dispositivo
+            dbHelper.mergeFavoriteChanges(USER_ID, Arrays.asList(
+                    new FavoriteChange("tt0000001", null, "Cloud", 10, Long.MAX_VALUE / 2, false),
+                    new FavoriteChange("tt0000002", null, "Cloud", 20, 30, true)));
+            assertTrue(dbHelper.getPendingFavoriteUploads(USER_ID).isEmpty());
+
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000003", null, "Local");
+            assertEquals(1, dbHelper.removeMovieFromFavorites(USER_ID, "tt0000001"));
+            List<FavoriteChange> pending = dbHelper.getPendingFavoriteUploads(USER_ID);
+            assertEquals(2, pending.size());
+
+            // Se vuelve a añadir mientras se subía: la versión subida ya no es la actual
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000001", null, "Local");
+            assertEquals(1, dbHelper.markFavoritesUploaded(USER_ID, pending));
+            List<FavoriteChange> stillPending = dbHelper.getPendingFavoriteUploads(USER_ID);
+            assertEquals(1, stillPending.size());
+            assertEquals("tt0000001", stillPending.get(0).getMovieId());
+            assertFalse(stillPending.get(0).isDeleted());
+
+            assertEquals(1, dbHelper.markFavoritesUploaded(USER_ID, stillPending));
+            assertTrue(dbHelper.getPendingFavoriteUploads(USER_ID).isEmpty());
+            return null;
+        });
+    }
+
+    @Test
+    public void cloudWatermarkOnlyMovesForward() throws Exception {
+        onBackground(() -> {
+            assertEquals(0, dbHelper.getCloudWatermark(USER_ID));
+
+            dbHelper.advanceCloudWatermark(USER_ID, 100);
+            dbHelper.advanceCloudWatermark(USER_ID, 50);
+            assertEquals(100, dbHelper.getCloudWatermark(USER_ID));
+            return null;
+        });
+    }
+
+    @Test
+    public void purgeOnlyRemovesUploadedTombstones() throws Exception {
+        onBackground(() -> {
+            dbHelper.mergeFavoriteChanges(USER_ID, Arrays.asList(
+                    new FavoriteChange("tt0000001", null, "Uploaded", 10, 10, true),
+                    new FavoriteChange("tt0000003", null, "Favorite", 5, 5, false)));
+            // Eliminación local todavía no subida
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000002", null, "Pending");
+            dbHelper.removeMovieFromFavorites(USER_ID, "tt0000002");
+
+            assertEquals(1, dbHelper.purgeFavoriteTombstones(USER_ID, System.currentTimeMillis() + 1000));
+            assertNull(dbHelper.getFavoriteChange(USER_ID, "tt0000001"));
+            assertNotNull(dbHelper.getFavoriteChange(USER_ID, "tt0000002"));
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000003"));
+            assertEquals(1, dbHelper.getFavoriteMovies(USER_ID).size());
+            return null;
+        });
+    }
+
+    @Test
+    public void onlyUploadedFavoritesAreRemovedWhenMissingFromCloud() throws Exception {
+        onBackground(() -> {
+            dbHelper.mergeFavoriteChanges(USER_ID, Arrays.asList(
+                    new FavoriteChange("tt0000001", null, "Cloud", 5, 5, false),
+                    new FavoriteChange("tt0000002", null, "Cloud", 6, 6, false)));
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000003", null, "Local"); // Aún sin subir
+            Set<String> uploaded = dbHelper.getUploadedFavoriteIds(USER_ID);
+            assertEquals(new HashSet<>(Arrays.asList("tt0000001", "tt0000002")), uploaded);
+
+            // tt0000002 se modifica en local después de leer los IDs: su cambio se conserva
+            dbHelper.removeMovieFromFavorites(USER_ID, "tt0000002");
+            assertEquals(1, dbHelper.removeFavoritesMissingFromCloud(USER_ID,
+                    Arrays.asList("tt0000001", "tt0000002", "tt0000003")));
+
+            assertNull(dbHelper.getFavoriteChange(USER_ID, "tt0000001"));
+            assertTrue(dbHelper.getFavoriteChange(USER_ID, "tt0000002").isDeleted());
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000003"));
+            assertEquals(2, dbHelper.getPendingFavoriteUploads(USER_ID).size());
+            return null;
+        });
+    }
+
+    @Test
+    public void lastFullPullCanMoveBackwards() throws Exception {
+        onBackground(() -> {
+            assertEquals(0, dbHelper.getLastFullPull(USER_ID));
+            dbHelper.setLastFullPull(USER_ID, 100);
+            dbHelper.setLastFullPull(USER_ID, 50); // El reloj del dispositivo se atrasó
+            assertEquals(50, dbHelper.getLastFullPull(USER_ID));
+            return null;
+        });
+    }
+
+    @Test
+    public void loggingInAgainKeepsFavoritesAndSyncState() throws Exception {
+        onBackground(() -> {
+            dbHelper.addMovieToFavorites(USER_ID, "tt0000001", null, "One");
+            dbHelper.advanceCloudWatermark(USER_ID, 100);
+
+            // Cada inicio de sesión vuelve a guardar el usuario con los datos nuevos
+            assertTrue(dbHelper.addUser(new User(USER_ID, "Renamed", "merge@example.com", "login", null, "", "", "")));
+
+            assertEquals("Renamed", dbHelper.getUser(USER_ID).getName());
+            assertTrue(dbHelper.isMovieFavorite(USER_ID, "tt0000001"));
+            assertEquals(100, dbHelper.getCloudWatermark(USER_ID));
+            return null;
+        });
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,202 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import utils.ProfileImageStore;
+
+/**
+ * Pruebas de las migraciones de {@link SQLiteHelper}: cada paso debe producir el esquema de
+ * la versión siguiente, y abrir una base de datos antigua debe conservar los usuarios,
+ * sus imágenes de perfil y sus favoritos en lugar de borrarlos.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperMigrationTest {
+
+    private static final int CURRENT_VERSION = 7;
+
+    private Context context;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        ProfileImageStore.resetInstance(); // Cada prueba tiene su propia carpeta de archivos
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SQLiteHelper.resetInstance();
+    }
+
+    @Test
+    public void eachStepProducesTheNextSchema() {
+        SQLiteHelper helper = SQLiteHelper.getInstance(context);
+        for (int version = SchemaFixtures.OLDEST_VERSION + 1; version <= CURRENT_VERSION; version++) {
+            SQLiteDatabase migrated = SQLiteDatabase.create(null);
+            SQLiteDatabase expected = SQLiteDatabase.create(null);
+            try {
+                SchemaFixtures.createSchema(migrated, version - 1);
+                helper.onUpgrade(migrated, version - 1, version);
+                if (version == CURRENT_VERSION) {
+                    helper.onCreate(expected);
+                } else {
+                    SchemaFixtures.createSchema(expected, version);
+                }
+                assertEquals("Migración a la versión " + version,
+                        SchemaFixtures.describeSchema(expected), SchemaFixtures.describeSchema(migrated));
+            } finally {
+                migrated.close();
+                expected.close();
+            }
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1KeepsData() throws Exception {
+        assertUpgradeKeepsData(1);
+    }
+
+    @Test
+    public void upgradeFromVersion2KeepsData() throws Exception {
+        assertUpgradeKeepsData(2);
+    }
+
+    @Test
+    public void upgradeFromVersion3KeepsData() throws Exception {
+        assertUpgradeKeepsData(3);
+    }
+
+    @Test
+    public void upgradeFromVersion4KeepsData() throws Exception {
+        assertUpgradeKeepsData(4);
+    }
+
+    @Test
+    public void upgradeFromVersion5KeepsData() throws Exception {
+        assertUpgradeKeepsData(5);
+    }
+
+    @Test
+    public void upgradeFromVersion6KeepsData() throws Exception {
+        assertUpgradeKeepsData(6);
+    }
+
+    @Test
+    public void retryingARolledBackUpgradeLeavesNoExtraImageFiles() throws Exception {
+        File path = context.getDatabasePath(SchemaFixtures.DATABASE_NAME);
+        SchemaFixtures.createDatabase(path, 5);
+        // Primer intento: las imágenes se escriben en disco pero la transacción se deshace
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.beginTransaction();
+            try {
+                SQLiteHelper.getInstance(context).onUpgrade(db, 5, CURRENT_VERSION);
+            } finally {
+                db.endTransaction();
+            }
+            assertEquals(5, db.getVersion());
+        } finally {
+            db.close();
+        }
+        SQLiteHelper.resetInstance();
+
+        SQLiteHelper dbHelper = SQLiteHelper.getInstance(context);
+        onBackground(() -> {
+            assertTrue(ProfileImageStore.isLocalReference(dbHelper.getUser(SchemaFixtures.USER_ID).getImage()));
+            return null;
+        });
+        // Solo la imagen y la miniatura del único usuario con imagen en Base64
+        String[] files = new File(context.getFilesDir(), "profile_images").list();
+        assertNotNull(files);
+        assertEquals(2, files.length);
+    }
+
+    /**
+     * Crea una base de datos con el esquema y los datos de la versión indicada, la abre con
+     * SQLiteHelper (que la migra a la versión actual) y comprueba que no se ha perdido nada.
+     */
+    private void assertUpgradeKeepsData(int version) throws Exception {
+        SchemaFixtures.createDatabase(context.getDatabasePath(SchemaFixtures.DATABASE_NAME), version);
+        SQLiteHelper dbHelper = SQLiteHelper.getInstance(context);
+
+        onBackground(() -> {
+            assertEquals(CURRENT_VERSION, dbHelper.getReadableDatabase().getVersion());
+
+            User user = dbHelper.getUser(SchemaFixtures.USER_ID);
+            assertNotNull(user);
+            assertEquals("Fixture", user.getName());
+            assertTrue(dbHelper.doesUserExist(SchemaFixtures.OTHER_USER_ID));
+
+            // La imagen en Base64 pasa al almacén de imágenes; las URL se conservan
+            if (version < 6) {
+                assertTrue(ProfileImageStore.isLocalReference(user.getImage()));
+                assertNotNull(ProfileImageStore.getInstance(context).toBase64(SchemaFixtures.USER_ID));
+            }
+            assertEquals("https://example.com/other.jpg", dbHelper.getUser(SchemaFixtures.OTHER_USER_ID).getImage());
+
+            // Los favoritos antiguos conservan su orden de inserción (los más recientes primero)
+            List<String> newestFirst = new ArrayList<>();
+            for (Movie movie : dbHelper.getFavoritesNewestFirst(SchemaFixtures.USER_ID, null, 10).getMovies()) {
+                newestFirst.add(movie.getMovie_id());
+            }
+            List<String> expected = new ArrayList<>();
+            for (int i = SchemaFixtures.FAVORITE_IDS.length - 1; i >= 0; i--) {
+                expected.add(SchemaFixtures.FAVORITE_IDS[i]);
+            }
+            assertEquals(expected, newestFirst);
+            assertEquals(SchemaFixtures.FAVORITE_IDS.length,
+                    dbHelper.getFavoritesByTitle(SchemaFixtures.USER_ID, null, null, 10).getMovies().size());
+            // Y quedan pendientes de subir en la siguiente sincronización
+            assertEquals(SchemaFixtures.FAVORITE_IDS.length,
+                    dbHelper.getPendingFavoriteUploads(SchemaFixtures.USER_ID).size());
+
+            // Un favorito nuevo queda por delante de los migrados
+            dbHelper.addMovieToFavorites(SchemaFixtures.USER_ID, "tt9999999", "https://example.com/new.jpg", "New");
+            assertEquals("tt9999999",
+                    dbHelper.getFavoritesNewestFirst(SchemaFixtures.USER_ID, null, 1).getMovies().get(0).getMovie_id());
+
+            if (version >= 2) {
+                assertEquals(1, dbHelper.searchFavoriteMovies(SchemaFixtures.USER_ID, "Shawshank", 10).size());
+            }
+            if (version >= 3) {
+                assertNotNull(dbHelper.getMovieDetails("tt0111161"));
+            }
+            if (version >= 4) {
+                assertEquals("278", dbHelper.getLinkedMovieId("tt0111161"));
+            }
+            return null;
+        });
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,73 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+
+import android.app.Application;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pruebas del índice de búsqueda de {@link SQLiteHelper}: cada película tiene una sola fila,
+ * que se reemplaza al volver a indexarla sin afectar a otras películas.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperSearchTest {
+
+    private static final String USER_ID = "search-user";
+
+    private SQLiteHelper dbHelper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(ApplicationProvider.getApplicationContext());
+        executor = Executors.newSingleThreadExecutor();
+        onBackground(() -> dbHelper.addUser(new User(USER_ID, "Search", "search@example.com", null, null, "", "", "")));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SQLiteHelper.resetInstance();
+    }
+
+    @Test
+    public void reindexingReplacesOnlyThatMovie() throws Exception {
+        onBackground(() -> {
+            // Mismo número con Movie.stableIdOf, pero películas distintas
+            dbHelper.addMovieToFavorites(USER_ID, "tt0120338", null, "Titanic");
+            dbHelper.addMovieToFavorites(USER_ID, "tt120338", null, "Other");
+            dbHelper.indexMovieForSearch("tt0120338", "Titanic", "Ship sinks", null);
+            dbHelper.indexMovieForSearch("tt120338", "Other", "Ship sails", null);
+            assertEquals(2, dbHelper.searchFavoriteMovies(USER_ID, "ship", 10).size());
+
+            // Volver a indexar reemplaza la fila de esa película
+            dbHelper.indexMovieForSearch("tt0120338", "Titanic", "Iceberg", null);
+            List<Movie> ship = dbHelper.searchFavoriteMovies(USER_ID, "ship", 10);
+            assertEquals(1, ship.size());
+            assertEquals("tt120338", ship.get(0).getMovie_id());
+            assertEquals(1, dbHelper.searchFavoriteMovies(USER_ID, "iceberg", 10).size());
+            return null;
+        });
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(1, TimeUnit.MINUTES);
+    }
+}
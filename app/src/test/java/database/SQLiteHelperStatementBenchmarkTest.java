@@ -0,0 +1,184 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara las operaciones más frecuentes de {@link SQLiteHelper} (sentencias compiladas en
+ * caché) con la forma anterior de hacerlas (db.query / ContentValues y búsqueda de columnas
+ * en cada fila), e imprime las operaciones por segundo de ambas.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class SQLiteHelperStatementBenchmarkTest {
+
+    private static final String USER_ID = "bench-user";
+    private static final int OPERATIONS = 2000;
+    private static final int LISTED_FAVORITES = 500;
+    private static final int LIST_ROUNDS = 50;
+
+    private SQLiteHelper dbHelper;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        dbHelper = SQLiteHelper.getInstance(ApplicationProvider.getApplicationContext());
+        executor = Executors.newSingleThreadExecutor();
+        onBackground(() -> dbHelper.addUser(new User(USER_ID, "Bench", "bench@example.com", null, null, "", "", "")));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        SQLiteHelper.resetInstance();
+    }
+
+    @Test
+    public void userLookups() throws Exception {
+        onBackground(() -> {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+            // IDs desconocidos: doesUserExist no puede responder desde memoria
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                try (Cursor cursor = db.query("users", new String[]{"user_id"}, "user_id=?",
+                        new String[]{"missing-" + i}, null, null, null)) {
+                    assertFalse(cursor.moveToFirst());
+                }
+            }
+            report("doesUserExist", "antes", start);
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                assertFalse(dbHelper.doesUserExist("missing-" + i));
+            }
+            report("doesUserExist", "después", start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                try (Cursor cursor = db.query("users", null, "user_id=?", new String[]{USER_ID}, null, null, null)) {
+                    cursor.moveToFirst();
+                    assertEquals(USER_ID, cursor.getString(cursor.getColumnIndexOrThrow("user_id")));
+                    cursor.getString(cursor.getColumnIndexOrThrow("name"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("email"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("login_time"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("logout_time"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("address"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("phone"));
+                    cursor.getString(cursor.getColumnIndexOrThrow("image"));
+                }
+            }
+            report("getUser", "antes", start);
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                assertNotNull(dbHelper.getUser(USER_ID));
+            }
+            report("getUser", "después", start);
+            return null;
+        });
+    }
+
+    @Test
+    public void favoriteWrites() throws Exception {
+        onBackground(() -> {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                ContentValues values = new ContentValues();
+                values.put("user_id", USER_ID);
+                values.put("movie_id", "tt" + (3000000 + i));
+                values.put("poster", "https://example.com/" + i + ".jpg");
+                values.put("title", "Antes " + i);
+                db.insertWithOnConflict("favorites", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            report("insertar favorito", "antes", start);
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                db.delete("favorites", "user_id=? AND movie_id=?", new String[]{USER_ID, "tt" + (3000000 + i)});
+            }
+            report("eliminar favorito", "antes", start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                dbHelper.addMovieToFavorites(USER_ID, "tt" + (4000000 + i), "https://example.com/" + i + ".jpg", "Después " + i);
+            }
+            report("insertar favorito", "después", start);
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                assertEquals(1, dbHelper.removeMovieFromFavorites(USER_ID, "tt" + (4000000 + i)));
+            }
+            report("eliminar favorito", "después", start);
+            return null;
+        });
+    }
+
+    @Test
+    public void favoriteListing() throws Exception {
+        onBackground(() -> {
+            for (int i = 0; i < LISTED_FAVORITES; i++) {
+                dbHelper.addMovieToFavorites(USER_ID, "tt" + (5000000 + i), "https://example.com/" + i + ".jpg", "Lista " + i);
+            }
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+            long start = System.nanoTime();
+            for (int round = 0; round < LIST_ROUNDS; round++) {
+                List<Movie> movies = new ArrayList<>();
+                try (Cursor cursor = db.query("favorites", new String[]{"movie_id", "poster", "title"},
+                        "user_id=?", new String[]{USER_ID}, null, null, null)) {
+                    while (cursor.moveToNext()) {
+                        movies.add(new Movie(
+                                cursor.getString(cursor.getColumnIndexOrThrow("movie_id")),
+                                cursor.getString(cursor.getColumnIndexOrThrow("poster")),
+                                cursor.getString(cursor.getColumnIndexOrThrow("title"))));
+                    }
+                }
+                assertEquals(LISTED_FAVORITES, movies.size());
+            }
+            report("getFavoriteMovies (" + LISTED_FAVORITES + " filas)", "antes", start, LIST_ROUNDS);
+            start = System.nanoTime();
+            for (int round = 0; round < LIST_ROUNDS; round++) {
+                assertEquals(LISTED_FAVORITES, dbHelper.getFavoriteMovies(USER_ID).size());
+            }
+            report("getFavoriteMovies (" + LISTED_FAVORITES + " filas)", "después", start, LIST_ROUNDS);
+            return null;
+        });
+    }
+
+    private static void report(String operation, String variant, long startNanos) {
+        report(operation, variant, startNanos, OPERATIONS);
+    }
+
+    private static void report(String operation, String variant, long startNanos, int operations) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf(Locale.ROOT, "%-40s %-8s %10.0f ops/s%n", operation, variant, operations / seconds);
+    }
+
+    private <T> T onBackground(Callable<T> task) throws Exception {
+        return executor.submit(task).get(5, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,171 @@
+package database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Bases de datos de prueba con el esquema que tenía {@link SQLiteHelper} en cada versión
+ * publicada, para probar las migraciones. El SQL está copiado tal cual de cada versión y
+ * no debe cambiarse: si el esquema evoluciona se añade la versión nueva.
+ */
+final class SchemaFixtures {
+
+    static final int OLDEST_VERSION = 1;
+    static final String DATABASE_NAME = "app_database.db";
+
+    static final String USER_ID = "fixture-user";
+    static final String OTHER_USER_ID = "fixture-other";
+    // Favoritos en orden de inserción; el último no tiene título
+    static final String[] FAVORITE_IDS = {"tt0111161", "tt0068646", "tt0468569"};
+
+    private SchemaFixtures() {
+    }
+
+    /**
+     * Crea en la ruta indicada una base de datos con el esquema de la versión pedida y
+     * algunos datos (usuarios con imagen de perfil en Base64 hasta la versión 5, favoritos y, si existen las
+     * tablas, detalles y equivalencias).
+     */
+    static void createDatabase(File path, int version) {
+        File parent = path.getParentFile();
+        if (parent != null) parent.mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        try {
+            createSchema(db, version);
+            insertSampleData(db, version);
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Crea las tablas de la versión pedida en una base de datos vacía.
+     */
+    static void createSchema(SQLiteDatabase db, int version) {
+        // Versión 1: usuarios y favoritos
+        db.execSQL("CREATE TABLE users (user_id TEXT PRIMARY KEY, name TEXT, email TEXT, login_time TEXT, "
+                + "logout_time TEXT, address TEXT, phone TEXT, image TEXT)");
+        db.execSQL("CREATE TABLE favorites (user_id TEXT NOT NULL, movie_id TEXT NOT NULL, poster TEXT, title TEXT, "
+                + (version >= 5 ? "added_at INTEGER NOT NULL DEFAULT 0, " : "") // Versión 5: fecha en que se añadió
+                + "PRIMARY KEY(user_id, movie_id), "
+                + "FOREIGN KEY(user_id) REFERENCES users(user_id) ON DELETE CASCADE)");
+        // Versión 2: índice de búsqueda FTS
+        if (version >= 2) {
+            db.execSQL("CREATE VIRTUAL TABLE movie_search USING fts4(movie_id, poster, title, overview, "
+                    + "notindexed=movie_id, notindexed=poster)");
+        }
+        // Versión 3: detalles de películas
+        if (version >= 3) {
+            db.execSQL("CREATE TABLE movie_details (movie_id TEXT PRIMARY KEY, source TEXT NOT NULL, title TEXT, "
+                    + "overview TEXT, poster TEXT, rating REAL, release_date TEXT, fetched_at INTEGER NOT NULL)");
+        }
+        // Versión 4: equivalencias entre IDs de IMDb y TMDB
+        if (version >= 4) {
+            db.execSQL("CREATE TABLE movie_id_map (imdb_id TEXT PRIMARY KEY, tmdb_id TEXT NOT NULL UNIQUE)");
+        }
+        // Versión 5: índices de paginación de favoritos
+        if (version >= 5) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_favorites_user_added_at ON favorites (user_id, added_at, movie_id)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_favorites_user_title ON favorites (user_id, title COLLATE NOCASE, movie_id)");
+        }
+        // Versión 6: solo migra datos (imágenes de perfil), el esquema no cambia
+        if (version > 6) {
+            throw new IllegalArgumentException("No hay esquema de prueba para la versión " + version);
+        }
+    }
+
+    private static void insertSampleData(SQLiteDatabase db, int version) {
+        // Desde la versión 6 las imágenes ya no se guardan en Base64
+        insertUser(db, USER_ID, "Fixture", version >= 6 ? "https://example.com/fixture.jpg" : base64Image());
+        insertUser(db, OTHER_USER_ID, "Other", "https://example.com/other.jpg");
+        for (int i = 0; i < FAVORITE_IDS.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put("user_id", USER_ID);
+            values.put("movie_id", FAVORITE_IDS[i]);
+            values.put("poster", "https://example.com/" + FAVORITE_IDS[i] + ".jpg");
+            if (version >= 5) {
+                values.put("title", i == FAVORITE_IDS.length - 1 ? "" : "Title " + i);
+                values.put("added_at", 1000L + i);
+            } else {
+                values.put("title", i == FAVORITE_IDS.length - 1 ? null : "Title " + i);
+            }
+            db.insertOrThrow("favorites", null, values);
+        }
+        if (version >= 2) {
+            db.execSQL("INSERT INTO movie_search (movie_id, poster, title, overview) "
+                    + "VALUES ('tt0111161', NULL, 'The Shawshank Redemption', 'Two imprisoned men')");
+        }
+        if (version >= 3) {
+            db.execSQL("INSERT INTO movie_details VALUES ('tt0111161', 'imdb', 'The Shawshank Redemption', "
+                    + "'Two imprisoned men', NULL, 9.3, '1994-09-23', 1000)");
+        }
+        if (version >= 4) {
+            db.execSQL("INSERT INTO movie_id_map VALUES ('tt0111161', '278')");
+        }
+    }
+
+    private static void insertUser(SQLiteDatabase db, String userId, String name, String image) {
+        ContentValues values = new ContentValues();
+        values.put("user_id", userId);
+        values.put("name", name);
+        values.put("email", userId + "@example.com");
+        values.put("login_time", "2024-01-01 10:00:00");
+        values.put("image", image);
+        db.insertOrThrow("users", null, values);
+    }
+
+    /**
+     * Imagen de perfil como la guardaban las versiones anteriores: JPEG en Base64.
+     */
+    static String base64Image() {
+        Bitmap bitmap = Bitmap.createBitmap(800, 600, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
+        return Base64.encodeToString(outputStream.toByteArray(), Base64.DEFAULT);
+    }
+
+    /**
+     * Describe el esquema de una base de datos (tablas con sus columnas e índices) en un
+     * formato que no depende de cómo se escribió el SQL, para comparar una base de datos
+     * migrada con una creada desde cero.
+     */
+    static List<String> describeSchema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT type, name, tbl_name, sql FROM sqlite_master "
+                + "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY type, name", null)) {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                if ("index".equals(type)) {
+                    schema.add("index " + name + " ON " + cursor.getString(2) + ": " + cursor.getString(3));
+                } else {
+                    schema.add(type + " " + name);
+                    if ("table".equals(type)) tables.add(name);
+                }
+            }
+        }
+        for (String table : tables) {
+            try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+                while (cursor.moveToNext()) {
+                    schema.add(String.format(Locale.ROOT, "  %s.%s %s notnull=%d default=%s pk=%d",
+                            table, cursor.getString(1), cursor.getString(2), cursor.getInt(3),
+                            cursor.getString(4), cursor.getInt(5)));
+                }
+            }
+        }
+        return schema;
+    }
+}